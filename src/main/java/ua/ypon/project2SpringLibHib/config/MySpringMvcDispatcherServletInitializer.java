@@ -1,8 +1,11 @@
 package ua.ypon.project2SpringLibHib.config;
 
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
 import org.springframework.web.filter.CharacterEncodingFilter;
 import org.springframework.web.filter.HiddenHttpMethodFilter;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
+import ua.ypon.project2SpringLibHib.metrics.StartupTimeline;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.FilterRegistration;
@@ -33,6 +36,20 @@ public class MySpringMvcDispatcherServletInitializer extends AbstractAnnotationC
         return new Class[] {SpringConfig.class};
     }
 
+    //Метод createServletApplicationContext() створює контекст сервлета диспетчера, як і базовий клас,
+    // і підключає до нього StartupTimeline, щоб записати кроки запуску і після refresh вивести розбивку в лог.
+    // Фабрику бінів контекст створює заново при refresh і (у Spring 5.3.5) не передає їй ApplicationStartup,
+    // тому створення бінів підключається окремо, до створення перших бінів застосунку.
+    @Override
+    protected WebApplicationContext createServletApplicationContext() {
+        AnnotationConfigWebApplicationContext context = (AnnotationConfigWebApplicationContext) super.createServletApplicationContext();
+        StartupTimeline timeline = new StartupTimeline();
+        context.setApplicationStartup(timeline);
+        context.addBeanFactoryPostProcessor(beanFactory -> beanFactory.setApplicationStartup(timeline));
+        context.addApplicationListener(timeline);
+        return context;
+    }
+
     //Метод getServletMappings() вказує шляхи, на які спрямовуються HTTP-запити до сервлета диспетчера.
     // У даному випадку, всі запити спрямовуються на кореневий шлях ("/").
     @Override
@@ -51,8 +68,9 @@ public class MySpringMvcDispatcherServletInitializer extends AbstractAnnotationC
     //Метод registerHiddenFieldFilter() реєструє фільтр HiddenHttpMethodFilter,
     // який дозволяє використовувати HTTP-методи PUT, PATCH і DELETE у веб-формах.
     private void registerHiddenFieldFilter(ServletContext aContext) {
-        aContext.addFilter("hiddenHttpMethodFilter",
-                new HiddenHttpMethodFilter()).addMappingForUrlPatterns(null, true, "/*");
+        FilterRegistration.Dynamic hiddenHttpMethod = aContext.addFilter("hiddenHttpMethodFilter", new HiddenHttpMethodFilter());
+        hiddenHttpMethod.setAsyncSupported(true);//запит може оброблятись асинхронно (див. WebMvcConfig)
+        hiddenHttpMethod.addMappingForUrlPatterns(null, true, "/*");
     }
 
     //Метод registerCharacterEncodingFilter() реєструє фільтр CharacterEncodingFilter,
@@ -65,6 +83,7 @@ public class MySpringMvcDispatcherServletInitializer extends AbstractAnnotationC
         characterEncodingFilter.setForceEncoding(true);
 
         FilterRegistration.Dynamic chracterEncoding = aContext.addFilter("characterEncoding", characterEncodingFilter);
+        chracterEncoding.setAsyncSupported(true);
         chracterEncoding.addMappingForUrlPatterns(dispatcherTypes, true, "/*");
     }
 }
@@ -1,27 +1,46 @@
 package ua.ypon.project2SpringLibHib.config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.data.repository.config.BootstrapMode;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
-import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.hibernate.validator.messageinterpolation.ParameterMessageInterpolator;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ViewResolverRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.thymeleaf.spring5.SpringTemplateEngine;
 import org.thymeleaf.spring5.templateresolver.SpringResourceTemplateResolver;
 import org.thymeleaf.spring5.view.ThymeleafViewResolver;
+import ua.ypon.project2SpringLibHib.datasource.ReadWriteRoutingDataSource;
+import ua.ypon.project2SpringLibHib.metrics.PoolMetrics;
+import ua.ypon.project2SpringLibHib.metrics.RequestMetrics;
+import ua.ypon.project2SpringLibHib.metrics.RequestMetricsInterceptor;
+import ua.ypon.project2SpringLibHib.metrics.RequestProfile;
+import ua.ypon.project2SpringLibHib.metrics.TimedJpaTransactionManager;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -41,18 +60,24 @@ import java.util.Properties;
 // що файл властивостей hibernate.properties містить налаштування для Hibernate.
 @EnableTransactionManagement//Анотація @EnableTransactionManagement увімкнює керування транзакціями для методів,
 // помічених анотаціями @Transactional.
-@EnableJpaRepositories("ua.ypon.project2SpringLibHib.repositories")//Анотація @EnableJpaRepositories("ua.ypon.project2SpringLibHib.repositories")
+@EnableJpaRepositories(value = "ua.ypon.project2SpringLibHib.repositories", bootstrapMode = BootstrapMode.DEFERRED)//Анотація @EnableJpaRepositories("ua.ypon.project2SpringLibHib.repositories")
 // вказує Spring, що потрібно включити репозиторії JPA з пакету ua.ypon.project2SpringLibHib.repositories.
-@EnableWebMvc//Анотація @EnableWebMvc увімкнює підтримку веб-рівня MVC у Spring.
+// BootstrapMode.DEFERRED: сервіси отримують ліниві проксі репозиторіїв, а самі репозиторії створюються
+// в кінці refresh контексту, тож створення решти бінів не чекає на EntityManagerFactory (див. entityManagerFactory()).
+//Підтримку веб-рівня MVC у Spring вмикає WebMvcConfig (замість @EnableWebMvc).
+@EnableScheduling//Анотація @EnableScheduling вмикає виконання методів з @Scheduled (звірка лічильників книг читачів).
 public class SpringConfig implements WebMvcConfigurer {//Клас SpringConfig реалізує інтерфейс WebMvcConfigurer для налаштування конфігурації веб-рівня MVC.
 
     private final ApplicationContext applicationContext;
     private final Environment environment;
+    private final RequestMetricsInterceptor requestMetricsInterceptor;
 
     @Autowired
-    public SpringConfig(ApplicationContext applicationContext, Environment environment) {
+    public SpringConfig(ApplicationContext applicationContext, Environment environment,
+                        RequestMetricsInterceptor requestMetricsInterceptor) {
         this.applicationContext = applicationContext;
         this.environment = environment;//окружение для получения доступа к свойствам которые подключаем
+        this.requestMetricsInterceptor = requestMetricsInterceptor;
     }
 
     //Метод templateResolver() створює та налаштовує SpringResourceTemplateResolver,
@@ -88,18 +113,96 @@ public class SpringConfig implements WebMvcConfigurer {//Клас SpringConfig 
         registry.viewResolver(resolver);
     }
 
-    //Метод dataSource() створює та налаштовує об'єкт DriverManagerDataSource,
-    // який використовується для підключення до бази даних.
+    //Метод addInterceptors() підключає збір метрик (тривалість, кількість SQL) до кожного запиту контролерів.
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(requestMetricsInterceptor);
+    }
+
+    //Метод validator() створює валідатор Bean Validation для перевірки сутностей поза веб-формами
+    // (наприклад, під час масового імпорту книг).
+    // Повідомлення в анотаціях сутностей - звичайний текст, тому EL для їх інтерполяції не потрібен.
     @Bean
+    public LocalValidatorFactoryBean validator() {
+        LocalValidatorFactoryBean validator = new LocalValidatorFactoryBean();
+        validator.setMessageInterpolator(new ParameterMessageInterpolator());
+        return validator;
+    }
+
+    //Метод poolMetrics() створює збирач метрик пулу з'єднань (active, idle, pending, час отримання з'єднання).
+    @Bean
+    public PoolMetrics poolMetrics() {
+        return new PoolMetrics();
+    }
+
+    //Метод routingDataSource() створює пул з'єднань HikariDataSource до primary та пули до реплік (replica.urls)
+    // і маршрутизатор між ними. Він власник пулів і закриває їх при зупинці контексту.
+    // З'єднання перевикористовуються між транзакціями, тому кожна транзакція не відкриває нове TCP-з'єднання до PostgreSQL.
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource() {
+        HikariDataSource primary = pool(environment.getRequiredProperty("hibernate.connection.url"),//обращение к БД
+                environment.getRequiredProperty("pool.name"), true);
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : environment.getRequiredProperty("replica.urls").split(",")) {
+            if (!url.isBlank())
+                replicas.add(pool(url.trim(), environment.getRequiredProperty("pool.name") + "-replica-" + (replicas.size() + 1), false));
+        }
+
+        return new ReadWriteRoutingDataSource(primary, replicas,
+                environment.getRequiredProperty("replica.health_check_interval", Long.class),
+                environment.getRequiredProperty("replica.sticky_millis", Long.class));
+    }
+
+    //Метод dataSource() повертає джерело з'єднань для JPA.
+    // Без реплік - це пул primary. З репліками - маршрутизатор за ознакою readOnly транзакції,
+    // загорнутий у LazyConnectionDataSourceProxy: з'єднання береться при першому SQL-запиті,
+    // коли ознака readOnly вже відома (і транзакції, які обслуговує кеш, не займають з'єднання зовсім).
+    // Пули закриває routingDataSource(), тому тут метод знищення вимкнено.
+    @Bean(destroyMethod = "")
     public DataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
+        ReadWriteRoutingDataSource routing = routingDataSource();
+        if (environment.getRequiredProperty("replica.urls").isBlank())
+            return routing.getPrimary();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
 
-        dataSource.setDriverClassName(environment.getRequiredProperty("hibernate.driver_class"));//название драйвера
-        dataSource.setUrl(environment.getRequiredProperty("hibernate.connection.url"));//обращение к БД
-        dataSource.setUsername(environment.getRequiredProperty("hibernate.connection.user_name"));
-        dataSource.setPassword(environment.getRequiredProperty("hibernate.connection.pass_word"));
+    //Метод ledgerDataSource() створює окремий пул з одним з'єднанням до primary для журналу видач (LoanLedger).
+    // Журнал пишеться після коміту видачі, поки потік видачі ще тримає з'єднання основного пулу,
+    // тому він не бере з'єднання з основного пулу і не чекає на нього, коли той вичерпано.
+    @Bean
+    public HikariDataSource ledgerDataSource() {
+        return pool(environment.getRequiredProperty("hibernate.connection.url"),
+                environment.getRequiredProperty("pool.name") + "-ledger", false, 1);
+    }
 
-        return dataSource;
+    private HikariDataSource pool(String url, String name, boolean required) {
+        return pool(url, name, required, environment.getRequiredProperty("pool.maximum_pool_size", Integer.class));
+    }
+
+    //required = false - пул створюється, навіть якщо база зараз недоступна (репліку перевірить routingDataSource)
+    private HikariDataSource pool(String url, String name, boolean required, int maximumPoolSize) {
+        HikariConfig config = new HikariConfig();
+
+        config.setDriverClassName(environment.getRequiredProperty("hibernate.driver_class"));//название драйвера
+        config.setJdbcUrl(url);
+        config.setUsername(environment.getRequiredProperty("hibernate.connection.user_name"));
+        config.setPassword(environment.getRequiredProperty("hibernate.connection.pass_word"));
+
+        config.setPoolName(name);
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(Math.min(maximumPoolSize, environment.getRequiredProperty("pool.minimum_idle", Integer.class)));
+        config.setConnectionTimeout(environment.getRequiredProperty("pool.connection_timeout", Long.class));
+        config.setMaxLifetime(environment.getRequiredProperty("pool.max_lifetime", Long.class));
+        config.setIdleTimeout(environment.getRequiredProperty("pool.idle_timeout", Long.class));
+        config.setLeakDetectionThreshold(environment.getRequiredProperty("pool.leak_detection_threshold", Long.class));
+        config.setConnectionTestQuery(environment.getRequiredProperty("pool.connection_test_query"));
+        config.setValidationTimeout(environment.getRequiredProperty("pool.validation_timeout", Long.class));
+        config.setMetricsTrackerFactory(poolMetrics());
+        if (!required)
+            config.setInitializationFailTimeout(-1);
+
+        return new HikariDataSource(config);
     }
 
     //Метод hibernateProperties() повертає об'єкт Properties, який містить властивості для налаштування Hibernate,
@@ -109,6 +212,27 @@ private Properties hibernateProperties() {
         properties.put("hibernate.dialect", environment.getRequiredProperty("hibernate.dialect"));
         properties.put("hibernate.show_sql", environment.getRequiredProperty("hibernate.show_sql"));
 
+        //Кеш другого рівня та кеш запитів
+        properties.put("hibernate.cache.use_second_level_cache", environment.getRequiredProperty("hibernate.cache.use_second_level_cache"));
+        properties.put("hibernate.cache.use_query_cache", environment.getRequiredProperty("hibernate.cache.use_query_cache"));
+        properties.put("hibernate.cache.region.factory_class", environment.getRequiredProperty("hibernate.cache.region.factory_class"));
+        properties.put("hibernate.javax.cache.provider", environment.getRequiredProperty("hibernate.javax.cache.provider"));
+        properties.put("hibernate.javax.cache.uri", environment.getRequiredProperty("hibernate.javax.cache.uri"));
+        properties.put("hibernate.javax.cache.missing_cache_strategy", environment.getRequiredProperty("hibernate.javax.cache.missing_cache_strategy"));
+        properties.put("hibernate.cache.auto_evict_collection_cache", environment.getRequiredProperty("hibernate.cache.auto_evict_collection_cache"));
+        properties.put("hibernate.generate_statistics", environment.getRequiredProperty("hibernate.generate_statistics"));
+
+        //Пакетне виконання INSERT/UPDATE
+        properties.put("hibernate.jdbc.batch_size", environment.getRequiredProperty("hibernate.jdbc.batch_size"));
+        properties.put("hibernate.order_inserts", environment.getRequiredProperty("hibernate.order_inserts"));
+        properties.put("hibernate.default_batch_fetch_size", environment.getRequiredProperty("hibernate.default_batch_fetch_size"));
+        properties.put("hibernate.order_updates", environment.getRequiredProperty("hibernate.order_updates"));
+
+        //Профілювання запитів: кількість і текст SQL, час у JDBC (див. RequestProfile)
+        properties.put("hibernate.session_factory.statement_inspector", RequestProfile.StatementCounter.class.getName());
+        properties.put("hibernate.session.events.auto", RequestProfile.JdbcTimer.class.getName());
+        properties.put("hibernate.session.events.log", environment.getRequiredProperty("hibernate.session.events.log"));
+
         return properties;
 }
 //    @Bean
@@ -118,6 +242,8 @@ private Properties hibernateProperties() {
 
     //Метод entityManagerFactory() створює LocalContainerEntityManagerFactoryBean,
     // який використовується для налаштування та створення менеджера сутностей JPA.
+    // З jpa.bootstrap_async=true Hibernate будується у фоновому потоці, поки створюються решта бінів (MVC, Thymeleaf, контролери);
+    // біни отримують проксі EntityManagerFactory, виклик якого чекає на завершення побудови.
     @Bean
     public LocalContainerEntityManagerFactoryBean entityManagerFactory() {
         final LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
@@ -127,15 +253,34 @@ private Properties hibernateProperties() {
         final HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
         em.setJpaVendorAdapter(vendorAdapter);
         em.setJpaProperties(hibernateProperties());
+        if (environment.getRequiredProperty("jpa.bootstrap_async", Boolean.class))
+            em.setBootstrapExecutor(jpaBootstrapExecutor());
 
         return em;
     }
 
+    //Потік побудови EntityManagerFactory; його тривалість - крок library.jpa.bootstrap у StartupTimeline
+    private AsyncTaskExecutor jpaBootstrapExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("jpa-bootstrap-");
+        executor.setDaemon(true);
+        ApplicationStartup startup = ((ConfigurableApplicationContext) applicationContext).getApplicationStartup();
+        executor.setTaskDecorator(task -> () -> {
+            StartupStep step = startup.start("library.jpa.bootstrap");
+            try {
+                task.run();
+            } finally {
+                step.end();
+            }
+        });
+        return executor;
+    }
+
     //Метод transactionManager() створює PlatformTransactionManager,
     // який використовується для керування транзакціями в JPA.
+    // Тривалість кожної транзакції записується в RequestMetrics.
     @Bean
-    public PlatformTransactionManager transactionManager() {
-        JpaTransactionManager transactionManager = new JpaTransactionManager();
+    public PlatformTransactionManager transactionManager(RequestMetrics requestMetrics) {
+        JpaTransactionManager transactionManager = new TimedJpaTransactionManager(requestMetrics);
         transactionManager.setEntityManagerFactory(entityManagerFactory().getObject());
 
         return transactionManager;
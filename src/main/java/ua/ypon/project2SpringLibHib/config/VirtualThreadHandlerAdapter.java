@@ -0,0 +1,61 @@
+package ua.ypon.project2SpringLibHib.config;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+
+import java.util.concurrent.Callable;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас VirtualThreadHandlerAdapter виконує метод контролера не в потоці контейнера, а як Callable
+на AsyncTaskExecutor з WebMvcConfig (віртуальні потоки), ніби контролер сам повернув Callable.
+Аргументи (параметри запиту, @Valid, BindingResult) розбираються ще в потоці контейнера,
+результат (ім'я представлення, модель, redirect-атрибути) обробляється як звичайно після асинхронного dispatch.
+ */
+public class VirtualThreadHandlerAdapter extends RequestMappingHandlerAdapter {
+
+    @Override
+    protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+        return new OffloadedHandlerMethod(handlerMethod);
+    }
+
+    private static class OffloadedHandlerMethod extends ServletInvocableHandlerMethod {
+
+        private OffloadedHandlerMethod(HandlerMethod handlerMethod) {
+            super(handlerMethod);
+        }
+
+        @Override
+        public Object invokeForRequest(NativeWebRequest request, ModelAndViewContainer mavContainer,
+                                       Object... providedArgs) throws Exception {
+            Object[] args = getMethodArgumentValues(request, mavContainer, providedArgs);
+            //метод з аргументом HttpServletResponse сам пише відповідь (ознаку ставить резолвер аргументу)
+            boolean writesResponse = mavContainer.isRequestHandled();
+            ServletWebRequest webRequest = (ServletWebRequest) request;
+            return (Callable<Object>) () -> {
+                //запит доступний коду, що читає його через RequestContextHolder (див. ReadYourWrites)
+                RequestContextHolder.setRequestAttributes(
+                        new ServletRequestAttributes(webRequest.getRequest(), webRequest.getResponse()));
+                Object result;
+                try {
+                    result = doInvoke(args);
+                } finally {
+                    RequestContextHolder.resetRequestAttributes();
+                }
+                //null означає, що відповідь уже сформовано (304 або запис у response) - представлення не потрібне.
+                //Після асинхронного dispatch це видно лише з ModelAndViewContainer, який Spring зберігає між dispatch.
+                if (result == null && (writesResponse || webRequest.isNotModified()))
+                    mavContainer.setRequestHandled(true);
+                return result;
+            };
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ua.ypon.project2SpringLibHib.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.DelegatingWebMvcConfiguration;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас WebMvcConfig вмикає Spring MVC замість анотації @EnableWebMvc (налаштування з WebMvcConfigurer,
+зокрема SpringConfig, підхоплюються як і раніше), щоб можна було підмінити RequestMappingHandlerAdapter.
+
+Якщо library.virtual_threads=true, обробка кожного запиту (метод контролера разом з викликами
+транзакційних методів сервісів) виконується на окремому віртуальному потоці,
+а потік сервлет-контейнера одразу звільняється (асинхронний запит Servlet 3).
+Блокування на JDBC тоді не тримає потік платформи. Одночасно обробляється не більше
+library.virtual_threads_max_concurrent запитів: решта чекають своєї черги на дешевому віртуальному потоці
+(семафор, у порядку надходження), а не всі разом у пулі з'єднань, де вони падали б через pool.connection_timeout.
+ */
+@Configuration
+public class WebMvcConfig extends DelegatingWebMvcConfiguration {
+
+    private final Executor requestExecutor;
+
+    @Autowired
+    public WebMvcConfig(Environment environment) {
+        this.requestExecutor = environment.getRequiredProperty("library.virtual_threads", Boolean.class)
+                ? limited(Executors.newVirtualThreadPerTaskExecutor(),
+                        environment.getRequiredProperty("library.virtual_threads_max_concurrent", Integer.class))
+                : null;
+    }
+
+    //Метод limited повертає Executor, який виконує не більше maxConcurrent задач одночасно
+    private static Executor limited(Executor executor, int maxConcurrent) {
+        Semaphore permits = new Semaphore(maxConcurrent, true);
+        return task -> executor.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    @Override
+    protected RequestMappingHandlerAdapter createRequestMappingHandlerAdapter() {
+        return requestExecutor != null ? new VirtualThreadHandlerAdapter() : super.createRequestMappingHandlerAdapter();
+    }
+
+    @Override
+    protected void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        super.configureAsyncSupport(configurer);
+        if (requestExecutor != null) {
+            configurer.setTaskExecutor(new TaskExecutorAdapter(requestExecutor));
+            //без обмеження часу: очікування бази обмежує pool.connection_timeout,
+            //а потокове виведення великого списку може тривати довше за типовий таймаут контейнера
+            configurer.setDefaultTimeout(0);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ua.ypon.project2SpringLibHib.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import ua.ypon.project2SpringLibHib.dto.BookView;
+import ua.ypon.project2SpringLibHib.dto.CursorPage;
+import ua.ypon.project2SpringLibHib.services.BookService;
+
+import java.util.List;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BooksApiController - JSON API для інтеграцій поруч зі сторінками Thymeleaf.
+Відповіді будуються з проєкцій BookView, створених у запитах до бази, тому сутності Book/Person
+ніколи не серіалізуються. Jackson пише відповідь прямо в потік відповіді, а розмір сторінки обмежено.
+ */
+@RestController
+@RequestMapping(value = "/api/books", produces = "application/json")
+public class BooksApiController {
+
+    // Максимальна кількість книг в одній відповіді (limit та ids)
+    static final int MAX_LIMIT = 1000;
+
+    private final BookService bookService;
+
+    @Autowired
+    public BooksApiController(BookService bookService) {
+        this.bookService = bookService;
+    }
+
+    // GET /api/books?after=0&limit=100 - сторінка книг у порядку id. Для наступної сторінки
+    // передається after=<next> з попередньої відповіді.
+    @GetMapping
+    public CursorPage<BookView> list(@RequestParam(defaultValue = "0") int after,
+                                     @RequestParam(defaultValue = "100") int limit) {
+        return bookService.findViews(after, checkLimit(limit));
+    }
+
+    // GET /api/books?ids=1,2,3 - кілька книг одним запитом до бази, у порядку ids. Відсутні книги пропускаються.
+    @GetMapping(params = "ids")
+    public List<BookView> multiGet(@RequestParam List<Integer> ids) {
+        checkLimit(ids.size());
+        return bookService.findViewsByIds(ids);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<BookView> show(@PathVariable("id") int id) {
+        return ResponseEntity.of(bookService.findView(id));
+    }
+
+    static int checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit повинен бути від 1 до " + MAX_LIMIT);
+        return limit;
+    }
+}
@@ -1,20 +1,46 @@
 package ua.ypon.project2SpringLibHib.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import ua.ypon.project2SpringLibHib.dto.BookSearchResult;
+import ua.ypon.project2SpringLibHib.dto.BookSuggestion;
+import ua.ypon.project2SpringLibHib.dto.ImportReport;
 import ua.ypon.project2SpringLibHib.models.Book;
 import ua.ypon.project2SpringLibHib.models.Person;
 import ua.ypon.project2SpringLibHib.services.BookService;
+import ua.ypon.project2SpringLibHib.services.BookTransferService;
 import ua.ypon.project2SpringLibHib.services.PeopleService;
+import ua.ypon.project2SpringLibHib.util.BookCursor;
+import ua.ypon.project2SpringLibHib.util.BookFormat;
+import ua.ypon.project2SpringLibHib.util.FlushingIterator;
+import ua.ypon.project2SpringLibHib.util.FragmentCache;
+import ua.ypon.project2SpringLibHib.util.KeysetPage;
+import ua.ypon.project2SpringLibHib.util.OverdueCursor;
+import ua.ypon.project2SpringLibHib.util.ResourceVersions;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -25,52 +51,125 @@ import java.util.stream.Collectors;
 @RequestMapping("/books")
 public class BooksController {
 
+    // Максимальна кількість варіантів автодоповнення в одній відповіді
+    private static final int MAX_SUGGESTIONS = 50;
+    // Межі кількості книг на сторінці курсорної пагінації
+    private static final int MIN_BOOKS_PER_PAGE = 1;
+    private static final int MAX_BOOKS_PER_PAGE = 1000;
+    // Межі повнотекстового пошуку: розмір сторінки і глибина, далі якої результати не гортаються
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_DEPTH = 10_000;
+    // Повідомлення, коли книгу не вдалося повернути через одночасні видачі й повернення (BookService.releaseLoans)
+    private static final String RELEASE_CONFLICT = "Книгу саме видають чи повертають інші бібліотекарі, спробуйте ще раз";
+    // Кількість рядків, після якої потоковий список скидається клієнту
+    private static final int STREAM_CHUNK_ROWS = 200;
+
     private final BookService bookService;
     private final PeopleService peopleService;
+    private final BookTransferService bookTransferService;
+    private final ResourceVersions versions;
+    private final FragmentCache fragmentCache;
 
     @Autowired
-    public BooksController(BookService bookService, PeopleService peopleService) {
+    public BooksController(BookService bookService, PeopleService peopleService,
+                           BookTransferService bookTransferService, ResourceVersions versions,
+                           FragmentCache fragmentCache) {
         this.bookService = bookService;
         this.peopleService = peopleService;
+        this.bookTransferService = bookTransferService;
+        this.versions = versions;
+        this.fragmentCache = fragmentCache;
     }
 
     @GetMapping
-    public String index(Model model,
-                        @RequestParam(required = false) Integer page,
+    public String index(Model model, ServletWebRequest request, HttpServletResponse response,
+                        @RequestParam(required = false) String cursor,
                         @RequestParam(required = false) Integer books_per_page,
-                        @RequestParam(required = false) Boolean sort_by_year) {
+                        @RequestParam(required = false) Boolean sort_by_year) throws IOException {
+        // Пошкоджений курсор - помилка клієнта (400), а не 500
+        if (cursor != null && !BookCursor.isValid(cursor))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Некоректний курсор сторінки");
+        // Якщо каталог не змінювався з моменту, коли клієнт отримав сторінку, - відповідь 304 без запитів до бази
+        if (versions.checkNotModified(request, versions.catalogueVersion()))
+            return null;
+
         // Метод, що обробляє GET-запит до шляху "/books"
         // Відображає список книг з можливістю сортування і пагінації
         // Отримання параметрів з URL-запиту
-        // page - номер сторінки
+        // cursor - непрозорий токен сторінки (з посилань "Наступна"/"Попередня"), без нього - перша сторінка
         // books_per_page - кількість книг на сторінці
         // sort_by_year - сортування за роком видання
-        if (page != null && books_per_page != null) {
-            // Якщо передані параметри сторінки та кількості книг на сторінці
-
-            Sort sort = sort_by_year != null && sort_by_year ? Sort.by("year") : Sort.unsorted();
-            Pageable pageable = PageRequest.of(page != null ? page : 0, books_per_page != null ? books_per_page : 3, sort);
-
-            // Отримання списку книг з пагінацією та сортуванням
-            List<Book> books = bookService.findAllPage(pageable);
-            model.addAttribute("books", books);
-        } else if (Boolean.TRUE.equals(sort_by_year)) {
-            // Якщо передано параметр сортування за роком видання
+        // Версія каталогу читається до завантаження книг: закешований HTML не буде старшим за свою версію
+        long loadedAfter = versions.catalogueVersion().getVersion();
+        if (books_per_page != null) {
+            // Якщо передано кількість книг на сторінці - курсорна пагінація.
+            // Час відповіді не залежить від того, наскільки далеко сторінка від початку каталогу.
+            // Сторінка цілком кешується як готовий HTML до наступної зміни каталогу,
+            // тоді запит до бази виконується лише при промаху.
 
-            // Отримання списку книг, відсортованих за роком видання
-            List<Book> books = bookService.findAllSortedByYear();
-            model.addAttribute("books", books);
+            // Розмір сторінки обмежується: 0 і від'ємні значення дають сторінку з однієї книги
+            int perPage = Math.max(MIN_BOOKS_PER_PAGE, Math.min(books_per_page, MAX_BOOKS_PER_PAGE));
+            boolean sortByYear = Boolean.TRUE.equals(sort_by_year);
+            String key = cursor + "|" + perPage + "|" + sortByYear;
+            model.addAttribute("page", fragmentCache.get(request, "books_page", key, loadedAfter,
+                    "books/fragments", "page", () -> {
+                        KeysetPage<Book> page = bookService.findPage(cursor, perPage, sortByYear);
+                        Map<String, Object> variables = new HashMap<>();
+                        variables.put("rows", renderRows(request, page.getContent(), loadedAfter));
+                        variables.put("nextCursor", page.getNextCursor());
+                        variables.put("prevCursor", page.getPrevCursor());
+                        variables.put("booksPerPage", perPage);
+                        variables.put("sortByYear", sortByYear);
+                        return variables;
+                    }));
         } else {
-            // Якщо параметри не передано, відображаються всі книги без сортування
-            List<Book> books = bookService.findAll();
-            model.addAttribute("books", books);
+            // Якщо кількість книг на сторінці не передано - виводиться весь каталог (за id або за роком видання).
+            // Книги читаються курсором бази, а шаблон рендериться прямо у відповідь і скидається клієнту
+            // частинами по STREAM_CHUNK_ROWS рядків: пам'ять не залежить від розміру каталогу,
+            // а перші байти сторінки клієнт отримує ще до кінця читання.
+            // Рендеринг іде всередині транзакції читання, поки курсор відкритий.
+            boolean sortByYear = Boolean.TRUE.equals(sort_by_year);
+            response.setContentType("text/html;charset=UTF-8");
+            Writer writer = response.getWriter();
+            bookService.streamViews(sortByYear, views -> {
+                Iterator<String> rows = views.map(view -> renderRow(request, view.getId(), view, loadedAfter, false)).iterator();
+                fragmentCache.renderTo(request, "books/index",
+                        Collections.singletonMap("rows", new FlushingIterator<>(rows, writer, STREAM_CHUNK_ROWS)), writer);
+            });
+            return null;
         }
         return "books/index";
     }
 
+    // Метод renderRows повертає HTML рядків списку книг, беручи з кешу фрагментів рядки, книги яких не змінювались.
+    private List<String> renderRows(ServletWebRequest request, List<Book> books, long loadedAfter) {
+        List<String> rows = new ArrayList<>(books.size());
+        for (Book book : books)
+            rows.add(renderRow(request, book.getId(), book, loadedAfter, true));
+        return rows;
+    }
+
+    // Метод renderRow повертає HTML рядка книги (сутності Book або проєкції BookView).
+    // Книгу, змінену вже після loadedAfter, могли прочитати до зміни - її рядок рендериться без кешу.
+    // Повний список без пагінації (store = false) лише бере готові рядки з кешу і не додає нових:
+    // один перегляд усього каталогу не витісняє рядки сторінок, які переглядають часто.
+    private String renderRow(ServletWebRequest request, int id, Object book, long loadedAfter, boolean store) {
+        long version = versions.bookVersion(id).getVersion();
+        Map<String, Object> variables = Collections.singletonMap("book", book);
+        if (version > loadedAfter)
+            return fragmentCache.render(request, "books/fragments", "row", variables);
+        return store
+                ? fragmentCache.get(request, "book_row", id, version, "books/fragments", "row", () -> variables)
+                : fragmentCache.getIfCached(request, "book_row", id, version, "books/fragments", "row", variables);
+    }
+
     @GetMapping("/{id}")
-    public String show(@PathVariable("id") int id, Model model,
+    public String show(@PathVariable("id") int id, Model model, ServletWebRequest request,
                        @ModelAttribute("person") Person person) {
+        // Сторінка залежить від книги та від читачів (ім'я власника або список, кому видати книгу)
+        if (versions.checkNotModified(request, versions.bookVersion(id), versions.peopleVersion()))
+            return null;
+
         // Метод, що обробляє GET-запит до шляху "/books/{id}"
         // Відображає деталі конкретної книги за її ідентифікатором (ID)
 
@@ -87,6 +186,25 @@ public class BooksController {
         return "books/show";
     }
 
+    // Метод overdue обробляє GET-запит до шляху "/books/overdue" і показує посторінково книги,
+    // термін повернення яких уже минув, разом з читачами, у яких вони знаходяться.
+    // cursor - токен з посилання "Наступна" (курсорна пагінація за (due_at, id), як і в index),
+    // books_per_page обмежується тими самими межами, що й у index.
+    @GetMapping("/overdue")
+    public String overdue(Model model,
+                          @RequestParam(required = false) String cursor,
+                          @RequestParam(defaultValue = "50") int books_per_page) {
+        if (cursor != null && !OverdueCursor.isValid(cursor))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Некоректний курсор сторінки");
+        int perPage = Math.max(MIN_BOOKS_PER_PAGE, Math.min(books_per_page, MAX_BOOKS_PER_PAGE));
+        KeysetPage<Book> books = bookService.findOverdue(cursor, perPage);
+        model.addAttribute("books", books.getContent());
+        model.addAttribute("first", cursor == null);
+        model.addAttribute("booksPerPage", perPage);
+        model.addAttribute("nextCursor", books.getNextCursor());
+        return "books/overdue";
+    }
+
     // Решта методів контролера (newBook, create, edit, update, delete, release, assign, search) мають аналогічний принцип дії
     // Вони обробляють відповідні HTTP-запити та виконують відповідні дії з об'єктами Book
     // Наприклад, метод create обробляє POST-запит на шляху "/books"
@@ -130,23 +248,69 @@ public class BooksController {
 
     @DeleteMapping("/{id}")
     public String delete(@PathVariable("id") int id) {
-        bookService.delete(id);
+        deleteAll(Collections.singletonList(id));
+        return "redirect:/books";
+    }
+
+    // Метод deleteAll обробляє DELETE-запит на шляху "/books" з параметрами ids - видалення кількох книг одним запитом.
+    // Якщо видану книгу не вдалося повернути, нічого не видаляється і відповідь - 409.
+    @DeleteMapping
+    public String deleteAll(@RequestParam("ids") List<Integer> ids) {
+        try {
+            bookService.deleteAll(ids);
+        } catch (ConcurrencyFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, RELEASE_CONFLICT, e);
+        }
         return "redirect:/books";
     }
 
     @PostMapping("/{id}/release")
-    public String release(@PathVariable("id") int id) {//метод для вивільнення книги
-        bookService.release(id);
+    public String release(@PathVariable("id") int id, RedirectAttributes redirectAttributes) {//метод для вивільнення книги
+        try {
+            if (!bookService.release(id))
+                redirectAttributes.addFlashAttribute("error", "Книга вже вільна");
+        } catch (ConcurrencyFailureException e) {
+            redirectAttributes.addFlashAttribute("error", RELEASE_CONFLICT);
+        }
         return "redirect:/books/" + id;
     }
 
     @PostMapping("/{id}/assign")
-    public String assign(@PathVariable("id") int id, @ModelAttribute("person") Person selectedPerson) {
+    public String assign(@PathVariable("id") int id, @ModelAttribute("person") Person selectedPerson,
+                         RedirectAttributes redirectAttributes) {
 //В selectedPerson призначено тільки поле id, всі інші поля - null
-        bookService.assign(id, selectedPerson);//метод для присвоєння книги
+        if (!bookService.assign(id, selectedPerson))//метод для присвоєння книги
+            redirectAttributes.addFlashAttribute("error", "Книгу вже видано іншому читачеві");
         return "redirect:/books/" + id;
     }
 
+    // Метод releaseAll обробляє POST-запит на шляху "/books/release" - повернення кількох книг одразу.
+    // ids - ідентифікатори книг, усі книги повертаються в одній транзакції (або жодна, якщо якусь не вдалося повернути).
+    // person_id - якщо книги повертали зі сторінки читача, після повернення показується його сторінка.
+    @PostMapping("/release")
+    public String releaseAll(@RequestParam("ids") List<Integer> ids,
+                             @RequestParam(value = "person_id", required = false) Integer personId,
+                             RedirectAttributes redirectAttributes) {
+        try {
+            int released = bookService.releaseAll(ids);
+            redirectAttributes.addFlashAttribute("message", "Повернуто книг: " + released + " з " + ids.size());
+        } catch (ConcurrencyFailureException e) {
+            redirectAttributes.addFlashAttribute("message", "Жодну книгу не повернуто. " + RELEASE_CONFLICT);
+        }
+        return personId != null ? "redirect:/people/" + personId : "redirect:/books";
+    }
+
+    // Метод assignAll обробляє POST-запит на шляху "/books/assign" - видача кількох книг одному читачеві.
+    // Книги, які вже видано іншим читачам, пропускаються, у повідомленні - скільки книг видано.
+    @PostMapping("/assign")
+    public String assignAll(@RequestParam("ids") List<Integer> ids, @ModelAttribute("person") Person selectedPerson,
+                            RedirectAttributes redirectAttributes) {
+//В selectedPerson призначено тільки поле id, всі інші поля - null
+        int assigned = bookService.assignAll(ids, selectedPerson);
+        redirectAttributes.addFlashAttribute("message", "Видано книг: " + assigned + " з " + ids.size());
+        return "redirect:/people/" + selectedPerson.getId();
+    }
+
     /*
     Цей код додає атрибут books до моделі, який містить результати пошуку,
     або атрибут error, який містить повідомлення про те, що книги не знайдено,
@@ -165,4 +329,78 @@ public class BooksController {
         }
         return "books/search";
     }
+
+    // Метод fullText обробляє GET-запит на шляху "/books/fulltext" - пошук за словами назви та автора
+    // з урахуванням помилок, з сортуванням за релевантністю та посторінковим виводом.
+    // available - фільтр за доступністю: true - лише вільні книги, false - лише видані, без параметра - усі.
+    @GetMapping("/fulltext")
+    public String fullText(@RequestParam(value = "q", required = false) String q,
+                           @RequestParam(required = false) Boolean available,
+                           @RequestParam(defaultValue = "0") int page,
+                           @RequestParam(defaultValue = "20") int size,
+                           Model model) {
+        // page і size обмежуються так само, як limit в autocomplete: індекс тримає в купі (page + 1) * size
+        // найкращих збігів, тому без меж один запит міг би зайняти довільно багато пам'яті
+        int pageSize = Math.max(1, Math.min(size, MAX_SEARCH_PAGE_SIZE));
+        int lastPage = MAX_SEARCH_DEPTH / pageSize - 1;
+        int pageNumber = Math.max(0, Math.min(page, lastPage));
+        model.addAttribute("q", q);
+        model.addAttribute("available", available);
+        model.addAttribute("page", pageNumber);
+        model.addAttribute("size", pageSize);
+        if (q != null && !q.isBlank()) {
+            requireSearchReady();
+            BookSearchResult result = bookService.fullTextSearch(q, available, pageNumber, pageSize);
+            model.addAttribute("books", result.getBooks());
+            model.addAttribute("total", result.getTotal());
+            model.addAttribute("hasNext", pageNumber < lastPage && (pageNumber + 1) * pageSize < result.getTotal());
+        }
+        return "books/fulltext";
+    }
+
+    // Метод export обробляє GET-запит на шляху "/books/export" і віддає весь каталог у форматі format (csv або jsonl).
+    // Книги пишуться у відповідь по мірі читання з бази, тому експорт не тримає каталог у пам'яті.
+    @GetMapping("/export")
+    public void export(@RequestParam(defaultValue = "csv") String format,
+                       HttpServletResponse response) throws IOException {
+        BookFormat bookFormat = BookFormat.of(format);
+        response.setContentType(bookFormat.getContentType());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"books." + bookFormat.getExtension() + "\"");
+        bookTransferService.export(bookFormat, response.getWriter());
+    }
+
+    // Метод importBooks обробляє POST-запит на шляху "/books/import": тіло запиту - файл у форматі format
+    // (csv з заголовком title,author,year або jsonl), кодування UTF-8. Повертає JSON-звіт імпорту.
+    // Якщо імпорт зупинився, звіт частковий (failedLine): 400 - файл некоректний або обірвався, 500 - помилка бази.
+    // Приклад: curl --data-binary @books.csv -H "Content-Type: text/csv" "http://.../books/import?format=csv"
+    @PostMapping(value = "/import", produces = "application/json")
+    @ResponseBody
+    public ResponseEntity<ImportReport> importBooks(@RequestParam(defaultValue = "csv") String format,
+                                                    HttpServletRequest request) throws IOException {
+        Reader body = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8);
+        ImportReport report = bookTransferService.importBooks(BookFormat.of(format), body);
+        if (report.getFailure() == null)
+            return ResponseEntity.ok(report);
+        HttpStatus status = report.getFailure() == ImportReport.Failure.INPUT
+                ? HttpStatus.BAD_REQUEST : HttpStatus.INTERNAL_SERVER_ERROR;
+        return ResponseEntity.status(status).body(report);
+    }
+
+    // Метод autocomplete обробляє GET-запит на шляху "/books/autocomplete" і повертає JSON
+    // з книгами, назви яких починаються з q. Відповідь будується з індексу в пам'яті, тому його можна
+    // викликати на кожне натискання клавіші. limit обмежено, щоб відповідь лишалась маленькою.
+    @GetMapping(value = "/autocomplete", produces = "application/json")
+    @ResponseBody
+    public List<BookSuggestion> autocomplete(@RequestParam("q") String q,
+                                             @RequestParam(defaultValue = "10") int limit) {
+        requireSearchReady();
+        return bookService.suggestTitles(q, Math.min(limit, MAX_SUGGESTIONS));
+    }
+
+    // Поки індекси пошуку будуються після старту, пошук по них відповідає 503, а не порожнім результатом
+    private void requireSearchReady() {
+        if (!bookService.isSearchReady())
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Індекс пошуку ще будується");
+    }
 }
@@ -0,0 +1,46 @@
+package ua.ypon.project2SpringLibHib.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import ua.ypon.project2SpringLibHib.search.IndexReadiness;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас HealthController відповідає балансувальнику чи оркестратору, чи екземпляр готовий приймати трафік.
+Контекст стартує, не чекаючи на індекси пошуку (вони будуються у фоновому потоці, див. IndexReadiness),
+тому "живий" і "готовий" - різні стани.
+ */
+@Controller
+@RequestMapping("/health")
+public class HealthController {
+
+    private final IndexReadiness indexReadiness;
+
+    @Autowired
+    public HealthController(IndexReadiness indexReadiness) {
+        this.indexReadiness = indexReadiness;
+    }
+
+    // Метод live відповідає 200, щойно контекст запущено.
+    @GetMapping(value = "/live", produces = "text/plain; charset=utf-8")
+    @ResponseBody
+    public String live() {
+        return "live";
+    }
+
+    // Метод ready відповідає 200, коли індекси пошуку побудовано, і 503 - поки вони будуються.
+    @GetMapping(value = "/ready", produces = "text/plain; charset=utf-8")
+    @ResponseBody
+    public ResponseEntity<String> ready() {
+        if (!indexReadiness.isReady())
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("indexing");
+        return ResponseEntity.ok("ready");
+    }
+}
@@ -0,0 +1,71 @@
+package ua.ypon.project2SpringLibHib.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import ua.ypon.project2SpringLibHib.datasource.ReadWriteRoutingDataSource;
+import ua.ypon.project2SpringLibHib.ledger.LoanLedger;
+import ua.ypon.project2SpringLibHib.metrics.HibernateMetrics;
+import ua.ypon.project2SpringLibHib.metrics.PoolMetrics;
+import ua.ypon.project2SpringLibHib.metrics.RequestMetrics;
+import ua.ypon.project2SpringLibHib.metrics.StartupTimeline;
+import ua.ypon.project2SpringLibHib.search.IndexReadiness;
+import ua.ypon.project2SpringLibHib.util.FragmentCache;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас MetricsController віддає живі метрики застосунку у текстовому форматі Prometheus,
+щоб їх можна було збирати без окремого агента.
+ */
+@Controller
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    private final PoolMetrics poolMetrics;
+    private final HibernateMetrics hibernateMetrics;
+    private final FragmentCache fragmentCache;
+    private final ReadWriteRoutingDataSource routingDataSource;
+    private final RequestMetrics requestMetrics;
+    private final LoanLedger loanLedger;
+    private final IndexReadiness indexReadiness;
+    private final ApplicationContext applicationContext;
+
+    @Autowired
+    public MetricsController(PoolMetrics poolMetrics, HibernateMetrics hibernateMetrics, FragmentCache fragmentCache,
+                             ReadWriteRoutingDataSource routingDataSource, RequestMetrics requestMetrics,
+                             LoanLedger loanLedger, IndexReadiness indexReadiness, ApplicationContext applicationContext) {
+        this.poolMetrics = poolMetrics;
+        this.hibernateMetrics = hibernateMetrics;
+        this.fragmentCache = fragmentCache;
+        this.routingDataSource = routingDataSource;
+        this.requestMetrics = requestMetrics;
+        this.loanLedger = loanLedger;
+        this.indexReadiness = indexReadiness;
+        this.applicationContext = applicationContext;
+    }
+
+    @GetMapping(produces = "text/plain; version=0.0.4; charset=utf-8")
+    @ResponseBody
+    public String metrics() {
+        StringBuilder out = new StringBuilder();
+        requestMetrics.writePrometheus(out);
+        poolMetrics.writePrometheus(out);
+        routingDataSource.writePrometheus(out);
+        hibernateMetrics.writePrometheus(out);
+        fragmentCache.writePrometheus(out);
+        loanLedger.writePrometheus(out);
+        indexReadiness.writePrometheus(out);
+        //StartupTimeline є, коли контекст створив MySpringMvcDispatcherServletInitializer
+        ApplicationStartup startup = ((ConfigurableApplicationContext) applicationContext).getApplicationStartup();
+        if (startup instanceof StartupTimeline)
+            ((StartupTimeline) startup).writePrometheus(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package ua.ypon.project2SpringLibHib.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ua.ypon.project2SpringLibHib.dto.CursorPage;
+import ua.ypon.project2SpringLibHib.dto.LoanView;
+import ua.ypon.project2SpringLibHib.dto.PersonView;
+import ua.ypon.project2SpringLibHib.services.BookService;
+import ua.ypon.project2SpringLibHib.services.PeopleService;
+
+import static ua.ypon.project2SpringLibHib.controllers.BooksApiController.checkLimit;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас PeopleApiController - JSON API читачів. Читач віддається без колекції books,
+книги читача - окремий ресурс /api/people/{id}/books з курсорною пагінацією.
+ */
+@RestController
+@RequestMapping(value = "/api/people", produces = "application/json")
+public class PeopleApiController {
+
+    private final PeopleService peopleService;
+    private final BookService bookService;
+
+    @Autowired
+    public PeopleApiController(PeopleService peopleService, BookService bookService) {
+        this.peopleService = peopleService;
+        this.bookService = bookService;
+    }
+
+    // GET /api/people?after=0&limit=100 - сторінка читачів у порядку id
+    @GetMapping
+    public CursorPage<PersonView> list(@RequestParam(defaultValue = "0") int after,
+                                       @RequestParam(defaultValue = "100") int limit) {
+        return peopleService.findViews(after, checkLimit(limit));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<PersonView> show(@PathVariable("id") int id) {
+        return ResponseEntity.of(peopleService.findView(id));
+    }
+
+    // GET /api/people/{id}/books?after=0&limit=100 - книги читача з ознакою прострочення
+    @GetMapping("/{id}/books")
+    public CursorPage<LoanView> books(@PathVariable("id") int id,
+                                      @RequestParam(defaultValue = "0") int after,
+                                      @RequestParam(defaultValue = "100") int limit) {
+        return bookService.findLoanViews(id, after, checkLimit(limit));
+    }
+}
@@ -1,18 +1,30 @@
 package ua.ypon.project2SpringLibHib.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
-import ua.ypon.project2SpringLibHib.models.Book;
+import org.springframework.web.context.request.ServletWebRequest;
+import ua.ypon.project2SpringLibHib.dto.LoanView;
+import ua.ypon.project2SpringLibHib.dto.PersonView;
 import ua.ypon.project2SpringLibHib.models.Person;
 import ua.ypon.project2SpringLibHib.services.BookService;
 import ua.ypon.project2SpringLibHib.services.PeopleService;
+import ua.ypon.project2SpringLibHib.util.FlushingIterator;
+import ua.ypon.project2SpringLibHib.util.FragmentCache;
+import ua.ypon.project2SpringLibHib.util.ResourceVersions;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * net.ukr@caravell 01/05/2023
@@ -30,45 +42,105 @@ import java.util.List;
 // будуть спрямовуватися до методів цього контролера.
 public class PeopleController {
 
+    //Як часто перевіряється ознака прострочення для умовного GET сторінки читача
+    private static final long OVERDUE_CHECK_PERIOD_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    //Кількість рядків, після якої потоковий список скидається клієнту
+    private static final int STREAM_CHUNK_ROWS = 200;
+    //Межі кількості рядків на сторінці рейтингу читачів
+    private static final int MIN_PEOPLE_PER_PAGE = 1;
+    private static final int MAX_PEOPLE_PER_PAGE = 1000;
+    //Межі кількості книг на сторінці читача (як у /books)
+    private static final int MIN_BOOKS_PER_PAGE = 1;
+    private static final int MAX_BOOKS_PER_PAGE = 1000;
+
     private final PeopleService peopleService;
     private final BookService bookService;
+    private final ResourceVersions versions;
+    private final FragmentCache fragmentCache;
 
     //Залежність до сервісу "PeopleService" та "BookService" встановлюється
     // за допомогою анотації "@Autowired". Це забезпечує ін'єкцію залежностей,
     // тобто Spring автоматично створить і надасть екземпляри сервісів класів
     // "PeopleService" та "BookService" для використання в контролері.
     @Autowired
-    public PeopleController(PeopleService peopleService, BookService bookService) {
+    public PeopleController(PeopleService peopleService, BookService bookService, ResourceVersions versions,
+                            FragmentCache fragmentCache) {
         this.peopleService = peopleService;
         this.bookService = bookService;
+        this.versions = versions;
+        this.fragmentCache = fragmentCache;
     }
 
-    //Метод "index(Model model)" обробляє GET-запит на шлях "/people".
-    // Він отримує всі об'єкти "Person" з сервісу "PeopleService" і
-    // передає їх у модель для подальшого відображення у представленні "people/index".
+    //Метод "index" обробляє GET-запит на шлях "/people".
+    // Він отримує всі об'єкти "Person" (проєкції PersonView) з сервісу "PeopleService" і
+    // відображає їх у представленні "people/index".
+    // Рядки списку рендеряться без кешу фрагментів: повний список - це одноразовий прохід по всіх людях,
+    // і його рядки лише витіснили б з кешу сторінки, які переглядають часто.
+    // Люди читаються курсором бази, а шаблон рендериться прямо у відповідь і скидається клієнту частинами,
+    // тому пам'ять не залежить від кількості людей.
     @GetMapping
-    public String index(Model model) {
+    public void index(ServletWebRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("text/html;charset=UTF-8");
+        Writer writer = response.getWriter();
         //Получим всех людей из Repository и передадим на отображеник в представлениe
-        model.addAttribute("people", peopleService.findAll());
-        return "people/index";
+        peopleService.streamViews(people -> {
+            Iterator<String> rows = people
+                    .map(person -> fragmentCache.render(request, "people/fragments", "row",
+                            Collections.singletonMap("person", person)))
+                    .iterator();
+            fragmentCache.renderTo(request, "people/index",
+                    Collections.singletonMap("rows", new FlushingIterator<>(rows, writer, STREAM_CHUNK_ROWS)), writer);
+        });
+    }
+
+    //Метод "top" обробляє GET-запит на шлях "/people/top" - читачі з найбільшою кількістю книг на руках
+    // (sort=active) або прострочених книг (sort=overdue), посторінково.
+    // Список будується зі збережених лічильників Person за індексом, без підрахунку книг.
+    @GetMapping("/top")
+    public String top(Model model, @RequestParam(defaultValue = "active") String sort,
+                      @RequestParam(defaultValue = "0") int page,
+                      @RequestParam(defaultValue = "20") int people_per_page) {
+        boolean byOverdue = "overdue".equals(sort);
+        //Розмір сторінки обмежується: 0 і від'ємні значення дають сторінку з одного читача.
+        // Від'ємна сторінка дає першу, а зсув сторінки не виходить за межі int (setFirstResult).
+        int perPage = Math.max(MIN_PEOPLE_PER_PAGE, Math.min(people_per_page, MAX_PEOPLE_PER_PAGE));
+        int pageNumber = Math.max(0, Math.min(page, Integer.MAX_VALUE / perPage - 1));
+        Slice<PersonView> people = peopleService.findTopBorrowers(byOverdue, pageNumber, perPage);
+        model.addAttribute("people", people.getContent());
+        model.addAttribute("sort", byOverdue ? "overdue" : "active");
+        model.addAttribute("page", pageNumber);
+        model.addAttribute("peoplePerPage", perPage);
+        //Slice читає на один рядок більше, тому "наступна" не показується, коли останню сторінку заповнено повністю
+        model.addAttribute("hasNext", people.hasNext());
+        return "people/top";
     }
 
     //Метод "show(@PathVariable("id") int id, Model model)" обробляє GET-запит на шлях "/people/{id}",
     // де "{id}" - це ідентифікатор об'єкта "Person".
     // Він отримує об'єкт "Person" з сервісу "PeopleService" за заданим ідентифікатором і
-    // передає його у модель, а також отримує список книг, пов'язаних з цим об'єктом "Person".
+    // передає його у модель, а також отримує сторінку книг, які тримає ця особа, разом з ознакою прострочення.
+    // Книги читаються одним запитом-проєкцією посторінково (page, books_per_page),
+    // тому пам'ять на запит обмежена навіть для читачів з дуже довгою історією.
     // Ці дані використовуються для відображення інформації про особу та списку книг у представленні "people/show".
     @GetMapping("/{id}")
-    public String show(@PathVariable("id") int id, Model model) {
+    public String show(@PathVariable("id") int id, Model model, ServletWebRequest request,
+                       @RequestParam(defaultValue = "0") int page,
+                       @RequestParam(defaultValue = "50") int books_per_page) {
+        //Сторінка залежить від читача і від книг (видача/повернення будь-якої книги змінює каталог).
+        // Ознака прострочення змінюється з часом, тому версія сторінки також змінюється щохвилини.
+        if (versions.checkNotModified(request, OVERDUE_CHECK_PERIOD_MILLIS,
+                versions.personVersion(id), versions.catalogueVersion()))
+            return null;
+
         model.addAttribute("person", peopleService.findOne(id));
-        List<Book> books = bookService.findBookByOwner(peopleService.findOne(id));
-        model.addAttribute("books", books);
-        List<Boolean> isTakeBookList = new ArrayList<>();
-        for (Book book : books) {
-            isTakeBookList.add(bookService.reBook(book));
-            System.out.println(isTakeBookList);
-        }
-        model.addAttribute("isTakeBookList", isTakeBookList);
+        //Номер і розмір сторінки обмежуються так само, як у рейтингу читачів
+        int perPage = Math.max(MIN_BOOKS_PER_PAGE, Math.min(books_per_page, MAX_BOOKS_PER_PAGE));
+        int pageNumber = Math.max(0, Math.min(page, Integer.MAX_VALUE / perPage - 1));
+        Slice<LoanView> loans = bookService.findLoans(id, PageRequest.of(pageNumber, perPage));
+        model.addAttribute("books", loans.getContent());
+        model.addAttribute("page", pageNumber);
+        model.addAttribute("booksPerPage", perPage);
+        model.addAttribute("hasNext", loans.hasNext());
         return "people/show";
     }
 
@@ -128,4 +200,12 @@ public class PeopleController {
         peopleService.delete(id);
         return "redirect:/people";
     }
+
+    //Метод "deleteAll(List<Integer> ids)" обробляє DELETE-запит на шлях "/people" з параметрами ids
+    // і видаляє всіх вибраних людей (наприклад неактивних читачів) разом, їхні книги стають вільними.
+    @DeleteMapping
+    public String deleteAll(@RequestParam("ids") List<Integer> ids) {
+        peopleService.deleteAll(ids);
+        return "redirect:/people";
+    }
 }
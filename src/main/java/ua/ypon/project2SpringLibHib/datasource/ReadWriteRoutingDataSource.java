@@ -0,0 +1,169 @@
+package ua.ypon.project2SpringLibHib.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас ReadWriteRoutingDataSource видає з'єднання транзакцій readOnly (класовий @Transactional(readOnly = true)
+у сервісах) з пулів реплік по колу, а з'єднання транзакцій запису та все поза транзакцією - з primary.
+
+Рішення приймається в момент отримання з'єднання, тому джерело треба обгортати в LazyConnectionDataSourceProxy:
+тоді з'єднання береться при першому запиті, коли ознака readOnly транзакції вже встановлена.
+Фонова перевірка раз на healthCheckMillis виключає недоступні репліки й повертає відновлені;
+якщо з'єднання з реплікою не вдалося отримати, вона виключається одразу, а запит іде на primary.
+Після коміту транзакції запису клієнт читає з primary ще stickyMillis (див. ReadYourWrites),
+щоб не побачити стан до власного запису через відставання реплік. Так само на primary йдуть читання сторінок,
+дані яких змінились менше ніж stickyMillis тому (див. ResourceVersions), - для всіх клієнтів.
+ */
+public class ReadWriteRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long stickyMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryConnections = new LongAdder();
+    private final ScheduledExecutorService healthChecker;
+
+    public ReadWriteRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicaPools,
+                                      long healthCheckMillis, long stickyMillis) {
+        this.primary = primary;
+        this.stickyMillis = stickyMillis;
+        for (HikariDataSource pool : replicaPools)
+            replicas.add(new Replica(pool));
+
+        if (replicas.isEmpty()) {
+            healthChecker = null;
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, primary.getPoolName() + "-replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, healthCheckMillis, healthCheckMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public HikariDataSource getPrimary() {
+        return primary;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    // Метод route вибирає пул для поточної транзакції і бере з нього з'єднання через connect.
+    private Connection route(ConnectionFactory connect) throws SQLException {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                if (!ReadYourWrites.isPinnedToPrimary(stickyMillis)) {
+                    Connection connection = replicaConnection(connect);
+                    if (connection != null)
+                        return connection;
+                }
+            } else if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        ReadYourWrites.wrote(stickyMillis);
+                    }
+                });
+            }
+        }
+        primaryConnections.increment();
+        return connect.open(primary);
+    }
+
+    // Метод replicaConnection бере з'єднання з наступної доступної репліки або повертає null.
+    private Connection replicaConnection(ConnectionFactory connect) throws SQLException {
+        int size = replicas.size();
+        for (int attempt = 0; attempt < size; attempt++) {
+            Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), size));
+            if (!replica.up)
+                continue;
+            try {
+                Connection connection = connect.open(replica.pool);
+                replica.connections.increment();
+                return connection;
+            } catch (SQLFeatureNotSupportedException e) {
+                //пул не підтримує такий спосіб отримати з'єднання - репліка при цьому доступна
+                throw e;
+            } catch (SQLException e) {
+                replica.up = false;
+            }
+        }
+        return null;
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection()) {
+                replica.up = connection.isValid(1);
+            } catch (SQLException | RuntimeException e) {
+                replica.up = false;
+            }
+        }
+    }
+
+    // Метод writePrometheus дописує кількість виданих з'єднань по цілях і стан реплік.
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE db_routing_connections_total counter\n");
+        out.append("db_routing_connections_total{pool=\"").append(primary.getPoolName()).append("\",role=\"primary\"} ")
+                .append(primaryConnections.sum()).append('\n');
+        for (Replica replica : replicas) {
+            out.append("db_routing_connections_total{pool=\"").append(replica.pool.getPoolName()).append("\",role=\"replica\"} ")
+                    .append(replica.connections.sum()).append('\n');
+        }
+        out.append("# TYPE db_replica_up gauge\n");
+        for (Replica replica : replicas) {
+            out.append("db_replica_up{pool=\"").append(replica.pool.getPoolName()).append("\"} ")
+                    .append(replica.up ? 1 : 0).append('\n');
+        }
+    }
+
+    @Override
+    public void close() {
+        if (healthChecker != null)
+            healthChecker.shutdownNow();
+        for (Replica replica : replicas)
+            replica.pool.close();
+        primary.close();
+    }
+
+    // Спосіб отримати з'єднання з пулу: без облікових даних або з переданими в getConnection(username, password)
+    private interface ConnectionFactory {
+        Connection open(DataSource dataSource) throws SQLException;
+    }
+
+    private static class Replica {
+        private final HikariDataSource pool;
+        private final LongAdder connections = new LongAdder();
+        private volatile boolean up = true;
+
+        private Replica(HikariDataSource pool) {
+            this.pool = pool;
+        }
+    }
+}
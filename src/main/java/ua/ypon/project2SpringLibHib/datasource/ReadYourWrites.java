@@ -0,0 +1,87 @@
+package ua.ypon.project2SpringLibHib.datasource;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас ReadYourWrites гарантує клієнту, що після власного запису (видача/повернення книги, редагування тощо)
+він читає дані з primary, поки репліки можуть ще не отримати зміни.
+Після коміту транзакції запису клієнт отримує cookie з моментом, до якого його читання йдуть на primary,
+а решта поточного запиту позначається атрибутом. Поза HTTP-запитом (старт застосунку, фонові задачі)
+прив'язки немає.
+ */
+public final class ReadYourWrites {
+
+    private static final String COOKIE = "primary_until";
+    private static final String ATTRIBUTE = ReadYourWrites.class.getName() + ".PINNED";
+
+    private ReadYourWrites() {
+    }
+
+    // Метод isPinnedToPrimary повертає true, якщо поточний клієнт нещодавно писав і має читати з primary.
+    // Cookie не підписано, тому момент далі ніж stickyMillis від поточного не береться до уваги: клієнт не може
+    // сам назавжди прив'язати свої читання до primary.
+    public static boolean isPinnedToPrimary(long stickyMillis) {
+        HttpServletRequest request = currentRequest();
+        if (request == null)
+            return false;
+        if (request.getAttribute(ATTRIBUTE) != null)
+            return true;
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null)
+            return false;
+        for (Cookie cookie : cookies) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    long until = Long.parseLong(cookie.getValue());
+                    long now = System.currentTimeMillis();
+                    return until > now && until - now <= stickyMillis;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Метод pinToPrimary спрямовує решту читань поточного запиту на primary (без cookie для наступних запитів).
+    // Ним ResourceVersions захищає від реплік сторінки, дані яких щойно змінились.
+    public static void pinToPrimary() {
+        HttpServletRequest request = currentRequest();
+        if (request != null)
+            request.setAttribute(ATTRIBUTE, Boolean.TRUE);
+    }
+
+    // Метод wrote прив'язує поточного клієнта до primary на stickyMillis після коміту запису.
+    public static void wrote(long stickyMillis) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes))
+            return;
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+        request.setAttribute(ATTRIBUTE, Boolean.TRUE);
+        //якщо відповідь уже почала надсилатись, cookie додати не можна - лишається атрибут поточного запиту
+        if (response == null || response.isCommitted())
+            return;
+        Cookie cookie = new Cookie(COOKIE, Long.toString(System.currentTimeMillis() + stickyMillis));
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) Math.max(1, (stickyMillis + 999) / 1000));
+        response.addCookie(cookie);
+    }
+
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes
+                ? ((ServletRequestAttributes) attributes).getRequest()
+                : null;
+    }
+}
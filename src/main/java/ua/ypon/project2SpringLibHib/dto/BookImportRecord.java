@@ -0,0 +1,60 @@
+package ua.ypon.project2SpringLibHib.dto;
+
+import ua.ypon.project2SpringLibHib.models.Book;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BookImportRecord - одна книга з файлу імпорту (рядок CSV або JSON Lines).
+Містить лише поля, які дозволено задавати з файлу: id, власник і дати видачі в нього не потрапляють,
+тому їх не можна підставити через вхідні дані, навіть якщо вони є у JSON.
+ */
+public class BookImportRecord {
+
+    private String title;
+    private String author;
+    private int year;
+
+    public BookImportRecord() {
+    }
+
+    public BookImportRecord(String title, String author, int year) {
+        this.title = title;
+        this.author = author;
+        this.year = year;
+    }
+
+    // Метод toBook створює нову книгу без власника з полів запису
+    public Book toBook() {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setYear(year);
+        return book;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public void setYear(int year) {
+        this.year = year;
+    }
+}
@@ -0,0 +1,29 @@
+package ua.ypon.project2SpringLibHib.dto;
+
+import ua.ypon.project2SpringLibHib.models.Book;
+
+import java.util.List;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+//Клас BookSearchResult - сторінка результатів повнотекстового пошуку та загальна кількість знайдених книг.
+public class BookSearchResult {
+
+    private final List<Book> books;
+    private final int total;
+
+    public BookSearchResult(List<Book> books, int total) {
+        this.books = books;
+        this.total = total;
+    }
+
+    // Книги поточної сторінки у порядку релевантності
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+}
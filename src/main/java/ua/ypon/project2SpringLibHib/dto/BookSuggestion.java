@@ -0,0 +1,24 @@
+package ua.ypon.project2SpringLibHib.dto;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+//Клас BookSuggestion - один варіант автодоповнення назви книги у JSON-відповіді.
+public class BookSuggestion {
+
+    private final int id;
+    private final String title;
+
+    public BookSuggestion(int id, String title) {
+        this.id = id;
+        this.title = title;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
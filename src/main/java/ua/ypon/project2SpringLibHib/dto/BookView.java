@@ -0,0 +1,56 @@
+package ua.ypon.project2SpringLibHib.dto;
+
+import java.util.Date;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BookView - проєкція книги для JSON API. Створюється прямо в JPQL-запиті (select new ...),
+тому сутність Book з її власником не завантажується і не серіалізується: замість об'єкта Person
+у відповіді лише id читача.
+ */
+public class BookView {
+
+    private final int id;
+    private final String title;
+    private final String author;
+    private final int year;
+    private final Integer ownerId;
+    private final Date dueAt;
+
+    public BookView(int id, String title, String author, int year, Integer ownerId, Date dueAt) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.year = year;
+        this.ownerId = ownerId;
+        this.dueAt = dueAt;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    // id читача, у якого книга, або null, якщо книга вільна
+    public Integer getOwnerId() {
+        return ownerId;
+    }
+
+    // Термін повернення книги або null, якщо книга вільна
+    public Date getDueAt() {
+        return dueAt;
+    }
+}
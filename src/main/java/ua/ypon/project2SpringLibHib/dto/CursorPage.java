@@ -0,0 +1,29 @@
+package ua.ypon.project2SpringLibHib.dto;
+
+import java.util.List;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас CursorPage - сторінка JSON API з курсорною пагінацією.
+next - значення параметра after для наступної сторінки (id останнього елемента) або null, якщо це остання сторінка.
+ */
+public class CursorPage<T> {
+
+    private final List<T> items;
+    private final Integer next;
+
+    public CursorPage(List<T> items, Integer next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public Integer getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,71 @@
+package ua.ypon.project2SpringLibHib.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+//Клас ImportReport - підсумок масового імпорту: скільки книг збережено, скільки відхилено і чому.
+//Якщо імпорт зупинився на помилці читання чи збереження, звіт частковий: imported - книги з уже закомічених
+//порцій, а failedLine - перший рядок, з якого нічого не збережено (з нього можна повторити імпорт решти файлу).
+public class ImportReport {
+
+    // Чому імпорт зупинився: некоректні вхідні дані (повторювати той самий файл марно) або помилка бази
+    public enum Failure {
+        INPUT, DATABASE
+    }
+
+    // Скільки помилок зберігати у звіті, щоб звіт лишався маленьким навіть для мільйонів поганих рядків
+    private static final int MAX_ERRORS = 100;
+
+    private long imported;
+    private long rejected;
+    private final List<String> errors = new ArrayList<>();
+    private Integer failedLine;
+    private Failure failure;
+    private String failureReason;
+
+    public void addImported(int count) {
+        imported += count;
+    }
+
+    // Метод reject рахує відхилений запис і запам'ятовує причину з номером рядка
+    public void reject(int line, String reason) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS)
+            errors.add("рядок " + line + ": " + reason);
+    }
+
+    // Метод fail позначає, що імпорт зупинився: рядки з line і далі не збережено
+    public void fail(int line, Failure failure, String reason) {
+        this.failedLine = line;
+        this.failure = failure;
+        this.failureReason = reason;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public Integer getFailedLine() {
+        return failedLine;
+    }
+
+    public Failure getFailure() {
+        return failure;
+    }
+
+    public String getFailureReason() {
+        return failureReason;
+    }
+}
@@ -0,0 +1,41 @@
+package ua.ypon.project2SpringLibHib.dto;
+
+import java.util.Date;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LoanState - видана книга, якою її бачить повернення: id книги, id читача і термін повернення.
+За ним BooksRepository.releaseLoans будує умовний UPDATE, який спрацьовує, лише поки книга в тому самому стані,
+тому кількість змінених рядків точно каже, чиї лічильники і на скільки зменшити.
+ */
+public class LoanState {
+
+    private final int bookId;
+    private final int ownerId;
+    private final Date dueAt;
+
+    public LoanState(int bookId, int ownerId, Date dueAt) {
+        this.bookId = bookId;
+        this.ownerId = ownerId;
+        this.dueAt = dueAt;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public int getOwnerId() {
+        return ownerId;
+    }
+
+    public Date getDueAt() {
+        return dueAt;
+    }
+
+    // Метод isOverdue - чи прострочена книга на момент now.
+    public boolean isOverdue(Date now) {
+        return dueAt != null && dueAt.before(now);
+    }
+}
@@ -0,0 +1,55 @@
+package ua.ypon.project2SpringLibHib.dto;
+
+import java.util.Date;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LoanView - проєкція книги, яку тримає читач, для сторінки профілю.
+Створюється прямо в JPQL-запиті (select new ...), тому сутності Book та їхні власники не завантажуються,
+а прапорець overdue обчислює база даних.
+ */
+public class LoanView {
+
+    private final int id;
+    private final String title;
+    private final String author;
+    private final int year;
+    private final Date createAt;
+    private final boolean overdue;
+
+    public LoanView(int id, String title, String author, int year, Date createAt, boolean overdue) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+        this.year = year;
+        this.createAt = createAt;
+        this.overdue = overdue;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public Date getCreateAt() {
+        return createAt;
+    }
+
+    // true, якщо книгу тримають довше за термін видачі
+    public boolean isOverdue() {
+        return overdue;
+    }
+}
@@ -0,0 +1,42 @@
+package ua.ypon.project2SpringLibHib.dto;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+//Клас PersonView - проєкція читача для JSON API, без колекції книг (книги читача - окремий запит).
+public class PersonView {
+
+    private final int id;
+    private final String name;
+    private final int yearOfBirth;
+    private final int activeLoans;
+    private final int overdueLoans;
+
+    public PersonView(int id, String name, int yearOfBirth, int activeLoans, int overdueLoans) {
+        this.id = id;
+        this.name = name;
+        this.yearOfBirth = yearOfBirth;
+        this.activeLoans = activeLoans;
+        this.overdueLoans = overdueLoans;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getYearOfBirth() {
+        return yearOfBirth;
+    }
+
+    public int getActiveLoans() {
+        return activeLoans;
+    }
+
+    public int getOverdueLoans() {
+        return overdueLoans;
+    }
+}
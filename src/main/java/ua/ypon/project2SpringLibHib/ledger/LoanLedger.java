@@ -0,0 +1,358 @@
+package ua.ypon.project2SpringLibHib.ledger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ua.ypon.project2SpringLibHib.metrics.LatencyHistogram;
+import ua.ypon.project2SpringLibHib.models.LoanEvent;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LoanLedger пише журнал видач (LoanEvent) у таблицю loan_event поза транзакцією видачі.
+BookService передає події після коміту, вони стають в обмежену чергу (ledger.queue_capacity),
+а фоновий потік забирає їх пакетами до ledger.batch_size (чекаючи на наповнення пакета не довше
+ledger.flush_interval мс) і вставляє одним JDBC batch INSERT у власній транзакції на primary.
+Тому час видачі не залежить від запису журналу.
+Журнал пише через окремий пул з одним з'єднанням (SpringConfig.ledgerDataSource): потік видачі після коміту
+ще тримає з'єднання основного пулу, і якби він або фоновий потік брали друге з'єднання з того самого пулу,
+при вичерпаному пулі всі чекали б одне на одного.
+
+Гарантії:
+- подія потрапляє в чергу лише після коміту видачі/повернення, тобто журнал не містить відкочених змін;
+- якщо база недоступна, пакет повторюється з експоненційною паузою (до 5 с), події не відкидаються;
+- переповнення черги - зворотний тиск: видача чекає, поки фоновий потік звільнить місце, і сама в базу не пише,
+  тож сповільнюються лише видачі під час відставання журналу (час очікування - ledger_backpressure_seconds_total);
+- при зупинці контексту (stop) нові події та ті, що чекали на місце, пишуться синхронно через пул журналу,
+  а черга дописується протягом ledger.drain_timeout мс;
+- подія, яку так і не вдалося записати, пишеться в лог з рівнем ERROR (для ручного відновлення)
+  і рахується в ledger_events_total{result="lost"}. При аварійному завершенні процесу
+  втрачаються події, що ще стояли в черзі (зазвичай - за останні flush_interval мс).
+
+У PostgreSQL loan_event - секціонована за місяцями таблиця (ledger.monthly_partitions=true):
+    CREATE TABLE loan_event (id bigserial, book_id int NOT NULL, person_id int NOT NULL,
+        type varchar(8) NOT NULL, occurred_at timestamp NOT NULL, PRIMARY KEY (id, occurred_at))
+        PARTITION BY RANGE (occurred_at);
+    CREATE INDEX loan_event_book_idx ON loan_event (book_id, occurred_at);
+    CREATE INDEX loan_event_person_idx ON loan_event (person_id, occurred_at);
+Секції поточного і наступного місяця створюються перед першим записом у місяць,
+тож старі місяці можна від'єднувати чи архівувати цілком (DETACH PARTITION) без DELETE.
+ */
+@Component
+public class LoanLedger implements SmartLifecycle {
+
+    private static final Log log = LogFactory.getLog(LoanLedger.class);
+
+    private static final String INSERT =
+            "INSERT INTO loan_event(book_id, person_id, type, occurred_at) VALUES (?, ?, ?, ?)";
+    private static final long FIRST_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 5000;
+
+    private final DataSource dataSource;
+    private final BlockingQueue<LoanEvent> queue;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long offerTimeoutMillis;
+    private final long drainTimeoutMillis;
+    private final boolean monthlyPartitions;
+
+    // running змінюється під write-lock, а події стають у чергу під read-lock:
+    // після stop() жодна подія не потрапить у чергу, яку вже ніхто не дописує.
+    // stopping виставляється до write-lock: видачі, що чекають на місце в черзі, перестають чекати
+    // (раз на offer_timeout) і відпускають read-lock, навіть якщо фоновий потік не може писати
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    private volatile boolean running;
+    private volatile boolean stopping;
+    private volatile long drainDeadlineMillis = Long.MAX_VALUE;
+    private Thread writer;
+    // Місяці, для яких секції вже є; null у partitioned - ще невідомо, чи база це PostgreSQL
+    private final Set<YearMonth> partitions = ConcurrentHashMap.newKeySet();
+    private volatile Boolean partitioned;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder writtenDirect = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder backpressureNanos = new LongAdder();
+    private final LatencyHistogram flushes = new LatencyHistogram();
+
+    @Autowired
+    public LoanLedger(@Qualifier("ledgerDataSource") DataSource ledgerDataSource,
+                      @Value("${ledger.queue_capacity}") int queueCapacity,
+                      @Value("${ledger.batch_size}") int batchSize,
+                      @Value("${ledger.flush_interval}") long flushIntervalMillis,
+                      @Value("${ledger.offer_timeout}") long offerTimeoutMillis,
+                      @Value("${ledger.drain_timeout}") long drainTimeoutMillis,
+                      @Value("${ledger.monthly_partitions}") boolean monthlyPartitions) {
+        this.dataSource = ledgerDataSource;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.monthlyPartitions = monthlyPartitions;
+    }
+
+    // Метод record ставить події в чергу фонового запису. Викликається після коміту (TransactionHooks.afterCommit).
+    // Якщо черга повна - чекає на місце, перевіряючи раз на offer_timeout, чи журнал не зупиняється.
+    // Лише події, записані під час чи після зупинки, вставляються одразу (через пул журналу).
+    public void record(List<LoanEvent> events) {
+        if (events.isEmpty())
+            return;
+        int queued = 0;
+        boolean waited = false;
+        boolean interrupted = false;
+        long start = System.nanoTime();
+        runningLock.readLock().lock();
+        try {
+            while (running && !stopping && queued < events.size()) {
+                try {
+                    if (queue.offer(events.get(queued), offerTimeoutMillis, TimeUnit.MILLISECONDS))
+                        queued++;
+                    else
+                        waited = true;
+                } catch (InterruptedException e) {
+                    //подію після коміту не відкидаємо: чекаємо далі, а переривання відновлюємо в кінці
+                    interrupted = true;
+                }
+            }
+        } finally {
+            runningLock.readLock().unlock();
+        }
+        if (waited)
+            backpressureNanos.add(System.nanoTime() - start);
+        if (queued < events.size())
+            writeDirect(events.subList(queued, events.size()));
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    public void record(LoanEvent event) {
+        record(Collections.singletonList(event));
+    }
+
+    private void writeDirect(List<LoanEvent> events) {
+        try {
+            insert(events);
+            writtenDirect.add(events.size());
+        } catch (SQLException e) {
+            failures.increment();
+            lost(events, e);
+        }
+    }
+
+    // Цикл фонового потоку: пакет з першої події і тих, що надійшли протягом flush_interval,
+    // поки не набереться batch_size. Після stop() дописує чергу до кінця.
+    private void writeLoop() {
+        List<LoanEvent> batch = new ArrayList<>(batchSize);
+        while ((running || !queue.isEmpty()) && !Thread.currentThread().isInterrupted()) {
+            try {
+                LoanEvent first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || wait <= 0)
+                        break;
+                    LoanEvent next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!batch.isEmpty())
+                writeWithRetry(batch);
+            batch.clear();
+        }
+    }
+
+    private void writeWithRetry(List<LoanEvent> batch) {
+        long delay = FIRST_RETRY_DELAY_MILLIS;
+        while (true) {
+            try {
+                insert(batch);
+                written.add(batch.size());
+                return;
+            } catch (SQLException e) {
+                failures.increment();
+                if (Thread.currentThread().isInterrupted() || System.currentTimeMillis() + delay > drainDeadlineMillis) {
+                    lost(batch, e);
+                    return;
+                }
+                log.warn("Loan ledger batch of " + batch.size() + " events failed, retrying in " + delay + " ms: " + e);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    lost(batch, e);
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void insert(List<LoanEvent> events) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            ensurePartitions(connection, events);
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                for (LoanEvent event : events) {
+                    insert.setInt(1, event.getBookId());
+                    insert.setInt(2, event.getPersonId());
+                    insert.setString(3, event.getType().name());
+                    insert.setTimestamp(4, new Timestamp(event.getOccurredAt().getTime()));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                //секцію могли від'єднати чи видалити - наступна спроба створить її знову
+                partitions.clear();
+                throw e;
+            }
+        }
+        flushes.record(System.nanoTime() - start);
+    }
+
+    // Метод ensurePartitions створює в PostgreSQL секції loan_event для місяців подій (і наступного місяця наперед,
+    // щоб перші події нового місяця не чекали на DDL). Для інших баз (H2 у тестах продуктивності) нічого не робить.
+    private void ensurePartitions(Connection connection, List<LoanEvent> events) throws SQLException {
+        if (!monthlyPartitions)
+            return;
+        if (partitioned == null)
+            partitioned = "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+        if (!partitioned)
+            return;
+        for (LoanEvent event : events) {
+            YearMonth month = YearMonth.from(event.getOccurredAt().toInstant().atZone(ZoneId.systemDefault()));
+            if (partitions.contains(month))
+                continue;
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(partitionDdl(month));
+                statement.execute(partitionDdl(month.plusMonths(1)));
+            } catch (SQLException e) {
+                //вставка в несекціоновану таблицю все одно пройде, а без секції - впаде і повториться
+                log.warn("Could not create loan_event partition for " + month + ": " + e);
+            }
+            partitions.add(month);
+        }
+    }
+
+    private static String partitionDdl(YearMonth month) {
+        return String.format("CREATE TABLE IF NOT EXISTS loan_event_y%dm%02d PARTITION OF loan_event " +
+                        "FOR VALUES FROM ('%s-01') TO ('%s-01')",
+                month.getYear(), month.getMonthValue(), month, month.plusMonths(1));
+    }
+
+    private void lost(List<LoanEvent> events, Exception cause) {
+        lost.add(events.size());
+        log.error("Loan ledger could not write " + events.size() + " events" + (cause == null ? "" : ": " + cause));
+        for (LoanEvent event : events)
+            log.error("Loan ledger lost " + event);
+    }
+
+    @Override
+    public void start() {
+        runningLock.writeLock().lock();
+        try {
+            drainDeadlineMillis = Long.MAX_VALUE;
+            stopping = false;
+            running = true;
+            writer = new Thread(this::writeLoop, "loan-ledger-writer");
+            //процес не чекає на потік: черга дописується в stop()
+            writer.setDaemon(true);
+            writer.start();
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+    }
+
+    // Метод stop викликається при закритті контексту до знищення пулу з'єднань: дописує чергу
+    // протягом drain_timeout, а події, які не встигли записати, пише в лог як втрачені.
+    @Override
+    public void stop() {
+        stopping = true;
+        runningLock.writeLock().lock();
+        try {
+            if (!running)
+                return;
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+        drainDeadlineMillis = System.currentTimeMillis() + drainTimeoutMillis;
+        try {
+            writer.join(drainTimeoutMillis + flushIntervalMillis);
+            if (writer.isAlive()) {
+                writer.interrupt();
+                writer.join(MAX_RETRY_DELAY_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<LoanEvent> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty())
+            lost(rest, null);
+        log.info("Loan ledger stopped: " + written.sum() + " events written in background, "
+                + writtenDirect.sum() + " directly, " + lost.sum() + " lost");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Метод writePrometheus дописує стан журналу видач у форматі Prometheus.
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE ledger_events_total counter\n");
+        out.append("ledger_events_total{result=\"written\"} ").append(written.sum()).append('\n');
+        out.append("ledger_events_total{result=\"written_direct\"} ").append(writtenDirect.sum()).append('\n');
+        out.append("ledger_events_total{result=\"lost\"} ").append(lost.sum()).append('\n');
+        out.append("# TYPE ledger_backpressure_seconds_total counter\n");
+        out.append("ledger_backpressure_seconds_total ").append(backpressureNanos.sum() / 1e9).append('\n');
+        out.append("# TYPE ledger_write_failures_total counter\n");
+        out.append("ledger_write_failures_total ").append(failures.sum()).append('\n');
+        out.append("# TYPE ledger_queue_events gauge\n");
+        out.append("ledger_queue_events{state=\"queued\"} ").append(queue.size()).append('\n');
+        out.append("ledger_queue_events{state=\"capacity\"} ").append(queueCapacity).append('\n');
+        out.append("# TYPE ledger_flush_duration_seconds histogram\n");
+        flushes.writePrometheus(out, "ledger_flush_duration_seconds", "");
+    }
+}
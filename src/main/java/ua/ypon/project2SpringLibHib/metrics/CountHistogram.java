@@ -0,0 +1,51 @@
+package ua.ypon.project2SpringLibHib.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас CountHistogram - потокобезпечна гістограма цілих значень (наприклад кількості SQL-запитів на HTTP-запит)
+з фіксованими межами кошиків, у форматі histogram Prometheus, як і LatencyHistogram.
+ */
+public class CountHistogram {
+
+    private static final long[] BOUNDS = {0, 1, 2, 3, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sum = new LongAdder();
+
+    public CountHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        int i = 0;
+        while (i < BOUNDS.length && value > BOUNDS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sum.add(value);
+    }
+
+    // Метод writePrometheus дописує гістограму в текстовому форматі Prometheus (labels - як у LatencyHistogram).
+    public void writePrometheus(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{").append(prefix)
+                    .append("le=\"").append(BOUNDS[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += buckets[BOUNDS.length].sum();
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ').append(sum.sum()).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,76 @@
+package ua.ypon.project2SpringLibHib.metrics;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас HibernateMetrics віддає статистику Hibernate (hibernate.generate_statistics=true):
+влучання, промахи та записи в кеш другого рівня по кожному регіону і в кеш запитів,
+завантаження сутностей кожного типу та кількість підготовлених SQL-запитів.
+SessionFactory береться при першому зверненні: при фоновій побудові EntityManagerFactory (jpa.bootstrap_async)
+unwrap() чекав би на неї вже під час створення біна.
+ */
+@Component
+public class HibernateMetrics {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private volatile Statistics statistics;
+
+    @Autowired
+    public HibernateMetrics(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    public Statistics getStatistics() {
+        if (statistics == null)
+            statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        return statistics;
+    }
+
+    // Метод writePrometheus дописує статистику кешу у форматі Prometheus.
+    public void writePrometheus(StringBuilder out) {
+        Statistics statistics = getStatistics();
+        out.append("# TYPE hibernate_cache_requests_total counter\n");
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            out.append("hibernate_cache_requests_total{region=\"").append(region).append("\",result=\"hit\"} ")
+                    .append(regionStatistics.getHitCount()).append('\n');
+            out.append("hibernate_cache_requests_total{region=\"").append(region).append("\",result=\"miss\"} ")
+                    .append(regionStatistics.getMissCount()).append('\n');
+        }
+        out.append("hibernate_cache_requests_total{region=\"query\",result=\"hit\"} ")
+                .append(statistics.getQueryCacheHitCount()).append('\n');
+        out.append("hibernate_cache_requests_total{region=\"query\",result=\"miss\"} ")
+                .append(statistics.getQueryCacheMissCount()).append('\n');
+
+        out.append("# TYPE hibernate_cache_puts_total counter\n");
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            out.append("hibernate_cache_puts_total{region=\"").append(region).append("\"} ")
+                    .append(statistics.getCacheRegionStatistics(region).getPutCount()).append('\n');
+        }
+        out.append("hibernate_cache_puts_total{region=\"query\"} ")
+                .append(statistics.getQueryCachePutCount()).append('\n');
+
+        out.append("# TYPE hibernate_entity_loads_total counter\n");
+        for (String entity : statistics.getEntityNames()) {
+            out.append("hibernate_entity_loads_total{entity=\"").append(entity).append("\"} ")
+                    .append(statistics.getEntityStatistics(entity).getLoadCount()).append('\n');
+        }
+        out.append("# TYPE hibernate_entity_fetches_total counter\n");
+        for (String entity : statistics.getEntityNames()) {
+            out.append("hibernate_entity_fetches_total{entity=\"").append(entity).append("\"} ")
+                    .append(statistics.getEntityStatistics(entity).getFetchCount()).append('\n');
+        }
+        out.append("# TYPE hibernate_statements_total counter\n");
+        out.append("hibernate_statements_total{phase=\"prepared\"} ").append(statistics.getPrepareStatementCount()).append('\n');
+        out.append("hibernate_statements_total{phase=\"closed\"} ").append(statistics.getCloseStatementCount()).append('\n');
+    }
+}
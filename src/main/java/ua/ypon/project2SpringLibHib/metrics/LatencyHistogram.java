@@ -0,0 +1,70 @@
+package ua.ypon.project2SpringLibHib.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LatencyHistogram - проста потокобезпечна гістограма часу виконання з фіксованими межами кошиків.
+Записи не блокують потоки (LongAdder), тому її можна викликати на гарячому шляху.
+Вивід сумісний з форматом histogram у Prometheus (кумулятивні кошики "le", _sum та _count).
+ */
+public class LatencyHistogram {
+
+    // Межі кошиків у мілісекундах
+    private static final double[] BOUNDS_MILLIS = {
+            0.1, 0.25, 0.5, 1, 2.5, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    // Метод record додає одне вимірювання тривалістю nanos наносекунд.
+    public void record(long nanos) {
+        double millis = nanos / 1_000_000.0;
+        int i = 0;
+        while (i < BOUNDS_MILLIS.length && millis > BOUNDS_MILLIS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    // Метод writePrometheus дописує гістограму в текстовому форматі Prometheus.
+    // labels - вже сформовані мітки без фігурних дужок (наприклад pool="primary") або порожній рядок.
+    public void writePrometheus(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{").append(prefix)
+                    .append("le=\"").append(BOUNDS_MILLIS[i] / 1000).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += buckets[BOUNDS_MILLIS.length].sum();
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ')
+                .append(getSumNanos() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,92 @@
+package ua.ypon.project2SpringLibHib.metrics;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас PoolMetrics збирає живі метрики пулів з'єднань HikariCP.
+HikariCP викликає create() для кожного пулу, якому його передали через setMetricsTrackerFactory(),
+і далі повідомляє про кожне отримання з'єднання, таймаут та час використання.
+Поточні active/idle/pending беруться з PoolStats, який HikariCP оновлює сам.
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    private final Map<String, PoolTracker> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        PoolTracker tracker = new PoolTracker(poolStats);
+        pools.put(poolName, tracker);
+        return tracker;
+    }
+
+    // Метод writePrometheus дописує метрики всіх зареєстрованих пулів у форматі Prometheus.
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE db_pool_connections gauge\n");
+        for (Map.Entry<String, PoolTracker> entry : pools.entrySet()) {
+            PoolStats stats = entry.getValue().stats;
+            String pool = "pool=\"" + entry.getKey() + "\"";
+            out.append("db_pool_connections{").append(pool).append(",state=\"active\"} ")
+                    .append(stats.getActiveConnections()).append('\n');
+            out.append("db_pool_connections{").append(pool).append(",state=\"idle\"} ")
+                    .append(stats.getIdleConnections()).append('\n');
+            out.append("db_pool_connections{").append(pool).append(",state=\"pending\"} ")
+                    .append(stats.getPendingThreads()).append('\n');
+            out.append("db_pool_connections{").append(pool).append(",state=\"total\"} ")
+                    .append(stats.getTotalConnections()).append('\n');
+        }
+
+        out.append("# TYPE db_pool_timeouts_total counter\n");
+        for (Map.Entry<String, PoolTracker> entry : pools.entrySet()) {
+            out.append("db_pool_timeouts_total{pool=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().timeouts.sum()).append('\n');
+        }
+
+        out.append("# TYPE db_pool_acquire_seconds histogram\n");
+        for (Map.Entry<String, PoolTracker> entry : pools.entrySet()) {
+            entry.getValue().acquire.writePrometheus(out, "db_pool_acquire_seconds",
+                    "pool=\"" + entry.getKey() + "\"");
+        }
+
+        out.append("# TYPE db_pool_usage_seconds histogram\n");
+        for (Map.Entry<String, PoolTracker> entry : pools.entrySet()) {
+            entry.getValue().usage.writePrometheus(out, "db_pool_usage_seconds",
+                    "pool=\"" + entry.getKey() + "\"");
+        }
+    }
+
+    // Трекер одного пулу: гістограми часу отримання та використання з'єднання і лічильник таймаутів.
+    private static class PoolTracker implements IMetricsTracker {
+        private final PoolStats stats;
+        private final LatencyHistogram acquire = new LatencyHistogram();
+        private final LatencyHistogram usage = new LatencyHistogram();
+        private final LongAdder timeouts = new LongAdder();
+
+        private PoolTracker(PoolStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquire.record(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            usage.record(elapsedBorrowedMillis * 1_000_000);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+    }
+}
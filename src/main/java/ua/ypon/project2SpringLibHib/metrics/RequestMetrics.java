@@ -0,0 +1,98 @@
+package ua.ypon.project2SpringLibHib.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас RequestMetrics збирає по кожному endpoint ("GET /people/{id}") гістограми тривалості запиту
+та кількості SQL-запитів на запит, сумарний час у JDBC, а також тривалість транзакцій (див. TimedJpaTransactionManager).
+Якщо запит виконав більше SQL, ніж library.query_budget, у лог пишеться попередження з найчастішим SQL -
+так видно N+1 (той самий запит по кожному рядку списку).
+ */
+@Component
+public class RequestMetrics {
+
+    private static final Log log = LogFactory.getLog(RequestMetrics.class);
+
+    private final int queryBudget;
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> transactions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RequestMetrics(@Value("${library.query_budget}") int queryBudget) {
+        this.queryBudget = queryBudget;
+    }
+
+    // Метод record записує завершений запит до endpoint (метод і шаблон шляху) з його профілем.
+    public void record(String endpoint, String uri, RequestProfile profile) {
+        EndpointStats stats = endpoints.computeIfAbsent(endpoint, e -> new EndpointStats());
+        int statements = profile.getStatements();
+        long jdbcNanos = profile.getJdbcNanos();
+        stats.duration.record(System.nanoTime() - profile.getStartNanos());
+        stats.statements.record(statements);
+        stats.jdbcNanos.add(jdbcNanos);
+
+        if (statements > queryBudget) {
+            stats.overBudget.increment();
+            Map.Entry<String, Integer> top = profile.mostRepeated();
+            log.warn(String.format("%s (%s) executed %d SQL statements, query budget is %d (%.1f ms in JDBC); " +
+                            "most repeated %d times: %s", endpoint, uri, statements, queryBudget,
+                    jdbcNanos / 1e6, top.getValue(), top.getKey()));
+        }
+    }
+
+    // Метод recordTransaction записує тривалість транзакції від початку до коміту чи відкату.
+    public void recordTransaction(boolean readOnly, boolean committed, long nanos) {
+        String labels = "read_only=\"" + readOnly + "\",outcome=\"" + (committed ? "commit" : "rollback") + "\"";
+        transactions.computeIfAbsent(labels, l -> new LatencyHistogram()).record(nanos);
+    }
+
+    // Метод writePrometheus дописує метрики запитів і транзакцій у форматі Prometheus.
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE http_request_duration_seconds histogram\n");
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet())
+            entry.getValue().duration.writePrometheus(out, "http_request_duration_seconds", label(entry.getKey()));
+
+        out.append("# TYPE http_request_statements histogram\n");
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet())
+            entry.getValue().statements.writePrometheus(out, "http_request_statements", label(entry.getKey()));
+
+        out.append("# TYPE http_request_jdbc_seconds_total counter\n");
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            out.append("http_request_jdbc_seconds_total{").append(label(entry.getKey())).append("} ")
+                    .append(entry.getValue().jdbcNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+        }
+
+        out.append("# TYPE http_request_over_query_budget_total counter\n");
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            out.append("http_request_over_query_budget_total{").append(label(entry.getKey())).append("} ")
+                    .append(entry.getValue().overBudget.sum()).append('\n');
+        }
+
+        out.append("# TYPE db_transaction_duration_seconds histogram\n");
+        for (Map.Entry<String, LatencyHistogram> entry : transactions.entrySet())
+            entry.getValue().writePrometheus(out, "db_transaction_duration_seconds", entry.getKey());
+    }
+
+    private static String label(String endpoint) {
+        return "endpoint=\"" + endpoint.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static class EndpointStats {
+        private final LatencyHistogram duration = new LatencyHistogram();
+        private final CountHistogram statements = new CountHistogram();
+        private final LongAdder jdbcNanos = new LongAdder();
+        private final LongAdder overBudget = new LongAdder();
+    }
+}
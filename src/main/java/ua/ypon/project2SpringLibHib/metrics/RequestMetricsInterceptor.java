@@ -0,0 +1,46 @@
+package ua.ypon.project2SpringLibHib.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас RequestMetricsInterceptor відкриває RequestProfile на початку обробки запиту контролером
+і передає його в RequestMetrics після завершення (разом з рендерингом представлення).
+Для асинхронних запитів afterCompletion викликається лише після повторного dispatch, тому час охоплює весь запит.
+ */
+@Component
+public class RequestMetricsInterceptor implements AsyncHandlerInterceptor {
+
+    private final RequestMetrics requestMetrics;
+
+    @Autowired
+    public RequestMetricsInterceptor(RequestMetrics requestMetrics) {
+        this.requestMetrics = requestMetrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod)
+            RequestProfile.start(request);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        RequestProfile profile = RequestProfile.of(request);
+        if (profile == null)
+            return;
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        requestMetrics.record(request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI()),
+                request.getRequestURI(), profile);
+    }
+}
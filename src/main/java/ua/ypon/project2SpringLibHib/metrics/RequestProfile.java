@@ -0,0 +1,128 @@
+package ua.ypon.project2SpringLibHib.metrics;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас RequestProfile накопичує для одного HTTP-запиту кількість SQL-запитів, їх тексти та час у JDBC.
+Профіль живе в атрибуті запиту (його створює RequestMetricsInterceptor), а Hibernate дописує в нього
+через StatementCounter (hibernate.session_factory.statement_inspector) і JdbcTimer (hibernate.session.events.auto),
+знаходячи поточний запит через RequestContextHolder. Поза HTTP-запитом нічого не рахується.
+ */
+public class RequestProfile {
+
+    private static final String ATTRIBUTE = RequestProfile.class.getName();
+    // Скільки різних текстів SQL запам'ятовувати для пошуку запиту, що повторюється (N+1)
+    private static final int MAX_DISTINCT_SQL = 100;
+
+    private final long startNanos = System.nanoTime();
+    private int statements;
+    private long jdbcNanos;
+    private final Map<String, Integer> sqlCounts = new HashMap<>();
+
+    // Метод start повертає профіль запиту, створюючи його при першому виклику
+    // (після асинхронного dispatch профіль лишається той самий).
+    public static RequestProfile start(HttpServletRequest request) {
+        RequestProfile profile = of(request);
+        if (profile == null) {
+            profile = new RequestProfile();
+            request.setAttribute(ATTRIBUTE, profile);
+        }
+        return profile;
+    }
+
+    public static RequestProfile of(HttpServletRequest request) {
+        return (RequestProfile) request.getAttribute(ATTRIBUTE);
+    }
+
+    private static RequestProfile current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes
+                ? of(((ServletRequestAttributes) attributes).getRequest())
+                : null;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public synchronized int getStatements() {
+        return statements;
+    }
+
+    public synchronized long getJdbcNanos() {
+        return jdbcNanos;
+    }
+
+    // Метод mostRepeated повертає текст SQL, який виконувався найбільше разів, і кількість повторів.
+    public synchronized Map.Entry<String, Integer> mostRepeated() {
+        Map.Entry<String, Integer> top = null;
+        for (Map.Entry<String, Integer> entry : sqlCounts.entrySet()) {
+            if (top == null || entry.getValue() > top.getValue())
+                top = entry;
+        }
+        return top;
+    }
+
+    private synchronized void statement(String sql) {
+        statements++;
+        if (sqlCounts.size() < MAX_DISTINCT_SQL || sqlCounts.containsKey(sql))
+            sqlCounts.merge(sql, 1, Integer::sum);
+    }
+
+    private synchronized void jdbc(long nanos) {
+        jdbcNanos += nanos;
+    }
+
+    // Рахує кожен SQL, який Hibernate готує до виконання; текст не змінює.
+    public static class StatementCounter implements StatementInspector {
+        @Override
+        public String inspect(String sql) {
+            RequestProfile profile = current();
+            if (profile != null)
+                profile.statement(sql);
+            return sql;
+        }
+    }
+
+    // Рахує час виконання запитів і пакетів JDBC; Hibernate створює екземпляр на кожну сесію.
+    public static class JdbcTimer extends BaseSessionEventListener {
+        private long started;
+
+        @Override
+        public void jdbcExecuteStatementStart() {
+            started = System.nanoTime();
+        }
+
+        @Override
+        public void jdbcExecuteStatementEnd() {
+            finish();
+        }
+
+        @Override
+        public void jdbcExecuteBatchStart() {
+            started = System.nanoTime();
+        }
+
+        @Override
+        public void jdbcExecuteBatchEnd() {
+            finish();
+        }
+
+        private void finish() {
+            RequestProfile profile = current();
+            if (profile != null)
+                profile.jdbc(System.nanoTime() - started);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package ua.ypon.project2SpringLibHib.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас StartupTimeline записує кроки запуску контексту Spring (ApplicationStartup): створення кожного біна,
+обробку конфігураційних класів, refresh контексту, а також власні кроки застосунку
+(library.jpa.bootstrap - ініціалізація EntityManagerFactory у фоновому потоці, див. SpringConfig).
+Після refresh у лог пишеться розбивка: скільки пройшло від старту JVM, скільки тривав refresh,
+найдовші біни і власний час (без вкладених кроків) за назвою кроку. Ті самі числа - на /metrics.
+Підключається в MySpringMvcDispatcherServletInitializer до refresh контексту.
+ */
+public class StartupTimeline implements ApplicationStartup, ApplicationListener<ContextRefreshedEvent> {
+
+    private static final Log log = LogFactory.getLog(StartupTimeline.class);
+
+    //Кроків при запуску - кілька сотень; обмеження захищає від контекстів, що створюють біни без кінця
+    private static final int MAX_STEPS = 10_000;
+    private static final int REPORT_TOP = 15;
+
+    private final AtomicLong ids = new AtomicLong();
+    //Відкриті кроки поточного потоку: батьківський крок - останній відкритий
+    private final ThreadLocal<Deque<Step>> open = ThreadLocal.withInitial(ConcurrentLinkedDeque::new);
+    private final List<Step> steps = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile long refreshStartNanos;
+    private volatile long readyUptimeMillis = -1;
+    private volatile long refreshNanos = -1;
+
+    @Override
+    public StartupStep start(String name) {
+        Deque<Step> stack = open.get();
+        Step parent = stack.peek();
+        Step step = new Step(ids.incrementAndGet(), parent == null ? null : parent.id, name, stack);
+        stack.push(step);
+        if ("spring.context.refresh".equals(name))
+            refreshStartNanos = step.startNanos;
+        return step;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        readyUptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        //Сам крок spring.context.refresh закривається вже після цієї події
+        refreshNanos = System.nanoTime() - refreshStartNanos;
+        if (log.isInfoEnabled())
+            log.info(report());
+    }
+
+    // Метод getReadyUptimeMillis повертає, скільки мс минуло від старту JVM до готовності контексту (-1 - ще не готовий).
+    public long getReadyUptimeMillis() {
+        return readyUptimeMillis;
+    }
+
+    // Метод getRefreshMillis повертає тривалість refresh контексту, мс (-1 - ще не готовий).
+    public long getRefreshMillis() {
+        return refreshNanos < 0 ? -1 : refreshNanos / 1_000_000;
+    }
+
+    // Метод getSteps повертає копію завершених кроків у порядку завершення.
+    public List<Step> getSteps() {
+        synchronized (steps) {
+            return new ArrayList<>(steps);
+        }
+    }
+
+    // Метод selfMillisByName повертає власний час кроків (без вкладених), підсумований за назвою кроку,
+    // від найбільшого до найменшого.
+    public Map<String, Long> selfMillisByName() {
+        List<Step> finished = getSteps();
+        Map<Long, Long> childNanos = new LinkedHashMap<>();
+        for (Step step : finished) {
+            if (step.parentId != null)
+                childNanos.merge(step.parentId, step.durationNanos(), Long::sum);
+        }
+        Map<String, Long> self = new LinkedHashMap<>();
+        for (Step step : finished)
+            self.merge(step.name, step.durationNanos() - childNanos.getOrDefault(step.id, 0L), Long::sum);
+        return self.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue() / 1_000_000, (a, b) -> a, LinkedHashMap::new));
+    }
+
+    // Метод slowestBeans повертає limit найдовших кроків створення бінів (разом із вкладеними кроками).
+    public List<Step> slowestBeans(int limit) {
+        return getSteps().stream()
+                .filter(step -> "spring.beans.instantiate".equals(step.name))
+                .sorted(Comparator.comparingLong(Step::durationNanos).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    // Метод report повертає текстову розбивку запуску для логу.
+    public String report() {
+        StringBuilder out = new StringBuilder("Запуск: ").append(readyUptimeMillis).append(" мс від старту JVM, refresh контексту ")
+                .append(getRefreshMillis()).append(" мс\n");
+        for (Step step : getSteps()) {
+            if (step.name.startsWith("library."))
+                out.append("  ").append(step).append('\n');
+        }
+        out.append("Власний час за кроками, мс:\n");
+        selfMillisByName().entrySet().stream().limit(REPORT_TOP)
+                .forEach(e -> out.append("  ").append(e.getKey()).append(' ').append(e.getValue()).append('\n'));
+        out.append("Найдовші біни, мс (разом із залежностями):\n");
+        for (Step step : slowestBeans(REPORT_TOP))
+            out.append("  ").append(step).append('\n');
+        return out.toString();
+    }
+
+    // Метод writePrometheus дописує тривалість запуску у форматі Prometheus.
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE app_startup_seconds gauge\n");
+        out.append("app_startup_seconds{phase=\"jvm_to_ready\"} ").append(readyUptimeMillis / 1000.0).append('\n');
+        out.append("app_startup_seconds{phase=\"context_refresh\"} ").append(getRefreshMillis() / 1000.0).append('\n');
+        out.append("# TYPE app_startup_step_seconds gauge\n");
+        for (Map.Entry<String, Long> entry : selfMillisByName().entrySet()) {
+            out.append("app_startup_step_seconds{step=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue() / 1000.0).append('\n');
+        }
+    }
+
+    // Клас Step - один крок запуску. Батьківський крок - лише з того самого потоку,
+    // тому фоновий крок (library.jpa.bootstrap) не віднімається від власного часу кроків основного потоку.
+    public final class Step implements StartupStep {
+
+        private final long id;
+        private final Long parentId;
+        private final String name;
+        private final Deque<Step> stack;
+        private final long startNanos = System.nanoTime();
+        private final Map<String, String> tags = Collections.synchronizedMap(new LinkedHashMap<>());
+        private volatile long endNanos;
+
+        private Step(long id, Long parentId, String name, Deque<Step> stack) {
+            this.id = id;
+            this.parentId = parentId;
+            this.name = name;
+            this.stack = stack;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public Long getParentId() {
+            return parentId;
+        }
+
+        @Override
+        public StartupStep tag(String key, String value) {
+            tags.put(key, value);
+            return this;
+        }
+
+        @Override
+        public StartupStep tag(String key, Supplier<String> value) {
+            return tag(key, value.get());
+        }
+
+        @Override
+        public Tags getTags() {
+            List<Tag> copy = new ArrayList<>();
+            synchronized (tags) {
+                tags.forEach((key, value) -> copy.add(new Tag() {
+                    @Override
+                    public String getKey() {
+                        return key;
+                    }
+
+                    @Override
+                    public String getValue() {
+                        return value;
+                    }
+                }));
+            }
+            return copy::iterator;
+        }
+
+        public Map<String, String> getTagMap() {
+            synchronized (tags) {
+                return new LinkedHashMap<>(tags);
+            }
+        }
+
+        @Override
+        public void end() {
+            if (endNanos != 0)
+                return;
+            endNanos = System.nanoTime();
+            stack.remove(this);
+            synchronized (steps) {
+                if (steps.size() < MAX_STEPS)
+                    steps.add(this);
+            }
+        }
+
+        public long durationNanos() {
+            return endNanos == 0 ? 0 : endNanos - startNanos;
+        }
+
+        public long getDurationMillis() {
+            return durationNanos() / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(name);
+            String bean = getTagMap().get("beanName");
+            if (bean != null)
+                out.append(' ').append(bean);
+            getTagMap().forEach((key, value) -> {
+                if (!"beanName".equals(key) && !"beanType".equals(key))
+                    out.append(' ').append(key).append('=').append(value);
+            });
+            return out.append(' ').append(getDurationMillis()).toString();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ua.ypon.project2SpringLibHib.metrics;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас TimedJpaTransactionManager - JpaTransactionManager, який вимірює тривалість кожної транзакції
+від початку до коміту чи відкату і передає її в RequestMetrics з ознакою readOnly.
+ */
+public class TimedJpaTransactionManager extends JpaTransactionManager {
+
+    private final RequestMetrics requestMetrics;
+    // Початок і readOnly кожної відкритої транзакції (ключ - об'єкт транзакції Spring)
+    private final Map<Object, Started> started = new ConcurrentHashMap<>();
+
+    public TimedJpaTransactionManager(RequestMetrics requestMetrics) {
+        this.requestMetrics = requestMetrics;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        super.doBegin(transaction, definition);
+        started.put(transaction, new Started(System.nanoTime(), definition.isReadOnly()));
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        super.doCommit(status);
+        finish(status.getTransaction(), true);
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+        try {
+            super.doRollback(status);
+        } finally {
+            finish(status.getTransaction(), false);
+        }
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        started.remove(transaction);
+        super.doCleanupAfterCompletion(transaction);
+    }
+
+    private void finish(Object transaction, boolean committed) {
+        Started start = started.remove(transaction);
+        if (start != null)
+            requestMetrics.recordTransaction(start.readOnly, committed, System.nanoTime() - start.nanos);
+    }
+
+    private static class Started {
+        private final long nanos;
+        private final boolean readOnly;
+
+        private Started(long nanos, boolean readOnly) {
+            this.nanos = nanos;
+            this.readOnly = readOnly;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package ua.ypon.project2SpringLibHib.models;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+
 import javax.persistence.*;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
@@ -11,11 +15,29 @@ import java.util.Date;
  */
 
 @Entity
-@Table(name = "Book")
+// Граф "Book.owner" - книга разом з власником одним запитом (LEFT JOIN) для сторінок, що показують власника
+@NamedEntityGraph(name = "Book.owner", attributeNodes = @NamedAttributeNode("owner"))
+@Table(name = "Book", indexes = {
+        @Index(name = "book_year_id_idx", columnList = "year, id"),//індекс для курсорної пагінації за роком
+        @Index(name = "book_due_at_id_idx", columnList = "due_at, id")//індекс для курсорної пагінації прострочених книг
+})
+// Книга кешується в регіоні "books" кешу другого рівня; READ_WRITE оновлює запис після коміту транзакції
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "books")
+@DynamicUpdate//UPDATE містить лише змінені колонки
 public class Book {
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    //Ідентифікатори беруться з послідовності блоками по 50 (оптимізатор pooled), тому Hibernate
+    // не звертається до бази за кожним id і може об'єднувати INSERT у JDBC-пакети (з IDENTITY це неможливо).
+    // Колонка id не має DEFAULT: значення з послідовності поза Hibernate потрапило б у блок, який він уже роздає.
+    // Перехід зі стовпця serial у PostgreSQL:
+    //     CREATE SEQUENCE book_seq INCREMENT BY 50;
+    //     SELECT setval('book_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM Book));
+    //     ALTER TABLE Book ALTER COLUMN id DROP DEFAULT;
+    //     DROP SEQUENCE book_id_seq;
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
     private int id;
 
     @NotEmpty(message = "Назва книги не повинна бути порожньою")
@@ -34,7 +56,9 @@ public class Book {
 
     // Анотація @ManyToOne встановлює зв'язок багато-до-одного з сутністю Person
     // Анотація @JoinColumn вказує, які стовпці використовуватимуться для зв'язку з сутністю Person
-    @ManyToOne()
+    // Власник завантажується ліниво: списки книг його не показують. Запити, яким він потрібен,
+    // беруть його графом "Book.owner", а решта проксі ініціалізуються пакетами (hibernate.default_batch_fetch_size)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "id_person", referencedColumnName = "id")
     private Person owner;
 
@@ -43,9 +67,11 @@ public class Book {
     @Temporal(TemporalType.TIMESTAMP)
     private Date createAt;
 
-    // Анотація @Transient вказує, що поле takeBook не буде зберігатися в базі даних
-    @Transient
-    private boolean takeBook;
+    // Крайній термін повернення книги. Заповнюється при видачі і очищається при поверненні,
+    // тому прострочені книги знаходяться запитом по індексу book_due_at_id_idx
+    @Column(name = "due_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date dueAt;
 
     public Book() {
     }
@@ -105,12 +131,12 @@ public class Book {
         this.owner = owner;
     }
 
-    public boolean isTakeBook() {
-        return takeBook;
+    public Date getDueAt() {
+        return dueAt;
     }
 
-    public void setTakeBook(boolean takeBook) {
-        this.takeBook = takeBook;
+    public void setDueAt(Date dueAt) {
+        this.dueAt = dueAt;
     }
 
     @Override
@@ -120,8 +146,9 @@ public class Book {
                 ", title='" + title + '\'' +
                 ", author='" + author + '\'' +
                 ", year=" + year +
-                ", owner=" + owner +
+                ", ownerId=" + (owner != null ? owner.getId() : null) +//getId() не ініціалізує лінивий проксі
                 ", createAt=" + createAt +
+                ", dueAt=" + dueAt +
                 '}';
     }
 }
@@ -0,0 +1,90 @@
+package ua.ypon.project2SpringLibHib.models;
+
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Сутність LoanEvent - запис журналу видач: видача (CHECKOUT) чи повернення (RETURN) книги читачем.
+Журнал лише доповнюється: записи не змінюються і не видаляються разом з книгою чи читачем, тому
+історія видач зберігається, хоча Book.owner і createAt перезаписуються при кожній видачі.
+Записи вставляє пакетами LoanLedger через JDBC; сутність описує схему таблиці.
+У PostgreSQL таблиця розбивається на місячні секції за occurred_at (див. LoanLedger).
+ */
+@Entity
+@Table(name = "loan_event", indexes = {
+        @Index(name = "loan_event_book_idx", columnList = "book_id, occurred_at"),//історія книги
+        @Index(name = "loan_event_person_idx", columnList = "person_id, occurred_at")//історія читача
+})
+@Immutable//Hibernate не перевіряє і не оновлює записи журналу
+public class LoanEvent {
+
+    public enum Type {
+        CHECKOUT, RETURN
+    }
+
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    //Без зовнішніх ключів: запис переживає видалення книги чи читача
+    @Column(name = "book_id", nullable = false)
+    private int bookId;
+
+    @Column(name = "person_id", nullable = false)
+    private int personId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 8)
+    private Type type;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "occurred_at", nullable = false)
+    private Date occurredAt;
+
+    //конструктор за замовчуванням потрібен Hibernate
+    public LoanEvent() {
+    }
+
+    public LoanEvent(int bookId, int personId, Type type, Date occurredAt) {
+        this.bookId = bookId;
+        this.personId = personId;
+        this.type = type;
+        this.occurredAt = occurredAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public int getPersonId() {
+        return personId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Date getOccurredAt() {
+        return occurredAt;
+    }
+
+    @Override
+    public String toString() {
+        return "LoanEvent{" +
+                "bookId=" + bookId +
+                ", personId=" + personId +
+                ", type=" + type +
+                ", occurredAt=" + occurredAt +
+                '}';
+    }
+}
@@ -1,22 +1,41 @@
 package ua.ypon.project2SpringLibHib.models;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+
 import javax.persistence.*;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Size;
+import java.util.Date;
 import java.util.List;
 
 /**
  * net.ukr@caravell 01/05/2023
  */
 @Entity//Анотація "@Entity" вказує, що цей клас є сутністю, яка буде зберігатись у базі даних.
-@Table(name = "Person")//Анотація "@Table(name = "Person")" вказує назву таблиці,
+@Table(name = "Person", indexes = {//Анотація "@Table(name = "Person")" вказує назву таблиці,
 // в якій будуть зберігатись дані про особу.
+        @Index(name = "person_active_loans_idx", columnList = "active_loans, id"),//індекс для списку найактивніших читачів
+        @Index(name = "person_overdue_loans_idx", columnList = "overdue_loans, id"),
+        @Index(name = "person_loans_changed_at_idx", columnList = "loans_changed_at")//індекс для звірки лічильників
+})
+@Cacheable//Особа кешується в регіоні "people" кешу другого рівня
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "people")
+@DynamicUpdate//Анотація "@DynamicUpdate" - UPDATE містить лише змінені колонки
 public class Person {
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)//Анотація "@GeneratedValue(strategy = GenerationType.IDENTITY)"
-    // вказує, що значення ідентифікатора буде автоматично генеруватись.
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "person_seq")//Анотація "@GeneratedValue"
+    // вказує, що значення ідентифікатора буде автоматично генеруватись з послідовності person_seq
+    // блоками по 50 значень (оптимізатор pooled), що дозволяє пакетні INSERT.
+    // Колонка id не має DEFAULT (перехід зі стовпця serial - як для Book.id):
+    //     CREATE SEQUENCE person_seq INCREMENT BY 50;
+    //     SELECT setval('person_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM Person));
+    //     ALTER TABLE Person ALTER COLUMN id DROP DEFAULT;
+    //     DROP SEQUENCE person_id_seq;
+    @SequenceGenerator(name = "person_seq", sequenceName = "person_seq", allocationSize = 50)
     private int id;
 
     @NotEmpty(message = "Ім'я не повинно бути пустим")
@@ -28,9 +47,26 @@ public class Person {
     @Column(name = "yearofbirth")
     private int yearOfBirth;
 
+    //Лічильники книг читача: скільки зараз на руках і скільки з них прострочено.
+    // Їх змінюють лише UPDATE з BookService у транзакції видачі/повернення та звірка в PeopleService
+    // (updatable = false - форма редагування і dirty checking сутності їх не перезаписують).
+    // Прострочення з часом настає без жодної видачі, тому overdueLoans актуальний на момент останньої звірки.
+    @Column(name = "active_loans", updatable = false)
+    private int activeLoans;
+
+    @Column(name = "overdue_loans", updatable = false)
+    private int overdueLoans;
+
+    //Час останньої зміни лічильників (PeopleRepository.addLoans): звірка перевіряє лише читачів зі змінами
+    // після попередньої звірки. Форма і dirty checking сутності колонку не пишуть.
+    @Column(name = "loans_changed_at", insertable = false, updatable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date loansChangedAt;
+
     @OneToMany(mappedBy = "owner")//Анотація "@OneToMany(mappedBy = "owner")" вказує,
     // що існує зв'язок один-до-багатьох між особою і книгою. Поле "books" представляє список книг,
     // які належать цій особі.
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "people.books")
     private List<Book> books;
 
     //конструктор за замовчування-потрібен для Spring(наприклад для @ModelAttribute)-створення сутності
@@ -66,6 +102,14 @@ public class Person {
         this.yearOfBirth = yearOfBirth;
     }
 
+    public int getActiveLoans() {
+        return activeLoans;
+    }
+
+    public int getOverdueLoans() {
+        return overdueLoans;
+    }
+
     public List<Book> getBooks() {
         return books;
     }
@@ -1,18 +1,33 @@
 package ua.ypon.project2SpringLibHib.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import ua.ypon.project2SpringLibHib.dto.BookView;
+import ua.ypon.project2SpringLibHib.dto.LoanState;
+import ua.ypon.project2SpringLibHib.dto.LoanView;
 import ua.ypon.project2SpringLibHib.models.Book;
 import ua.ypon.project2SpringLibHib.models.Person;
+import ua.ypon.project2SpringLibHib.util.LoanCacheEvictor;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * net.ukr@caravell 01/05/2023
  */
 @Repository
-public interface BooksRepository extends JpaRepository<Book, Integer> {
+public interface BooksRepository extends JpaRepository<Book, Integer>, BooksRepositoryCustom {
 
     // Метод findBookByOwner повертає список книг, що належать заданій особі.
     List<Book> findBookByOwner(Person owner);
@@ -21,5 +36,154 @@ public interface BooksRepository extends JpaRepository<Book, Integer> {
     Optional<Book> findBookById (int id);
 
     // Метод searchBookByTitleStartsWith повертає список книг, які починаються з заданої назви.
+    // Результат зберігається в кеші запитів і скидається Hibernate при будь-якій зміні таблиці Book.
+    // Граф "Book.owner" тут не допоможе: з кешу запитів Hibernate збирає книги без приєднаних власників
+    // (див. BookService.searchBookByTitleStartsWith).
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
     List<Book> searchBookByTitleStartsWith(String title);
+
+    // Метод findByIdIn повертає книги з ids разом з власниками одним запитом (результати повнотекстового пошуку).
+    @EntityGraph("Book.owner")
+    List<Book> findByIdIn(Collection<Integer> ids);
+
+    // Метод findAllBy повертає сторінку книг як Slice - без додаткового запиту COUNT(*).
+    Slice<Book> findAllBy(Pageable pageable);
+
+    // Методи курсорної пагінації за ключем id. Pageable тут задає лише LIMIT (сторінка 0),
+    // тому база читає індекс первинного ключа від курсора і не пропускає попередні рядки через OFFSET.
+    @Query("select b from Book b where b.id > :id order by b.id asc")
+    List<Book> findPageAfterId(@Param("id") int id, Pageable limit);
+
+    @Query("select b from Book b where b.id < :id order by b.id desc")
+    List<Book> findPageBeforeId(@Param("id") int id, Pageable limit);
+
+    // Методи курсорної пагінації за ключем (year, id). Порівняння кортежів (year, id) > (?, ?)
+    // виконується одним проходом по індексу book_year_id_idx, тому JPQL з OR тут не підходить.
+    @Query(value = "SELECT * FROM Book WHERE (year, id) > (:year, :id) ORDER BY year ASC, id ASC", nativeQuery = true)
+    List<Book> findPageAfterYearAndId(@Param("year") int year, @Param("id") int id, Pageable limit);
+
+    @Query(value = "SELECT * FROM Book WHERE (year, id) < (:year, :id) ORDER BY year DESC, id DESC", nativeQuery = true)
+    List<Book> findPageBeforeYearAndId(@Param("year") int year, @Param("id") int id, Pageable limit);
+
+    // Метод findLoansByOwnerId повертає сторінку книг читача одним запитом-проєкцією.
+    // Книга прострочена, якщо її термін повернення due_at минув до now - це правило перевіряє сама база.
+    @Query("select new ua.ypon.project2SpringLibHib.dto.LoanView(b.id, b.title, b.author, b.year, b.createAt, " +
+            "case when b.dueAt < :now then true else false end) " +
+            "from Book b where b.owner.id = :personId order by b.id")
+    Slice<LoanView> findLoansByOwnerId(@Param("personId") int personId,
+                                       @Param("now") Date now,
+                                       Pageable pageable);
+
+    // Методи курсорної пагінації прострочених книг за ключем (due_at, id), від найдавніше прострочених.
+    // Повертають лише id: умова, порівняння кортежів і сортування - прохід діапазону індексу book_due_at_id_idx
+    // без читання рядків таблиці, тому глибина сторінки не впливає на час запиту.
+    @Query(value = "SELECT id FROM Book WHERE due_at < :now ORDER BY due_at ASC, id ASC", nativeQuery = true)
+    List<Integer> findOverdueIds(@Param("now") Date now, Pageable limit);
+
+    @Query(value = "SELECT id FROM Book WHERE due_at < :now AND (due_at, id) > (:dueAt, :id) " +
+            "ORDER BY due_at ASC, id ASC", nativeQuery = true)
+    List<Integer> findOverdueIdsAfter(@Param("now") Date now, @Param("dueAt") Date dueAt, @Param("id") int id,
+                                      Pageable limit);
+
+    // Метод findWithOwnerByIdIn повертає книги з ids разом з власниками одним запитом, у порядку (due_at, id).
+    @Query("select b from Book b left join fetch b.owner where b.id in :ids order by b.dueAt, b.id")
+    List<Book> findWithOwnerByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Метод assignIfAvailable видає книгу читачеві одним умовним UPDATE: рядок змінюється лише тоді,
+    // коли книга ще вільна. Повертає кількість змінених рядків (0 - книгу вже видано або її не існує),
+    // тому дві одночасні видачі однієї книги не можуть обидві бути успішними.
+    // Native SQL з простором LOAN_SPACE: Hibernate не скидає регіон кешу книг цілком, як для JPQL bulk UPDATE,
+    // змінені записи скидає LoanCacheEvictor.
+    @Modifying
+    @Query(value = "UPDATE Book SET id_person = :personId, created_at = :now, due_at = :dueAt " +
+            "WHERE id = :id AND id_person IS NULL", nativeQuery = true)
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.NATIVE_SPACES, value = LoanCacheEvictor.LOAN_SPACE))
+    int assignIfAvailable(@Param("id") int id, @Param("personId") int personId,
+                          @Param("now") Date now, @Param("dueAt") Date dueAt);
+
+    // Метод assignAllIfAvailable - те саме для кількох книг: видаються лише ті з ids, що ще вільні.
+    @Modifying
+    @Query(value = "UPDATE Book SET id_person = :personId, created_at = :now, due_at = :dueAt " +
+            "WHERE id IN (:ids) AND id_person IS NULL", nativeQuery = true)
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.NATIVE_SPACES, value = LoanCacheEvictor.LOAN_SPACE))
+    int assignAllIfAvailable(@Param("ids") Collection<Integer> ids, @Param("personId") int personId,
+                             @Param("now") Date now, @Param("dueAt") Date dueAt);
+
+    // Метод findIdsAssignedAt повертає id книг з ids, які щойно видано читачеві personId з часом видачі now
+    // (assignAllIfAvailable повертає лише їх кількість, а журналу видач потрібні самі книги).
+    @Query("select b.id from Book b where b.id in :ids and b.owner.id = :personId and b.createAt = :now")
+    List<Integer> findIdsAssignedAt(@Param("ids") Collection<Integer> ids, @Param("personId") int personId,
+                                    @Param("now") Date now);
+
+    // Метод findLoanStates читає з бази (в обхід кешу другого рівня) стан виданих книг з ids для повернення
+    // (див. BooksRepositoryCustom.releaseLoans). Вільні книги і книги, яких немає, не повертаються.
+    @Query("select new ua.ypon.project2SpringLibHib.dto.LoanState(b.id, o.id, b.dueAt) " +
+            "from Book b join b.owner o where b.id in :ids")
+    List<LoanState> findLoanStates(@Param("ids") Collection<Integer> ids);
+
+    // Методи find*View* повертають проєкції BookView для JSON API одним запитом, без завантаження сутностей.
+    // findViewsAfterId - сторінка курсорної пагінації: книги з id більшим за afterId у порядку id.
+    @Query("select new ua.ypon.project2SpringLibHib.dto.BookView(b.id, b.title, b.author, b.year, o.id, b.dueAt) " +
+            "from Book b left join b.owner o where b.id > :afterId order by b.id")
+    List<BookView> findViewsAfterId(@Param("afterId") int afterId, Pageable pageable);
+
+    // findViewsByIds - кілька книг за списком id одним запитом ... WHERE id IN (...)
+    @Query("select new ua.ypon.project2SpringLibHib.dto.BookView(b.id, b.title, b.author, b.year, o.id, b.dueAt) " +
+            "from Book b left join b.owner o where b.id in :ids")
+    List<BookView> findViewsByIds(@Param("ids") Collection<Integer> ids);
+
+    @Query("select new ua.ypon.project2SpringLibHib.dto.BookView(b.id, b.title, b.author, b.year, o.id, b.dueAt) " +
+            "from Book b left join b.owner o where b.id = :id")
+    Optional<BookView> findViewById(@Param("id") int id);
+
+    // Метод findLoansAfterId - книги читача з курсорною пагінацією за id (для JSON API).
+    @Query("select new ua.ypon.project2SpringLibHib.dto.LoanView(b.id, b.title, b.author, b.year, b.createAt, " +
+            "case when b.dueAt < :now then true else false end) " +
+            "from Book b where b.owner.id = :personId and b.id > :afterId order by b.id")
+    List<LoanView> findLoansAfterId(@Param("personId") int personId, @Param("afterId") int afterId,
+                                    @Param("now") Date now, Pageable pageable);
+
+    // Метод lockLoansOfOwners блокує книги, що знаходяться у заданих читачів, і повертає лише їх стан
+    // (id книги, id читача, термін повернення) для журналу повернень - без завантаження сутностей Book.
+    @Query(value = "SELECT id, id_person, due_at FROM Book WHERE id_person IN (:personIds) ORDER BY id FOR UPDATE",
+            nativeQuery = true)
+    List<Object[]> lockLoansOfOwners(@Param("personIds") Collection<Integer> personIds);
+
+    // Метод releaseAllOfOwners повертає всі книги заданих читачів одним UPDATE ... WHERE id_person IN (...).
+    @Modifying
+    @Query("update Book b set b.owner = null, b.createAt = null, b.dueAt = null where b.owner.id in :personIds")
+    int releaseAllOfOwners(@Param("personIds") Collection<Integer> personIds);
+
+    // Метод findTitlesByIdIn повертає (id, назва) книг з ids - перед їх видаленням, для індексу назв.
+    @Query("select b.id, b.title from Book b where b.id in :ids")
+    List<Object[]> findTitlesByIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Метод deleteAllByIds видаляє книги одним DELETE ... WHERE id IN (...) без попереднього читання сутностей.
+    @Modifying
+    @Query("delete from Book b where b.id in :ids")
+    int deleteAllByIds(@Param("ids") Collection<Integer> ids);
+
+    // Метод streamIndexRows потоково читає (id, title, author, id власника) усіх книг для побудови індексів пошуку.
+    // Рядки підтягуються з бази порціями по fetch size, а не всі одразу.
+    @Query("select b.id, b.title, b.author, o.id from Book b left join b.owner o")
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"))
+    Stream<Object[]> streamIndexRows();
+
+    // Метод streamExportRows читає каталог для експорту курсором у порядку id: id, назва, автор, рік.
+    @Query("select b.id, b.title, b.author, b.year from Book b order by b.id")
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"))
+    Stream<Object[]> streamExportRows();
+
+    // Методи streamViews / streamViewsByYear читають усі книги проєкціями BookView курсором з fetch size
+    // (у порядку id або (year, id)) для потокового виведення списку: проєкції не потрапляють
+    // у контекст персистентності, тому пам'ять не росте з розміром каталогу.
+    @Query("select new ua.ypon.project2SpringLibHib.dto.BookView(b.id, b.title, b.author, b.year, o.id, b.dueAt) " +
+            "from Book b left join b.owner o order by b.id")
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"))
+    Stream<BookView> streamViews();
+
+    @Query("select new ua.ypon.project2SpringLibHib.dto.BookView(b.id, b.title, b.author, b.year, o.id, b.dueAt) " +
+            "from Book b left join b.owner o order by b.year, b.id")
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"))
+    Stream<BookView> streamViewsByYear();
 }
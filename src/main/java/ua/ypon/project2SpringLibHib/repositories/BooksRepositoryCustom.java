@@ -0,0 +1,21 @@
+package ua.ypon.project2SpringLibHib.repositories;
+
+import ua.ypon.project2SpringLibHib.dto.LoanState;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Інтерфейс BooksRepositoryCustom - методи BooksRepository, які не виражаються одним @Query
+(реалізація - BooksRepositoryCustomImpl, Spring Data знаходить її за назвою).
+ */
+public interface BooksRepositoryCustom {
+
+    // Метод releaseLoans повертає книги loans одним JDBC-пакетом умовних UPDATE у порядку id: кожен змінює рядок,
+    // лише поки книга видана тому самому читачеві і так само прострочена (чи ні) на момент now.
+    // Повертає для кожної книги, чи повернув її саме цей UPDATE (false - стан книги вже інший).
+    boolean[] releaseLoans(List<LoanState> loans, Date now);
+}
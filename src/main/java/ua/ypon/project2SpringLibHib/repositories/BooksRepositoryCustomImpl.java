@@ -0,0 +1,59 @@
+package ua.ypon.project2SpringLibHib.repositories;
+
+import org.hibernate.Session;
+import ua.ypon.project2SpringLibHib.dto.LoanState;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BooksRepositoryCustomImpl виконує повернення книг напряму через JDBC-з'єднання сесії Hibernate:
+Hibernate не знає про ці UPDATE, тому не скидає регіон кешу книг цілком, як для JPQL bulk UPDATE.
+Змінені записи кешу скидає BookService (LoanCacheEvictor).
+ */
+public class BooksRepositoryCustomImpl implements BooksRepositoryCustom {
+
+    // Рядок змінюється, лише поки книга видана тому самому читачеві і прострочена (чи ні) так само, як очікувалось
+    private static final String RELEASE =
+            "UPDATE Book SET id_person = NULL, created_at = NULL, due_at = NULL WHERE id = ? AND id_person = ? " +
+            "AND (CASE WHEN due_at < ? THEN TRUE ELSE FALSE END) = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public boolean[] releaseLoans(List<LoanState> loans, Date now) {
+        //Рядки змінюються в порядку id: паралельні повернення тих самих книг чекають одне на одного, а не навхрест
+        Integer[] order = new Integer[loans.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingInt(i -> loans.get(i).getBookId()));
+        Timestamp at = new Timestamp(now.getTime());
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            boolean[] released = new boolean[loans.size()];
+            try (PreparedStatement statement = connection.prepareStatement(RELEASE)) {
+                for (int index : order) {
+                    LoanState loan = loans.get(index);
+                    statement.setInt(1, loan.getBookId());
+                    statement.setInt(2, loan.getOwnerId());
+                    statement.setTimestamp(3, at);
+                    statement.setBoolean(4, loan.isOverdue(now));
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                for (int i = 0; i < counts.length; i++)
+                    released[order[i]] = counts[i] > 0;
+            }
+            return released;
+        });
+    }
+}
@@ -1,19 +1,99 @@
 package ua.ypon.project2SpringLibHib.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.lang.NonNullApi;
 import org.springframework.stereotype.Repository;
 import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.dto.PersonView;
 import ua.ypon.project2SpringLibHib.models.Person;
+import ua.ypon.project2SpringLibHib.util.LoanCacheEvictor;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * net.ukr@caravell 01/05/2023s
  */
 @Repository
 public interface PeopleRepository extends JpaRepository<Person, Integer> {
+
+    // Метод findViewsAfterId повертає сторінку проєкцій PersonView з id більшим за afterId (курсорна пагінація).
+    @Query("select new ua.ypon.project2SpringLibHib.dto.PersonView(p.id, p.name, p.yearOfBirth, p.activeLoans, p.overdueLoans) " +
+            "from Person p where p.id > :afterId order by p.id")
+    List<PersonView> findViewsAfterId(@Param("afterId") int afterId, Pageable pageable);
+
+    @Query("select new ua.ypon.project2SpringLibHib.dto.PersonView(p.id, p.name, p.yearOfBirth, p.activeLoans, p.overdueLoans) " +
+            "from Person p where p.id = :id")
+    Optional<PersonView> findViewById(@Param("id") int id);
+
+    // Метод streamViews читає всіх людей проєкціями PersonView курсором з fetch size для потокового виведення списку.
+    @Query("select new ua.ypon.project2SpringLibHib.dto.PersonView(p.id, p.name, p.yearOfBirth, p.activeLoans, p.overdueLoans) " +
+            "from Person p order by p.id")
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.FETCH_SIZE, value = "1000"))
+    Stream<PersonView> streamViews();
+
+    // Методи findTopBy*Loans повертають читачів з найбільшою кількістю книг на руках чи прострочених книг.
+    // Сортування йде за індексом (active_loans, id) чи (overdue_loans, id), без GROUP BY по таблиці Book.
+    // Slice читає на один рядок більше за сторінку, тому наступна сторінка відома без count-запиту.
+    @Query("select new ua.ypon.project2SpringLibHib.dto.PersonView(p.id, p.name, p.yearOfBirth, p.activeLoans, p.overdueLoans) " +
+            "from Person p where p.activeLoans > 0 order by p.activeLoans desc, p.id desc")
+    Slice<PersonView> findTopByActiveLoans(Pageable pageable);
+
+    @Query("select new ua.ypon.project2SpringLibHib.dto.PersonView(p.id, p.name, p.yearOfBirth, p.activeLoans, p.overdueLoans) " +
+            "from Person p where p.overdueLoans > 0 order by p.overdueLoans desc, p.id desc")
+    Slice<PersonView> findTopByOverdueLoans(Pageable pageable);
+
+    // Метод addLoans атомарно змінює лічильники книг читача на active та overdue (від'ємні - при поверненні)
+    // і відмічає час зміни loans_changed_at, за яким звірка знаходить читачів зі змінами.
+    // Викликається в транзакції видачі/повернення, тож лічильники комітяться разом зі зміною книг.
+    // Прострочення, що настало після останньої звірки, ще не враховане, тому overdueLoans не опускається нижче нуля.
+    // Простір LOAN_SPACE - як у видачі книг: запис читача в кеші скидає LoanCacheEvictor, а не весь регіон.
+    @Modifying
+    @Query(value = "UPDATE Person SET active_loans = active_loans + :active, overdue_loans = " +
+            "CASE WHEN overdue_loans + :overdue < 0 THEN 0 ELSE overdue_loans + :overdue END, " +
+            "loans_changed_at = :now WHERE id = :id", nativeQuery = true)
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.NATIVE_SPACES, value = LoanCacheEvictor.LOAN_SPACE))
+    int addLoans(@Param("id") int id, @Param("active") int active, @Param("overdue") int overdue, @Param("now") Date now);
+
+    // Метод findLoanCounterDrift повертає id усіх читачів, чиї лічильники розходяться з фактичними книгами на руках
+    // (повна звірка: два COUNT(*) по кожному читачеві).
+    @Query(value = "SELECT p.id FROM Person p WHERE p.active_loans <> " +
+            "(SELECT COUNT(*) FROM Book b WHERE b.id_person = p.id) OR p.overdue_loans <> " +
+            "(SELECT COUNT(*) FROM Book b WHERE b.id_person = p.id AND b.due_at < :now)", nativeQuery = true)
+    List<Integer> findLoanCounterDrift(@Param("now") Date now);
+
+    // Метод findLoanCounterDriftSince - те саме лише для читачів, у яких щось могло змінитися після since:
+    // лічильники змінювались (індекс person_loans_changed_at_idx) або термін повернення їхньої книги
+    // минув між since і now (індекс book_due_at_id_idx). COUNT(*) рахуються лише для цих читачів.
+    @Query(value = "SELECT p.id FROM Person p WHERE p.id IN (" +
+            "SELECT c.id FROM Person c WHERE c.loans_changed_at >= :since " +
+            "UNION SELECT b.id_person FROM Book b WHERE b.due_at >= :since AND b.due_at < :now AND b.id_person IS NOT NULL) " +
+            "AND (p.active_loans <> (SELECT COUNT(*) FROM Book b WHERE b.id_person = p.id) OR p.overdue_loans <> " +
+            "(SELECT COUNT(*) FROM Book b WHERE b.id_person = p.id AND b.due_at < :now))", nativeQuery = true)
+    List<Integer> findLoanCounterDriftSince(@Param("since") Date since, @Param("now") Date now);
+
+    // Метод reconcileLoans перераховує лічильники читачів ids з таблиці Book.
+    // Простір LOAN_SPACE: записи цих читачів у кеші скидає LoanCacheEvictor, а не весь регіон людей.
+    @Modifying
+    @Query(value = "UPDATE Person SET active_loans = (SELECT COUNT(*) FROM Book b WHERE b.id_person = Person.id), " +
+            "overdue_loans = (SELECT COUNT(*) FROM Book b WHERE b.id_person = Person.id AND b.due_at < :now) " +
+            "WHERE id IN (:ids)", nativeQuery = true)
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.NATIVE_SPACES, value = LoanCacheEvictor.LOAN_SPACE))
+    int reconcileLoans(@Param("ids") Collection<Integer> ids, @Param("now") Date now);
+
+    // Метод deleteAllByIds видаляє людей одним DELETE ... WHERE id IN (...) без попереднього читання сутностей.
+    @Modifying
+    @Query("delete from Person p where p.id in :ids")
+    int deleteAllByIds(@Param("ids") Collection<Integer> ids);
 }
 
@@ -0,0 +1,542 @@
+package ua.ypon.project2SpringLibHib.search;
+
+import org.springframework.stereotype.Component;
+import ua.ypon.project2SpringLibHib.util.TextNormalizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BookSearchIndex - повнотекстовий індекс книг у пам'яті за назвою та автором.
+Інвертований індекс: слово -> відсортований масив id книг, окремо для назви та автора.
+Для пошуку з помилками словник слів проіндексовано триграмами: кандидати з достатньою кількістю
+спільних триграм перевіряються відстанню Дамерау-Левенштейна.
+Релевантність: вага збігу (точний > префікс > з помилкою) * вага поля (назва > автор) * IDF слова,
+помножена на частку слів запиту, які знайдено в книзі.
+ */
+@Component
+public class BookSearchIndex {
+
+    private static final Pattern TOKEN_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final float TITLE_WEIGHT = 2.0f;
+    private static final float AUTHOR_WEIGHT = 1.0f;
+    private static final float EXACT_MATCH = 1.0f;
+    private static final float PREFIX_MATCH = 0.7f;
+    private static final float FUZZY_MATCH = 0.5f;
+
+    // Максимум слів словника, до яких розгортається одне слово запиту (префікс або помилка)
+    private static final int MAX_EXPANSIONS = 64;
+
+    private final Map<String, int[]> titlePostings = new ConcurrentHashMap<>();
+    private final Map<String, int[]> authorPostings = new ConcurrentHashMap<>();
+    // Словник: слово -> кількість книг з цим словом (у назві або в автора)
+    private final Map<String, Integer> vocabulary = new ConcurrentHashMap<>();
+    // Ті самі слова у впорядкованому вигляді - для розгортання префіксів
+    private final ConcurrentSkipListSet<String> sortedVocabulary = new ConcurrentSkipListSet<>();
+    private final Map<String, Set<String>> trigrams = new ConcurrentHashMap<>();
+    private final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+
+    // Метод put додає книгу до індексу або замінює її попередню версію.
+    public synchronized void put(int id, String title, String author, boolean available) {
+        remove(id);
+        Document document = new Document(tokenize(title), tokenize(author), available);
+        documents.put(id, document);
+        for (String token : document.titleTokens)
+            titlePostings.merge(token, new int[]{id}, BookSearchIndex::union);
+        for (String token : document.authorTokens)
+            authorPostings.merge(token, new int[]{id}, BookSearchIndex::union);
+        for (String token : document.distinctTokens())
+            addToVocabulary(token);
+    }
+
+    // Метод remove видаляє книгу з індексу.
+    public synchronized void remove(int id) {
+        Document document = documents.remove(id);
+        if (document == null)
+            return;
+        for (String token : document.titleTokens)
+            titlePostings.computeIfPresent(token, (k, ids) -> without(ids, id));
+        for (String token : document.authorTokens)
+            authorPostings.computeIfPresent(token, (k, ids) -> without(ids, id));
+        for (String token : document.distinctTokens())
+            removeFromVocabulary(token);
+    }
+
+    // Метод setAvailable оновлює ознаку "книга вільна" (owner == null) для фільтра.
+    public void setAvailable(int id, boolean available) {
+        Document document = documents.get(id);
+        if (document != null)
+            document.available = available;
+    }
+
+    // Метод clear очищає індекс перед повною перебудовою.
+    public synchronized void clear() {
+        titlePostings.clear();
+        authorPostings.clear();
+        vocabulary.clear();
+        sortedVocabulary.clear();
+        trigrams.clear();
+        documents.clear();
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    // Метод batch повертає пакет для додавання багатьох книг одразу (наприклад після масового імпорту).
+    // Кожне put() копіює масив id кожного слова книги, тож для частих слів N викликів коштують O(N^2);
+    // пакет зливає нові id з масивом слова один раз на весь пакет.
+    public Batch batch() {
+        return new Batch();
+    }
+
+    // Пакет книг для додавання в індекс, застосовується методом apply().
+    public class Batch {
+        private final Map<Integer, Document> added = new LinkedHashMap<>();
+
+        private Batch() {
+        }
+
+        public void add(int id, String title, String author, boolean available) {
+            added.put(id, new Document(tokenize(title), tokenize(author), available));
+        }
+
+        // Метод apply додає книги пакета в індекс, замінюючи їх попередні версії.
+        public void apply() {
+            synchronized (BookSearchIndex.this) {
+                Map<String, IdList> addedTitlePostings = new HashMap<>();
+                Map<String, IdList> addedAuthorPostings = new HashMap<>();
+                for (Map.Entry<Integer, Document> entry : added.entrySet()) {
+                    int id = entry.getKey();
+                    Document document = entry.getValue();
+                    remove(id);
+                    documents.put(id, document);
+                    for (String token : document.titleTokens)
+                        addedTitlePostings.computeIfAbsent(token, k -> new IdList()).add(id);
+                    for (String token : document.authorTokens)
+                        addedAuthorPostings.computeIfAbsent(token, k -> new IdList()).add(id);
+                    for (String token : document.distinctTokens())
+                        addToVocabulary(token);
+                }
+                addedTitlePostings.forEach((token, ids) ->
+                        titlePostings.merge(token, ids.toSortedArray(), BookSearchIndex::merge));
+                addedAuthorPostings.forEach((token, ids) ->
+                        authorPostings.merge(token, ids.toSortedArray(), BookSearchIndex::merge));
+            }
+        }
+    }
+
+    // Метод loader повертає завантажувач для повної перебудови індексу (наприклад при старті).
+    // На відміну від послідовних put(), які щоразу копіюють масив id, завантажувач накопичує id у
+    // масивах, що ростуть, і публікує готовий індекс одним кроком, тому побудова лінійна за кількістю книг.
+    public Loader loader() {
+        return new Loader();
+    }
+
+    // Завантажувач індексу. Зміни, зроблені через put()/remove() під час завантаження, замінюються в finish().
+    public class Loader {
+        private final Map<Integer, Document> loadedDocuments = new HashMap<>();
+        private final Map<String, IdList> loadedTitlePostings = new HashMap<>();
+        private final Map<String, IdList> loadedAuthorPostings = new HashMap<>();
+        private final Map<String, Integer> loadedVocabulary = new HashMap<>();
+
+        private Loader() {
+        }
+
+        public void add(int id, String title, String author, boolean available) {
+            Document document = new Document(tokenize(title), tokenize(author), available);
+            loadedDocuments.put(id, document);
+            for (String token : document.titleTokens)
+                loadedTitlePostings.computeIfAbsent(token, k -> new IdList()).add(id);
+            for (String token : document.authorTokens)
+                loadedAuthorPostings.computeIfAbsent(token, k -> new IdList()).add(id);
+            for (String token : document.distinctTokens())
+                loadedVocabulary.merge(token, 1, Integer::sum);
+        }
+
+        // Метод finish замінює вміст індексу завантаженими даними.
+        public void finish() {
+            synchronized (BookSearchIndex.this) {
+                clear();
+                documents.putAll(loadedDocuments);
+                loadedTitlePostings.forEach((token, ids) -> titlePostings.put(token, ids.toSortedArray()));
+                loadedAuthorPostings.forEach((token, ids) -> authorPostings.put(token, ids.toSortedArray()));
+                vocabulary.putAll(loadedVocabulary);
+                sortedVocabulary.addAll(loadedVocabulary.keySet());
+                for (String token : loadedVocabulary.keySet())
+                    for (String gram : trigramsOf(token))
+                        trigrams.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(token);
+            }
+        }
+    }
+
+    // Метод search повертає сторінку id книг, відсортованих за релевантністю.
+    // available: null - усі книги, true - лише вільні, false - лише видані.
+    // Кидає IllegalArgumentException, якщо page < 0 або size < 1.
+    public SearchHits search(String query, Boolean available, int page, int size) {
+        if (page < 0 || size < 1)
+            throw new IllegalArgumentException("Некоректна сторінка пошуку: page=" + page + ", size=" + size);
+        String[] queryTokens = tokenize(query);
+        if (queryTokens.length == 0)
+            return new SearchHits(Collections.emptyList(), 0);
+
+        int totalDocuments = Math.max(documents.size(), 1);
+        // Збіги кожного слова запиту - відсортований масив id книг із вагою. Часте слово дає сотні тисяч книг,
+        // тому оцінки рахуються злиттям відсортованих масивів, а не в хеш-таблиці id -> оцінка
+        Matches[] perToken = new Matches[queryTokens.length];
+        for (int i = 0; i < queryTokens.length; i++) {
+            boolean last = i == queryTokens.length - 1;
+            List<Matches> parts = new ArrayList<>();
+            for (Map.Entry<String, Float> match : expand(queryTokens[i], last).entrySet()) {
+                Integer frequency = vocabulary.get(match.getKey());
+                if (frequency == null)
+                    continue;
+                float idf = (float) Math.log(1 + (double) totalDocuments / frequency);
+                int[] titleIds = titlePostings.get(match.getKey());
+                if (titleIds != null)
+                    parts.add(new Matches(titleIds, match.getValue() * TITLE_WEIGHT * idf));
+                int[] authorIds = authorPostings.get(match.getKey());
+                if (authorIds != null)
+                    parts.add(new Matches(authorIds, match.getValue() * AUTHOR_WEIGHT * idf));
+            }
+            perToken[i] = Matches.union(parts);
+        }
+
+        // Повне сортування всіх збігів не потрібне: купа тримає лише (page + 1) * size найкращих
+        Comparator<Map.Entry<Integer, Float>> byRelevance = Comparator
+                .<Map.Entry<Integer, Float>>comparingDouble(Map.Entry::getValue).reversed()
+                .thenComparing(Map.Entry::getKey);
+        int keep = (int) Math.min((long) (page + 1) * size, Integer.MAX_VALUE - 1);
+        PriorityQueue<Map.Entry<Integer, Float>> top = new PriorityQueue<>(Math.min(keep, 1024) + 1, byRelevance.reversed());
+        int[] positions = new int[perToken.length];
+        int total = 0;
+        while (true) {
+            // Наступна книга - найменший id серед поточних позицій усіх слів
+            int id = Integer.MAX_VALUE;
+            boolean found = false;
+            for (int k = 0; k < perToken.length; k++) {
+                if (positions[k] < perToken[k].size) {
+                    id = Math.min(id, perToken[k].ids[positions[k]]);
+                    found = true;
+                }
+            }
+            if (!found)
+                break;
+            float sum = 0;
+            int matched = 0;
+            for (int k = 0; k < perToken.length; k++) {
+                if (positions[k] < perToken[k].size && perToken[k].ids[positions[k]] == id) {
+                    sum += perToken[k].scoreAt(positions[k]++);
+                    matched++;
+                }
+            }
+            if (available != null) {
+                Document document = documents.get(id);
+                if (document == null || document.available != available)
+                    continue;
+            }
+            total++;
+            float score = sum * matched / perToken.length;
+            // Об'єкт для купи створюється лише для книги, що краща за найгіршу з уже відібраних
+            if (top.size() == keep) {
+                Map.Entry<Integer, Float> worst = top.peek();
+                if (score < worst.getValue() || (score == worst.getValue() && id > worst.getKey()))
+                    continue;
+                top.poll();
+            }
+            top.add(Map.entry(id, score));
+        }
+
+        List<Map.Entry<Integer, Float>> ranked = new ArrayList<>(top);
+        ranked.sort(byRelevance);
+        List<Integer> ids = new ArrayList<>(Math.min(size, ranked.size()));
+        for (long i = (long) page * size; i < ranked.size(); i++)
+            ids.add(ranked.get((int) i).getKey());
+        return new SearchHits(ids, total);
+    }
+
+    // Метод expand повертає слова словника, що відповідають слову запиту, з вагою збігу.
+    // Для останнього слова запиту враховуються й префікси (користувач ще дописує слово).
+    private Map<String, Float> expand(String token, boolean prefix) {
+        Map<String, Float> matches = new LinkedHashMap<>();
+        if (vocabulary.containsKey(token))
+            matches.put(token, EXACT_MATCH);
+
+        if (prefix) {
+            for (String candidate : sortedVocabulary.tailSet(token, false)) {
+                if (!candidate.startsWith(token) || matches.size() >= MAX_EXPANSIONS)
+                    break;
+                matches.put(candidate, PREFIX_MATCH);
+            }
+        }
+
+        int maxEdits = token.length() <= 3 ? 0 : token.length() <= 6 ? 1 : 2;
+        if (maxEdits == 0)
+            return matches;
+
+        Map<String, Integer> shared = new HashMap<>();
+        List<String> grams = trigramsOf(token);
+        for (String gram : grams) {
+            Set<String> tokens = trigrams.get(gram);
+            if (tokens != null)
+                for (String candidate : tokens)
+                    shared.merge(candidate, 1, Integer::sum);
+        }
+        // Кожна помилка руйнує щонайбільше 3 триграми, тому кандидати з меншою кількістю спільних відкидаються
+        int minShared = grams.size() - 3 * maxEdits;
+        for (Map.Entry<String, Integer> candidate : shared.entrySet()) {
+            if (matches.size() >= MAX_EXPANSIONS)
+                break;
+            if (candidate.getValue() < minShared || matches.containsKey(candidate.getKey()))
+                continue;
+            if (Math.abs(candidate.getKey().length() - token.length()) > maxEdits)
+                continue;
+            int distance = editDistance(token, candidate.getKey(), maxEdits);
+            if (distance <= maxEdits)
+                matches.put(candidate.getKey(), FUZZY_MATCH / distance);
+        }
+        return matches;
+    }
+
+    private void addToVocabulary(String token) {
+        if (vocabulary.merge(token, 1, Integer::sum) == 1) {
+            sortedVocabulary.add(token);
+            for (String gram : trigramsOf(token))
+                trigrams.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(token);
+        }
+    }
+
+    private void removeFromVocabulary(String token) {
+        Integer left = vocabulary.computeIfPresent(token, (k, count) -> count > 1 ? count - 1 : null);
+        if (left == null) {
+            sortedVocabulary.remove(token);
+            for (String gram : trigramsOf(token))
+                trigrams.computeIfPresent(gram, (k, tokens) -> {
+                    tokens.remove(token);
+                    return tokens.isEmpty() ? null : tokens;
+                });
+        }
+    }
+
+    static String[] tokenize(String text) {
+        String normalized = TextNormalizer.normalize(text);
+        if (normalized.isEmpty())
+            return new String[0];
+        return Arrays.stream(TOKEN_SEPARATORS.split(normalized))
+                .filter(token -> !token.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static List<String> trigramsOf(String token) {
+        String padded = "$" + token + "$";
+        List<String> grams = new ArrayList<>(padded.length());
+        for (int i = 0; i + 3 <= padded.length(); i++)
+            grams.add(padded.substring(i, i + 3));
+        if (grams.isEmpty())
+            grams.add(padded);
+        return grams;
+    }
+
+    // Відстань Дамерау-Левенштейна (з перестановкою сусідніх символів) з раннім виходом,
+    // коли вона гарантовано перевищує limit.
+    static int editDistance(String a, String b, int limit) {
+        int[] previousPrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+            previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMinimum = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+                    current[j] = Math.min(current[j], previousPrevious[j - 2] + 1);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > limit)
+                return limit + 1;
+            int[] recycled = previousPrevious;
+            previousPrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+
+    private static int[] union(int[] ids, int[] added) {
+        int position = Arrays.binarySearch(ids, added[0]);
+        if (position >= 0)
+            return ids;
+        int insertAt = -position - 1;
+        int[] merged = new int[ids.length + 1];
+        System.arraycopy(ids, 0, merged, 0, insertAt);
+        merged[insertAt] = added[0];
+        System.arraycopy(ids, insertAt, merged, insertAt + 1, ids.length - insertAt);
+        return merged;
+    }
+
+    // Злиття двох відсортованих масивів id без повторів
+    private static int[] merge(int[] ids, int[] added) {
+        int[] merged = new int[ids.length + added.length];
+        int i = 0, j = 0, size = 0;
+        while (i < ids.length || j < added.length) {
+            int next;
+            if (j == added.length || (i < ids.length && ids[i] < added[j]))
+                next = ids[i++];
+            else if (i == ids.length || added[j] < ids[i])
+                next = added[j++];
+            else {
+                next = ids[i++];
+                j++;
+            }
+            merged[size++] = next;
+        }
+        return size == merged.length ? merged : Arrays.copyOf(merged, size);
+    }
+
+    private static int[] without(int[] ids, int id) {
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0)
+            return ids;
+        if (ids.length == 1)
+            return null;
+        int[] rest = new int[ids.length - 1];
+        System.arraycopy(ids, 0, rest, 0, position);
+        System.arraycopy(ids, position + 1, rest, position, ids.length - position - 1);
+        return rest;
+    }
+
+    // Масив id, що росте, для завантажувача
+    private static class IdList {
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(int id) {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        private int[] toSortedArray() {
+            int[] result = Arrays.copyOf(ids, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    // Збіги слова запиту: відсортовані id книг і вага збігу кожної. Масив id слова з індексу не копіюється:
+    // поки збіг один, у всіх книг однакова вага weight (scores == null).
+    private static final class Matches {
+        private static final Matches NONE = new Matches(new int[0], 0);
+
+        private final int[] ids;
+        private final float[] scores;
+        private final float weight;
+        private final int size;
+
+        private Matches(int[] ids, float weight) {
+            this(ids, null, weight, ids.length);
+        }
+
+        private Matches(int[] ids, float[] scores, float weight, int size) {
+            this.ids = ids;
+            this.scores = scores;
+            this.weight = weight;
+            this.size = size;
+        }
+
+        private float scoreAt(int position) {
+            return scores == null ? weight : scores[position];
+        }
+
+        // Метод union зливає збіги попарно (як сортування злиттям): O(N log k) для k масивів
+        private static Matches union(List<Matches> parts) {
+            if (parts.isEmpty())
+                return NONE;
+            while (parts.size() > 1) {
+                List<Matches> merged = new ArrayList<>((parts.size() + 1) / 2);
+                for (int i = 0; i + 1 < parts.size(); i += 2)
+                    merged.add(merge(parts.get(i), parts.get(i + 1)));
+                if (parts.size() % 2 == 1)
+                    merged.add(parts.get(parts.size() - 1));
+                parts = merged;
+            }
+            return parts.get(0);
+        }
+
+        // Злиття двох відсортованих збігів; ваги книги, що є в обох, додаються
+        private static Matches merge(Matches a, Matches b) {
+            int[] ids = new int[a.size + b.size];
+            float[] scores = new float[a.size + b.size];
+            int i = 0, j = 0, size = 0;
+            while (i < a.size || j < b.size) {
+                if (j == b.size || (i < a.size && a.ids[i] < b.ids[j])) {
+                    ids[size] = a.ids[i];
+                    scores[size++] = a.scoreAt(i++);
+                } else if (i == a.size || b.ids[j] < a.ids[i]) {
+                    ids[size] = b.ids[j];
+                    scores[size++] = b.scoreAt(j++);
+                } else {
+                    ids[size] = a.ids[i];
+                    scores[size++] = a.scoreAt(i++) + b.scoreAt(j++);
+                }
+            }
+            return new Matches(ids, scores, 0, size);
+        }
+    }
+
+    // Проіндексована книга: слова назви та автора і ознака доступності
+    private static class Document {
+        private final String[] titleTokens;
+        private final String[] authorTokens;
+        private volatile boolean available;
+
+        private Document(String[] titleTokens, String[] authorTokens, boolean available) {
+            this.titleTokens = Arrays.stream(titleTokens).distinct().toArray(String[]::new);
+            this.authorTokens = Arrays.stream(authorTokens).distinct().toArray(String[]::new);
+            this.available = available;
+        }
+
+        private String[] distinctTokens() {
+            String[] all = Arrays.copyOf(titleTokens, titleTokens.length + authorTokens.length);
+            System.arraycopy(authorTokens, 0, all, titleTokens.length, authorTokens.length);
+            return Arrays.stream(all).distinct().toArray(String[]::new);
+        }
+    }
+
+    // Результат пошуку: id книг поточної сторінки за релевантністю та загальна кількість збігів
+    public static class SearchHits {
+        private final List<Integer> ids;
+        private final int total;
+
+        public SearchHits(List<Integer> ids, int total) {
+            this.ids = ids;
+            this.total = total;
+        }
+
+        public List<Integer> getIds() {
+            return ids;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ua.ypon.project2SpringLibHib.search;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас IndexReadiness - ознака готовності індексів пошуку в пам'яті (TitleIndex, BookSearchIndex).
+BookService будує їх у фоновому потоці після старту, і поки вони не готові, автодоповнення та повнотекстовий
+пошук відповідають 503, а /health/ready - теж 503 (балансувальник не шле на екземпляр запити).
+
+Поки індекси будуються, зміни книг у них не вносяться: сервіси лише запам'ятовують id змінених книг (defer),
+бо побудова потім замінює вміст індексів цілком. Разом з id запам'ятовуються попередні назви перейменованих
+і видалених книг: завантаження могло прочитати книгу ще під такою назвою, а TitleIndex прибирає книгу лише
+за назвою. Потік побудови після завантаження перечитує ці книги з бази і вносить їх сам (takePending),
+поки нових змін не лишиться. Рішення сервісу "ще будується - запам'ятати id"
+і рішення потоку побудови "змін немає - індекси готові" приймаються під одним замком, тому жодна зміна
+не губиться між останнім перечитуванням і моментом готовності.
+ */
+@Component
+public class IndexReadiness {
+
+    private final Object lock = new Object();
+    private volatile boolean ready;
+    // id зміненої книги -> її попередні назви (порожня множина, якщо назва не змінювалась)
+    private Map<Integer, Set<String>> pending = new HashMap<>();
+    private volatile long buildStartedNanos;
+    private volatile long buildNanos = -1;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Метод building позначає початок (пере)побудови індексів: з цього моменту зміни книг відкладаються.
+    // Уже відкладені id лишаються - їх перечитає побудова.
+    public void building() {
+        synchronized (lock) {
+            buildStartedNanos = System.nanoTime();
+            ready = false;
+        }
+    }
+
+    // Метод defer повертає true, якщо індекси ще будуються: тоді id змінених книг запам'ятовуються,
+    // а вносити зміни в індекси не треба - це зробить потік побудови. Якщо індекси готові - повертає false.
+    public boolean defer(Collection<Integer> ids) {
+        if (ready)
+            return false;
+        synchronized (lock) {
+            if (ready)
+                return false;
+            for (Integer id : ids)
+                pending.putIfAbsent(id, Collections.emptySet());
+            return true;
+        }
+    }
+
+    public boolean defer(int id) {
+        return defer(Collections.singletonList(id));
+    }
+
+    // Метод defer - те саме для книг, що були перейменовані чи видалені: previousTitles - id -> назва до зміни.
+    public boolean defer(Map<Integer, String> previousTitles) {
+        if (ready)
+            return false;
+        synchronized (lock) {
+            if (ready)
+                return false;
+            previousTitles.forEach((id, title) -> {
+                Set<String> titles = pending.get(id);
+                if (titles == null || titles.isEmpty())
+                    pending.put(id, titles = new HashSet<>());
+                titles.add(title);
+            });
+            return true;
+        }
+    }
+
+    public boolean defer(int id, String previousTitle) {
+        return defer(Collections.singletonMap(id, previousTitle));
+    }
+
+    // Метод takePending повертає книги, змінені з моменту попереднього виклику (або з початку побудови),
+    // з їхніми попередніми назвами. Якщо таких немає - позначає індекси готовими і повертає порожню мапу.
+    public Map<Integer, Set<String>> takePending() {
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                if (!ready) {
+                    buildNanos = System.nanoTime() - buildStartedNanos;
+                    ready = true;
+                }
+                return Collections.emptyMap();
+            }
+            Map<Integer, Set<String>> taken = pending;
+            pending = new HashMap<>();
+            return taken;
+        }
+    }
+
+    // Метод writePrometheus дописує готовність індексів і тривалість останньої побудови у форматі Prometheus.
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE search_index_ready gauge\n");
+        out.append("search_index_ready ").append(ready ? 1 : 0).append('\n');
+        if (buildNanos >= 0) {
+            out.append("# TYPE search_index_build_seconds gauge\n");
+            out.append("search_index_build_seconds ").append(buildNanos / 1e9).append('\n');
+        }
+    }
+}
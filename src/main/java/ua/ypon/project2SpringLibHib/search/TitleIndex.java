@@ -0,0 +1,167 @@
+package ua.ypon.project2SpringLibHib.search;
+
+import org.springframework.stereotype.Component;
+import ua.ypon.project2SpringLibHib.dto.BookSuggestion;
+import ua.ypon.project2SpringLibHib.util.TextNormalizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас TitleIndex - префіксний індекс назв книг у пам'яті для автодоповнення.
+Ключ - нормалізована назва (без регістру та діакритики), значення - Postings: відсортований масив int з id книг
+і паралельний масив назв у тому вигляді, як їх показувати. Окремої мапи id -> назва немає:
+на кожну назву припадає один об'єкт з двома масивами, а однакові назви різних книг - один рядок.
+Тому стару назву передає той, хто змінює чи видаляє книгу (put, remove): він читає її з бази разом зі зміною,
+і кожна зміна торкається лише двох ключів, а не проходить весь індекс.
+Пошук за префіксом - це прохід по впорядкованому діапазону ключів, без звернення до бази даних.
+Читання не блокуються; зміни серіалізуються, а Postings замінюються цілком (copy-on-write).
+ */
+@Component
+public class TitleIndex {
+
+    private final ConcurrentSkipListMap<String, Postings> postingsByTitle = new ConcurrentSkipListMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Метод put додає книгу до індексу або змінює її назву з previousTitle (null - книга нова) на title.
+    public synchronized void put(int id, String previousTitle, String title) {
+        if (previousTitle != null)
+            removeId(TextNormalizer.normalize(previousTitle), id);
+        Postings previous = postingsByTitle.get(TextNormalizer.normalize(title));
+        Postings updated = previous == null ? new Postings(new int[]{id}, new String[]{title}) : previous.with(id, title);
+        if (updated != previous) {
+            postingsByTitle.put(TextNormalizer.normalize(title), updated);
+            if (previous == null || updated.ids.length > previous.ids.length)
+                size.incrementAndGet();
+        }
+    }
+
+    // Метод remove видаляє з індексу книгу id з назвою title; якщо під цією назвою книги немає - нічого не змінює.
+    public synchronized void remove(int id, String title) {
+        removeId(TextNormalizer.normalize(title), id);
+    }
+
+    // Метод clear очищає індекс перед повною перебудовою.
+    public synchronized void clear() {
+        postingsByTitle.clear();
+        size.set(0);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    // Метод suggest повертає до limit книг, назви яких починаються з prefix, у алфавітному порядку.
+    public List<BookSuggestion> suggest(String prefix, int limit) {
+        String key = TextNormalizer.normalize(prefix);
+        if (key.isEmpty() || limit <= 0)
+            return Collections.emptyList();
+
+        List<BookSuggestion> result = new ArrayList<>(limit);
+        ConcurrentNavigableMap<String, Postings> tail = postingsByTitle.tailMap(key, true);
+        for (Map.Entry<String, Postings> entry : tail.entrySet()) {
+            if (!entry.getKey().startsWith(key))
+                break;
+            Postings postings = entry.getValue();
+            for (int i = 0; i < postings.ids.length; i++) {
+                result.add(new BookSuggestion(postings.ids[i], postings.titles[i]));
+                if (result.size() == limit)
+                    return result;
+            }
+        }
+        return result;
+    }
+
+    private void removeId(String key, int id) {
+        Postings previous = postingsByTitle.get(key);
+        if (previous == null)
+            return;
+        Postings rest = previous.without(new int[]{id});
+        if (rest == previous)
+            return;
+        size.decrementAndGet();
+        if (rest.ids.length == 0)
+            postingsByTitle.remove(key);
+        else
+            postingsByTitle.put(key, rest);
+    }
+
+    // Книги з однією нормалізованою назвою: id за зростанням і їхні назви на тих самих позиціях.
+    // Незмінний об'єкт - читачі бачать або старий, або новий масив цілком.
+    private static class Postings {
+        private final int[] ids;
+        private final String[] titles;
+
+        private Postings(int[] ids, String[] titles) {
+            this.ids = ids;
+            this.titles = titles;
+        }
+
+        // Повертає Postings з книгою id (або з її новим написанням назви), або цей самий об'єкт, якщо нічого не змінилось
+        private Postings with(int id, String title) {
+            int position = Arrays.binarySearch(ids, id);
+            if (position >= 0) {
+                if (titles[position].equals(title))
+                    return this;
+                String[] renamed = titles.clone();
+                renamed[position] = shared(title);
+                return new Postings(ids, renamed);
+            }
+            int insertAt = -position - 1;
+            int[] mergedIds = new int[ids.length + 1];
+            String[] mergedTitles = new String[titles.length + 1];
+            System.arraycopy(ids, 0, mergedIds, 0, insertAt);
+            System.arraycopy(titles, 0, mergedTitles, 0, insertAt);
+            mergedIds[insertAt] = id;
+            mergedTitles[insertAt] = shared(title);
+            System.arraycopy(ids, insertAt, mergedIds, insertAt + 1, ids.length - insertAt);
+            System.arraycopy(titles, insertAt, mergedTitles, insertAt + 1, titles.length - insertAt);
+            return new Postings(mergedIds, mergedTitles);
+        }
+
+        // Повертає Postings без книг із відсортованого масиву removed, або цей самий об'єкт, якщо жодної з них немає
+        private Postings without(int[] removed) {
+            int kept = 0;
+            int[] keptIds = null;
+            String[] keptTitles = null;
+            for (int i = 0; i < ids.length; i++) {
+                if (Arrays.binarySearch(removed, ids[i]) >= 0) {
+                    if (keptIds == null) {
+                        keptIds = new int[ids.length - 1];
+                        keptTitles = new String[ids.length - 1];
+                        System.arraycopy(ids, 0, keptIds, 0, i);
+                        System.arraycopy(titles, 0, keptTitles, 0, i);
+                        kept = i;
+                    }
+                    continue;
+                }
+                if (keptIds != null) {
+                    keptIds[kept] = ids[i];
+                    keptTitles[kept] = titles[i];
+                    kept++;
+                }
+            }
+            if (keptIds == null)
+                return this;
+            return new Postings(Arrays.copyOf(keptIds, kept), Arrays.copyOf(keptTitles, kept));
+        }
+
+        // Однакова назва різних книг зберігається одним рядком
+        private String shared(String title) {
+            for (String existing : titles) {
+                if (existing.equals(title))
+                    return existing;
+            }
+            return title;
+        }
+    }
+}
@@ -1,18 +1,64 @@
 package ua.ypon.project2SpringLibHib.services;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.ypon.project2SpringLibHib.dto.BookSearchResult;
+import ua.ypon.project2SpringLibHib.dto.BookSuggestion;
+import ua.ypon.project2SpringLibHib.dto.BookView;
+import ua.ypon.project2SpringLibHib.dto.CursorPage;
+import ua.ypon.project2SpringLibHib.dto.LoanState;
+import ua.ypon.project2SpringLibHib.dto.LoanView;
+import ua.ypon.project2SpringLibHib.ledger.LoanLedger;
 import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.LoanEvent;
 import ua.ypon.project2SpringLibHib.models.Person;
 import ua.ypon.project2SpringLibHib.repositories.BooksRepository;
+import ua.ypon.project2SpringLibHib.repositories.PeopleRepository;
+import ua.ypon.project2SpringLibHib.search.BookSearchIndex;
+import ua.ypon.project2SpringLibHib.search.IndexReadiness;
+import ua.ypon.project2SpringLibHib.search.TitleIndex;
+import ua.ypon.project2SpringLibHib.util.BookCursor;
+import ua.ypon.project2SpringLibHib.util.KeysetPage;
+import ua.ypon.project2SpringLibHib.util.LoanCacheEvictor;
+import ua.ypon.project2SpringLibHib.util.OverdueCursor;
+import ua.ypon.project2SpringLibHib.util.ResourceVersions;
+import ua.ypon.project2SpringLibHib.util.TransactionHooks;
 
+import javax.persistence.EntityManager;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * net.ukr@caravell 01/05/2023
@@ -21,27 +67,183 @@ import java.util.Optional;
 @Transactional(readOnly = true)
 public class BookService {
 
+    private static final Log log = LogFactory.getLog(BookService.class);
+
+    // Найбільше спроб повернути книгу, стан якої щоразу змінює паралельна видача чи повернення (див. releaseLoans)
+    private static final int RELEASE_ATTEMPTS = 3;
+    // Скільки змінених під час побудови індексів книг перечитується одним запитом
+    private static final int INDEX_CATCH_UP_CHUNK = 1000;
+
     private final BooksRepository booksRepository;
+    private final PeopleRepository peopleRepository;
+    private final TitleIndex titleIndex;
+    private final BookSearchIndex searchIndex;
+    private final IndexReadiness indexReadiness;
+    private final ResourceVersions versions;
+    private final LoanLedger loanLedger;
+    private final LoanCacheEvictor loanCacheEvictor;
+    // Термін видачі книги в мілісекундах (library.loan_period_days з hibernate.properties)
+    private final long loanPeriodMillis;
+    // Будувати індекси пошуку після старту у фоновому потоці (library.index_build_async)
+    private final boolean indexBuildAsync;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate primaryTransaction;
+    // Дві побудови індексів одночасно (старт і ручна перебудова) затирали б одна одній вміст
+    private final Object indexBuildLock = new Object();
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    public BookService(BooksRepository booksRepository) {
+    public BookService(BooksRepository booksRepository, PeopleRepository peopleRepository, TitleIndex titleIndex,
+                       BookSearchIndex searchIndex, IndexReadiness indexReadiness, ResourceVersions versions,
+                       LoanLedger loanLedger, LoanCacheEvictor loanCacheEvictor,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${library.loan_period_days}") int loanPeriodDays,
+                       @Value("${library.index_build_async}") boolean indexBuildAsync) {
         this.booksRepository = booksRepository;
+        this.peopleRepository = peopleRepository;
+        this.titleIndex = titleIndex;
+        this.searchIndex = searchIndex;
+        this.indexReadiness = indexReadiness;
+        this.versions = versions;
+        this.loanLedger = loanLedger;
+        this.loanCacheEvictor = loanCacheEvictor;
+        this.loanPeriodMillis = TimeUnit.DAYS.toMillis(loanPeriodDays);
+        this.indexBuildAsync = indexBuildAsync;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        //перечитування змінених книг - з primary: репліка могла ще не отримати зміни
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
    }
 
-    // Метод findAll повертає список всіх книг.
-    public List<Book> findAll() {
-        return booksRepository.findAll();
+    // Метод startIndexBuild після старту контексту запускає побудову індексів пошуку у фоновому потоці:
+    // застосунок приймає запити одразу, а пошук стає доступним, коли IndexReadiness.isReady().
+    // З library.index_build_async=false індекси будуються тут же, до завершення старту.
+    @EventListener(ContextRefreshedEvent.class)
+    public void startIndexBuild() {
+        indexReadiness.building();
+        if (!indexBuildAsync) {
+            buildIndexes();
+            return;
+        }
+        Thread builder = new Thread(() -> {
+            try {
+                buildIndexes();
+            } catch (RuntimeException e) {
+                //пошук лишається недоступним (503), решта застосунку працює
+                log.error("Building search indexes failed", e);
+            }
+        }, "book-index-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    // Метод buildIndexes будує індекс назв для автодоповнення та повнотекстовий індекс з усіх книг у базі.
+    // Книги, змінені під час побудови, потім перечитуються з primary (див. IndexReadiness),
+    // після чого індекси позначаються готовими. Повертається, коли індекси готові.
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void buildIndexes() {
+        synchronized (indexBuildLock) {
+            indexReadiness.building();
+            titleIndex.clear();
+            BookSearchIndex.Loader searchLoader = searchIndex.loader();
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<Object[]> rows = booksRepository.streamIndexRows()) {
+                    rows.forEach(row -> {
+                        titleIndex.put((Integer) row[0], null, (String) row[1]);
+                        searchLoader.add((Integer) row[0], (String) row[1], (String) row[2], row[3] == null);
+                    });
+                }
+            });
+            searchLoader.finish();
+
+            for (Map<Integer, Set<String>> changed = indexReadiness.takePending(); !changed.isEmpty();
+                 changed = indexReadiness.takePending()) {
+                List<Integer> ids = new ArrayList<>(changed.keySet());
+                for (int from = 0; from < ids.size(); from += INDEX_CATCH_UP_CHUNK)
+                    reindex(ids.subList(from, Math.min(from + INDEX_CATCH_UP_CHUNK, ids.size())), changed);
+            }
+        }
+    }
+
+    // Метод isSearchReady повертає true, коли індекси пошуку побудовано (автодоповнення і повнотекстовий пошук).
+    public boolean isSearchReady() {
+        return indexReadiness.isReady();
+    }
+
+    // Метод reindex перечитує книги ids з primary і вносить їх поточний стан в індекси (видалені - прибирає).
+    // previousTitles - назви, під якими завантаження могло внести книгу в індекс назв до її зміни.
+    private void reindex(List<Integer> ids, Map<Integer, Set<String>> previousTitles) {
+        Map<Integer, Book> found = primaryTransaction.execute(status -> booksRepository.findByIdIn(ids).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity())));
+        for (int id : ids) {
+            for (String title : previousTitles.get(id))
+                titleIndex.remove(id, title);
+            Book book = found.get(id);
+            if (book == null) {
+                searchIndex.remove(id);
+            } else {
+                titleIndex.put(id, null, book.getTitle());
+                searchIndex.put(id, book.getTitle(), book.getAuthor(), book.getOwner() == null);
+            }
+        }
+    }
+
+    // Метод streamViews передає в action потік проєкцій BookView усіх книг (у порядку id або (year, id)).
+    // Рядки читаються курсором бази порціями по fetch size, тому action має обробити потік
+    // всередині цього виклику, поки відкриті транзакція і курсор.
+    public void streamViews(boolean sortByYear, Consumer<Stream<BookView>> action) {
+        try (Stream<BookView> views = sortByYear ? booksRepository.streamViewsByYear() : booksRepository.streamViews()) {
+            action.accept(views);
+        }
     }
 
     // Метод findAllPage повертає список книг з пагінацією.
+    // Використовується Slice, тому зайвий запит COUNT(*) не виконується.
     public List<Book> findAllPage(Pageable pageable) {
-                return booksRepository.findAll(pageable).getContent();
+                return booksRepository.findAllBy(pageable).getContent();
     }
 
-    // Метод findAllSortedByYear повертає список книг, відсортованих за роком видання.
-    public List<Book> findAllSortedByYear() {
-        Sort sort = Sort.by("year");
-        return booksRepository.findAll(sort);
+    // Метод findPage повертає сторінку книг курсорної пагінації.
+    // cursor - токен з попередньої сторінки (null - перша сторінка), size - кількість книг,
+    // sortByYear - ключ сортування (year, id) замість id.
+    // Запит читає size + 1 рядок, щоб дізнатися, чи є ще сторінка, без COUNT(*).
+    // Кидає IllegalArgumentException, якщо size < 1 або курсор пошкоджений.
+    public KeysetPage<Book> findPage(String cursor, int size, boolean sortByYear) {
+        if (size < 1)
+            throw new IllegalArgumentException("Розмір сторінки повинен бути додатним: " + size);
+        BookCursor position = cursor != null ? BookCursor.decode(cursor) : null;
+        Pageable limit = PageRequest.of(0, size + 1);
+
+        if (position == null || position.isForward()) {
+            int year = position != null ? position.getYear() : Integer.MIN_VALUE;
+            int id = position != null ? position.getId() : Integer.MIN_VALUE;
+            List<Book> books = sortByYear
+                    ? booksRepository.findPageAfterYearAndId(year, id, limit)
+                    : booksRepository.findPageAfterId(id, limit);
+
+            boolean hasNext = books.size() > size;
+            books = hasNext ? books.subList(0, size) : books;
+            String next = hasNext ? cursorOf(true, books.get(books.size() - 1)) : null;
+            String prev = position != null && !books.isEmpty() ? cursorOf(false, books.get(0)) : null;
+            return new KeysetPage<>(books, next, prev);
+        }
+
+        List<Book> books = sortByYear
+                ? booksRepository.findPageBeforeYearAndId(position.getYear(), position.getId(), limit)
+                : booksRepository.findPageBeforeId(position.getId(), limit);
+
+        boolean hasPrev = books.size() > size;
+        books = hasPrev ? books.subList(0, size) : books;
+        Collections.reverse(books);
+        String prev = hasPrev ? cursorOf(false, books.get(0)) : null;
+        String next = !books.isEmpty() ? cursorOf(true, books.get(books.size() - 1)) : null;
+        return new KeysetPage<>(books, next, prev);
+    }
+
+    private static String cursorOf(boolean forward, Book book) {
+        return new BookCursor(forward, book.getYear(), book.getId()).encode();
     }
 
     // Метод findOne повертає одну книгу за заданим ідентифікатором.
@@ -52,9 +254,12 @@ public class BookService {
 
     // Метод getBookOwner повертає власника книги за заданим ідентифікатором.
     //визови в сервісі так-як це всередені транзакції
+    //findById читає книгу з кешу другого рівня, тому повторний виклик після findOne не йде в базу.
+    //Власник лінивий: unproxy ініціалізує його тут, у транзакції (теж з кешу другого рівня, регіон "people"),
+    //бо шаблон звертається до нього вже після її завершення
     public Optional<Person> getBookOwner(int id) {
-        Optional<Book> bookOptional = booksRepository.findBookById(id);
-        return bookOptional.map(Book::getOwner);
+        Optional<Book> bookOptional = booksRepository.findById(id);
+        return bookOptional.map(book -> (Person) Hibernate.unproxy(book.getOwner()));
     }
 
     // Метод findBookByOwner повертає список книг, що належать заданій особі.
@@ -62,58 +267,348 @@ public class BookService {
         return booksRepository.findBookByOwner(owner);
     }
 
+    // Метод findLoans повертає сторінку книг читача разом з ознакою прострочення одним запитом.
+    public Slice<LoanView> findLoans(int personId, Pageable pageable) {
+        return booksRepository.findLoansByOwnerId(personId, new Date(), pageable);
+    }
+
+    // Метод findOverdue повертає сторінку прострочених книг (термін повернення вже минув) разом з власниками.
+    // cursor - токен з попередньої сторінки (null - перша сторінка), size - кількість книг.
+    // Спершу за індексом (due_at, id) читається size + 1 id, потім - книги сторінки одним запитом.
+    // Кидає IllegalArgumentException, якщо size < 1 або курсор пошкоджений.
+    public KeysetPage<Book> findOverdue(String cursor, int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Розмір сторінки повинен бути додатним: " + size);
+        OverdueCursor position = cursor != null ? OverdueCursor.decode(cursor) : null;
+        Date now = new Date();
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<Integer> ids = position == null
+                ? booksRepository.findOverdueIds(now, limit)
+                : booksRepository.findOverdueIdsAfter(now, position.getDueAt(), position.getId(), limit);
+
+        boolean hasNext = ids.size() > size;
+        List<Book> books = ids.isEmpty() ? Collections.emptyList()
+                : booksRepository.findWithOwnerByIdIn(hasNext ? ids.subList(0, size) : ids);
+        Book last = books.isEmpty() ? null : books.get(books.size() - 1);
+        String next = hasNext ? new OverdueCursor(last.getDueAt(), last.getId()).encode() : null;
+        return new KeysetPage<>(books, next, null);
+    }
+
+    // Метод findViews повертає сторінку книг для JSON API після книги з id afterId.
+    // Читається limit + 1 рядок, щоб дізнатися, чи є наступна сторінка.
+    public CursorPage<BookView> findViews(int afterId, int limit) {
+        List<BookView> books = booksRepository.findViewsAfterId(afterId, PageRequest.of(0, limit + 1));
+        if (books.size() <= limit)
+            return new CursorPage<>(books, null);
+        books = books.subList(0, limit);
+        return new CursorPage<>(books, books.get(limit - 1).getId());
+    }
+
+    // Метод findViewsByIds повертає книги з заданими id одним запитом у порядку ids; відсутні id пропускаються.
+    public List<BookView> findViewsByIds(List<Integer> ids) {
+        Map<Integer, BookView> found = booksRepository.findViewsByIds(ids).stream()
+                .collect(Collectors.toMap(BookView::getId, Function.identity()));
+        return ids.stream().distinct().map(found::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    public Optional<BookView> findView(int id) {
+        return booksRepository.findViewById(id);
+    }
+
+    // Метод findLoanViews повертає сторінку книг читача для JSON API після книги з id afterId.
+    public CursorPage<LoanView> findLoanViews(int personId, int afterId, int limit) {
+        List<LoanView> loans = booksRepository.findLoansAfterId(personId, afterId, new Date(), PageRequest.of(0, limit + 1));
+        if (loans.size() <= limit)
+            return new CursorPage<>(loans, null);
+        loans = loans.subList(0, limit);
+        return new CursorPage<>(loans, loans.get(limit - 1).getId());
+    }
+
     // Метод save зберігає нову книгу або оновлює існуючу.
+    // Для існуючої книги спершу читається її поточна сутність (з кешу другого рівня), щоб знати стару назву
+    // для індексу назв; save потім копіює зміни в цю ж керовану сутність без ще одного SELECT.
     @Transactional
     public void save(Book book) {
+        String previousTitle = book.getId() != 0
+                ? booksRepository.findById(book.getId()).map(Book::getTitle).orElse(null) : null;
         booksRepository.save(book);
+        TransactionHooks.afterCommit(() -> {
+            boolean deferred = previousTitle != null
+                    ? indexReadiness.defer(book.getId(), previousTitle) : indexReadiness.defer(book.getId());
+            if (!deferred) {
+                titleIndex.put(book.getId(), previousTitle, book.getTitle());
+                searchIndex.put(book.getId(), book.getTitle(), book.getAuthor(), book.getOwner() == null);
+            }
+            versions.bookChanged(book.getId());
+        });
     }
 
     // Метод update оновлює існуючу книгу за заданим ідентифікатором.
+    // Форма містить лише назву, автора та рік, тому вони копіюються в керовану сутність, а власник,
+    // дата видачі і термін повернення лишаються без змін. Сутність читається з кешу другого рівня,
+    // а при коміті Hibernate записує тільки змінені колонки (@DynamicUpdate) або нічого, якщо змін немає.
     @Transactional
     public void update(int id, Book updatedBook) {
-        updatedBook.setId(id);
-        booksRepository.save(updatedBook);
+        Book book = booksRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Книга з ID " + id + " не знайдена"));
+        String previousTitle = book.getTitle();
+        book.setTitle(updatedBook.getTitle());
+        book.setAuthor(updatedBook.getAuthor());
+        book.setYear(updatedBook.getYear());
+        boolean available = book.getOwner() == null;
+        TransactionHooks.afterCommit(() -> {
+            if (!indexReadiness.defer(id, previousTitle)) {
+                titleIndex.put(id, previousTitle, book.getTitle());
+                searchIndex.put(id, book.getTitle(), book.getAuthor(), available);
+            }
+            versions.bookChanged(id);
+        });
     }
 
     // Метод delete видаляє книгу за заданим ідентифікатором.
     @Transactional
     public void delete(int id) {
-        booksRepository.deleteById(id);
+        deleteAll(Collections.singletonList(id));
     }
 
-    //Вивільняє книгу(коли повертають)
+    // Метод deleteAll видаляє книги одним DELETE і повертає кількість видалених.
+    // Видані книги спершу повертаються (releaseLoans) - щоб зменшити лічильники їхніх читачів
+    // і закрити видачі в журналі подіями повернення.
+    // Якщо якусь видану книгу повернути не вдалося (releaseLoans), видалення відкочується цілком.
+    // Назви книг читаються одним запитом перед DELETE: за ними книги прибираються з індексу назв після коміту.
+    // Hibernate при цьому скидає регіон кешу книг цілком.
     @Transactional
-    public void release(int id) {
-        Book book = booksRepository.findById(id).
-                orElseThrow(() -> new EntityNotFoundException("Книга з ID " + id + " не знайдена"));
-        book.setOwner(null);
-        booksRepository.save(book);
+    public int deleteAll(Collection<Integer> ids) {
+        if (ids.isEmpty())
+            return 0;
+        Map<Integer, String> titles = new HashMap<>();
+        for (Object[] row : booksRepository.findTitlesByIdIn(ids))
+            titles.put((Integer) row[0], (String) row[1]);
+        Date now = new Date();
+        List<LoanState> released = releaseLoans(ids, now);
+        Collection<Integer> owners = ownersOf(released);
+        List<LoanEvent> returns = returnsOf(released, now);
+        int deleted = booksRepository.deleteAllByIds(ids);
+        TransactionHooks.afterCommit(() -> {
+            if (!indexReadiness.defer(titles)) {
+                titles.forEach(titleIndex::remove);
+                titles.keySet().forEach(searchIndex::remove);
+            }
+            versions.booksChanged(ids);
+            versions.peopleChanged(owners);
+            loanLedger.record(returns);
+        });
+        return deleted;
     }
 
-    //Призначають книгу людині(коли забирає)
+    // Метод releaseAllOfOwners повертає всі книги заданих читачів одним UPDATE (наприклад перед їх видаленням).
+    // Лічильники книг цих читачів не змінюються: викликається лише разом з видаленням самих читачів.
+    // Повернення записуються в журнал видач: для нього рядки книг блокуються і читаються як (id, читач, термін),
+    // тож навіть тисячі книг не завантажуються в контекст персистентності сутностями.
     @Transactional
-    public void assign(int id, Person person) {
-        Book book = booksRepository.findById(id).
-                orElseThrow(() -> new EntityNotFoundException("Книга з ID " + id + " не знайдена"));
-        book.setOwner(person);
-        book.setCreateAt(new Date());
-        booksRepository.save(book);
+    public void releaseAllOfOwners(Collection<Integer> personIds) {
+        List<LoanState> loaned = new ArrayList<>();
+        for (Object[] row : booksRepository.lockLoansOfOwners(personIds))
+            loaned.add(new LoanState(((Number) row[0]).intValue(), ((Number) row[1]).intValue(), (Date) row[2]));
+        if (loaned.isEmpty())
+            return;
+        List<Integer> bookIds = loaned.stream().map(LoanState::getBookId).collect(Collectors.toList());
+        List<LoanEvent> returns = returnsOf(loaned, new Date());
+        booksRepository.releaseAllOfOwners(personIds);
+        TransactionHooks.afterCommit(() -> {
+            if (!indexReadiness.defer(bookIds))
+                bookIds.forEach(id -> searchIndex.setAvailable(id, true));
+            versions.booksChanged(bookIds);
+            loanLedger.record(returns);
+        });
+    }
+
+    //Вивільняє книгу(коли повертають).
+    //Повернення - умовний UPDATE ... WHERE id = ? AND id_person = ? без блокування рядка (див. releaseLoans),
+    //тому з двох одночасних повернень лічильники читача зменшує і подію повернення в журнал видач записує
+    //лише одне. Повертає false, якщо книга вже вільна (наприклад її щойно повернув інший бібліотекар) або її не існує.
+    //Якщо книгу так і не вдалося повернути через одночасні зміни - ConcurrencyFailureException (див. releaseLoans).
+    @Transactional
+    public boolean release(int id) {
+        Date now = new Date();
+        List<LoanState> released = releaseLoans(Collections.singletonList(id), now);
+        if (released.isEmpty())
+            return false;
+        Collection<Integer> owners = ownersOf(released);
+        List<LoanEvent> returns = returnsOf(released, now);
+        TransactionHooks.afterCommit(() -> {
+            if (!indexReadiness.defer(id))
+                searchIndex.setAvailable(id, true);
+            versions.bookChanged(id);
+            versions.peopleChanged(owners);
+            loanLedger.record(returns);
+        });
+        return true;
+    }
+
+    //Призначають книгу людині(коли забирає).
+    //Видача виконується одним умовним UPDATE ... WHERE id = ? AND id_person IS NULL, тому з двох
+    //одночасних видач однієї книги успішна лише одна, без блокувань рядка. Повертає false, якщо книгу
+    //вже видано або її не існує. Лічильник книг читача збільшується в тій самій транзакції,
+    //а подія видачі йде в журнал видач (LoanLedger) вже після коміту, не подовжуючи транзакцію.
+    @Transactional
+    public boolean assign(int id, Person person) {
+        Date now = new Date();
+        if (booksRepository.assignIfAvailable(id, person.getId(), now, new Date(now.getTime() + loanPeriodMillis)) == 0)
+            return false;
+        peopleRepository.addLoans(person.getId(), 1, 0, now);
+        loanCacheEvictor.evict(Collections.singletonList(id), Collections.singletonList(person.getId()));
+        TransactionHooks.afterCommit(() -> {
+            if (!indexReadiness.defer(id))
+                searchIndex.setAvailable(id, false);
+            versions.bookChanged(id);
+            versions.personChanged(person.getId());
+            loanLedger.record(new LoanEvent(id, person.getId(), LoanEvent.Type.CHECKOUT, now));
+        });
+        return true;
+    }
+
+    //Вивільняє одразу кілька книг (повернення "кошика" книг) одним JDBC-пакетом умовних UPDATE (див. releaseLoans).
+    //Повертає кількість книг, які справді були видані і тепер повернуті.
+    @Transactional
+    public int releaseAll(Collection<Integer> ids) {
+        if (ids.isEmpty())
+            return 0;
+        Date now = new Date();
+        List<LoanState> released = releaseLoans(ids, now);
+        Collection<Integer> owners = ownersOf(released);
+        List<LoanEvent> returns = returnsOf(released, now);
+        TransactionHooks.afterCommit(() -> {
+            if (!indexReadiness.defer(ids))
+                ids.forEach(id -> searchIndex.setAvailable(id, true));
+            versions.booksChanged(ids);
+            versions.peopleChanged(owners);
+            loanLedger.record(returns);
+        });
+        return released.size();
     }
 
-    // Метод reBook перевіряє, чи книгу можна перезабрати (якщо пройшло більше 10 днів з дати видачі).
-    public boolean reBook(Book book) {
-        if(book.getCreateAt() != null && new Date().getTime()
-                - book.getCreateAt().getTime() >= 864000000){
-            book.setTakeBook(true);
-            return true;
+    //Призначає людині одразу кілька книг одним UPDATE. Видаються лише вільні книги з ids,
+    //повертається їх кількість.
+    @Transactional
+    public int assignAll(Collection<Integer> ids, Person person) {
+        if (ids.isEmpty())
+            return 0;
+        Date now = new Date();
+        int assigned = booksRepository.assignAllIfAvailable(ids, person.getId(), now, new Date(now.getTime() + loanPeriodMillis));
+        List<LoanEvent> checkouts = new ArrayList<>(assigned);
+        if (assigned > 0) {
+            peopleRepository.addLoans(person.getId(), assigned, 0, now);
+            List<Integer> assignedIds = booksRepository.findIdsAssignedAt(ids, person.getId(), now);
+            for (int id : assignedIds)
+                checkouts.add(new LoanEvent(id, person.getId(), LoanEvent.Type.CHECKOUT, now));
+            loanCacheEvictor.evict(assignedIds, Collections.singletonList(person.getId()));
+        }
+        //після UPDATE кожна книга з ids або видана цьому читачеві, або вже була видана іншому
+        TransactionHooks.afterCommit(() -> {
+            if (!indexReadiness.defer(ids))
+                ids.forEach(id -> searchIndex.setAvailable(id, false));
+            versions.booksChanged(ids);
+            versions.personChanged(person.getId());
+            loanLedger.record(checkouts);
+        });
+        return assigned;
+    }
+
+    // Метод releaseLoans повертає видані книги з ids без блокувань рядків і повертає стан саме тих книг,
+    // які повернув цей виклик. Очікуваний стан книги (читач, термін) береться з кешу другого рівня (multiLoad),
+    // тобто зазвичай без запиту до бази, а перевіряє його сам умовний UPDATE (BooksRepository.releaseLoans).
+    // Якщо стан у кеші застарів (UPDATE не спрацював) чи кеш каже, що книга вільна, стан перечитується з бази
+    // і спроба повторюється. Книги, які після RELEASE_ATTEMPTS спроб досі видані, дають ConcurrencyFailureException:
+    // виклик не вдає, що вони вже вільні, а deleteAll не видаляє неповернутих книг. Лічильники читачів зменшуються рівно на повернуті книги, а з кешу скидаються
+    // лише ці книги і читачі (LoanCacheEvictor).
+    private List<LoanState> releaseLoans(Collection<Integer> ids, Date now) {
+        List<LoanState> expected = new ArrayList<>();
+        Set<Integer> unconfirmed = new HashSet<>(ids);
+        for (Book book : entityManager.unwrap(Session.class).byMultipleIds(Book.class).multiLoad(new ArrayList<>(ids))) {
+            //owner.getId() не ініціалізує лінивий проксі власника
+            if (book != null && book.getOwner() != null) {
+                expected.add(new LoanState(book.getId(), book.getOwner().getId(), book.getDueAt()));
+                unconfirmed.remove(book.getId());
+            }
         }
-        return false;
+        List<LoanState> released = new ArrayList<>();
+        for (int attempt = 0; ; attempt++) {
+            if (!unconfirmed.isEmpty())
+                expected.addAll(booksRepository.findLoanStates(unconfirmed));
+            if (expected.isEmpty())
+                break;
+            //книги досі видані, але їх стан змінювався на кожній спробі - транзакція відкочується цілком
+            if (attempt == RELEASE_ATTEMPTS)
+                throw new ConcurrencyFailureException("Не вдалося повернути книги " + unconfirmed + " за "
+                        + RELEASE_ATTEMPTS + " спроби: їх одночасно видають чи повертають");
+            boolean[] done = booksRepository.releaseLoans(expected, now);
+            unconfirmed = new HashSet<>();
+            for (int i = 0; i < done.length; i++) {
+                if (done[i])
+                    released.add(expected.get(i));
+                else
+                    unconfirmed.add(expected.get(i).getBookId());
+            }
+            expected = new ArrayList<>();
+        }
+
+        //Лічильники читачів теж змінюються в порядку id
+        Map<Integer, int[]> loans = new TreeMap<>();
+        for (LoanState loan : released) {
+            int[] counts = loans.computeIfAbsent(loan.getOwnerId(), ownerId -> new int[2]);
+            counts[0]++;
+            if (loan.isOverdue(now))
+                counts[1]++;
+        }
+        loans.forEach((ownerId, counts) -> peopleRepository.addLoans(ownerId, -counts[0], -counts[1], now));
+        //Скидаються всі ids: запис книги, стан якої в кеші застарів, теж
+        loanCacheEvictor.evict(ids, loans.keySet());
+        return released;
     }
 
+    private static Collection<Integer> ownersOf(List<LoanState> loans) {
+        return loans.stream().map(LoanState::getOwnerId).collect(Collectors.toSet());
+    }
+
+    // Метод returnsOf складає події повернення для журналу видач із повернутих книг.
+    private static List<LoanEvent> returnsOf(List<LoanState> released, Date now) {
+        List<LoanEvent> returns = new ArrayList<>(released.size());
+        for (LoanState loan : released)
+            returns.add(new LoanEvent(loan.getBookId(), loan.getOwnerId(), LoanEvent.Type.RETURN, now));
+        return returns;
+    }
 
     // Метод searchBookByTitleStartsWith повертає список книг, які починаються з заданої назви.
+    // Сторінка пошуку показує власників, тому вони ініціалізуються тут, у транзакції: з кешу другого рівня
+    // або одним запитом ... WHERE id IN (...) на пакет (hibernate.default_batch_fetch_size), а не по запиту на книгу.
     @Transactional
     public List<Book> searchBookByTitleStartsWith(String title) {
-        return booksRepository.searchBookByTitleStartsWith(title);
+        List<Book> books = booksRepository.searchBookByTitleStartsWith(title);
+        books.forEach(book -> Hibernate.initialize(book.getOwner()));
+        return books;
+    }
+
+    // Метод suggestTitles повертає до limit книг, назви яких починаються з prefix,
+    // без урахування регістру та діакритики. Дані беруться з індексу в пам'яті, база не використовується.
+    public List<BookSuggestion> suggestTitles(String prefix, int limit) {
+        return titleIndex.suggest(prefix, limit);
+    }
+
+    // Метод fullTextSearch шукає книги за словами назви та автора з урахуванням помилок і префіксів,
+    // сортує їх за релевантністю і повертає сторінку page розміром size.
+    // available: null - усі книги, true - лише вільні, false - лише видані.
+    // Ранжування виконується індексом у пам'яті, з бази читаються лише книги поточної сторінки.
+    public BookSearchResult fullTextSearch(String query, Boolean available, int page, int size) {
+        BookSearchIndex.SearchHits hits = searchIndex.search(query, available, page, size);
+        Map<Integer, Book> found = booksRepository.findByIdIn(hits.getIds()).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+        List<Book> books = new ArrayList<>(hits.getIds().size());
+        for (Integer id : hits.getIds()) {
+            Book book = found.get(id);
+            if (book != null)
+                books.add(book);
+        }
+        return new BookSearchResult(books, hits.getTotal());
     }
 }
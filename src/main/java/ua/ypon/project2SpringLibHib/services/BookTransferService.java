@@ -0,0 +1,265 @@
+package ua.ypon.project2SpringLibHib.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.ypon.project2SpringLibHib.dto.BookImportRecord;
+import ua.ypon.project2SpringLibHib.dto.ImportReport;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.repositories.BooksRepository;
+import ua.ypon.project2SpringLibHib.search.BookSearchIndex;
+import ua.ypon.project2SpringLibHib.search.IndexReadiness;
+import ua.ypon.project2SpringLibHib.search.TitleIndex;
+import ua.ypon.project2SpringLibHib.util.BookFormat;
+import ua.ypon.project2SpringLibHib.util.CsvReader;
+import ua.ypon.project2SpringLibHib.util.CsvWriter;
+import ua.ypon.project2SpringLibHib.util.ResourceVersions;
+import ua.ypon.project2SpringLibHib.util.TransactionHooks;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BookTransferService виконує масовий імпорт та експорт каталогу книг у форматах CSV та JSON Lines.
+Обидва напрямки працюють потоково: в пам'яті одночасно знаходиться не більше однієї порції записів,
+тому використання heap не залежить від розміру каталогу.
+ */
+@Service
+public class BookTransferService {
+
+    private static final Log log = LogFactory.getLog(BookTransferService.class);
+
+    // Кількість книг, що зберігаються в одній транзакції під час імпорту
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+
+    private final BooksRepository booksRepository;
+    private final TitleIndex titleIndex;
+    private final BookSearchIndex searchIndex;
+    private final IndexReadiness indexReadiness;
+    private final ResourceVersions versions;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private final ObjectReader recordReader = objectMapper.readerFor(BookImportRecord.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public BookTransferService(BooksRepository booksRepository, TitleIndex titleIndex, BookSearchIndex searchIndex,
+                               IndexReadiness indexReadiness, ResourceVersions versions, Validator validator,
+                               PlatformTransactionManager transactionManager) {
+        this.booksRepository = booksRepository;
+        this.titleIndex = titleIndex;
+        this.searchIndex = searchIndex;
+        this.indexReadiness = indexReadiness;
+        this.versions = versions;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Метод export записує всі книги у out в заданому форматі і повертає кількість записаних книг.
+    // Рядки читаються курсором (fetch size) як скалярні значення, тож контекст персистентності не росте.
+    @Transactional(readOnly = true)
+    public long export(BookFormat format, Writer out) throws IOException {
+        long count = 0;
+        try (Stream<Object[]> rows = booksRepository.streamExportRows()) {
+            Iterator<Object[]> iterator = rows.iterator();
+            if (format == BookFormat.CSV) {
+                CsvWriter csv = new CsvWriter(out);
+                csv.field("id").field("title").field("author").field("year").endRecord();
+                while (iterator.hasNext()) {
+                    Object[] row = iterator.next();
+                    csv.field((Integer) row[0]).field((String) row[1]).field((String) row[2]).field((Integer) row[3]);
+                    csv.endRecord();
+                    count++;
+                }
+            } else {
+                try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                    json.setRootValueSeparator(null);
+                    while (iterator.hasNext()) {
+                        Object[] row = iterator.next();
+                        json.writeStartObject();
+                        json.writeNumberField("id", (Integer) row[0]);
+                        json.writeStringField("title", (String) row[1]);
+                        json.writeStringField("author", (String) row[2]);
+                        json.writeNumberField("year", (Integer) row[3]);
+                        json.writeEndObject();
+                        json.writeRaw('\n');
+                        count++;
+                    }
+                }
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    // Метод importBooks читає книги з in, перевіряє кожну обмеженнями сутності Book і зберігає коректні
+    // порціями по IMPORT_CHUNK_SIZE, кожна порція - окрема транзакція з пакетними INSERT.
+    // Некоректні записи пропускаються і потрапляють у звіт з номером рядка. Записи читаються в BookImportRecord,
+    // тому id, власника і дати видачі з файлу задати не можна - імпортовані книги завжди нові, без власника.
+    // Якщо файл не вдалося дочитати або порцію не вдалося зберегти, імпорт зупиняється і повертає частковий
+    // звіт (ImportReport.fail): збережені порції лишаються, а рядок, з якого нічого не збережено, - у звіті.
+    public ImportReport importBooks(BookFormat format, Reader in) {
+        ImportReport report = new ImportReport();
+        Chunk chunk = new Chunk();
+        BufferedReader reader = new BufferedReader(in);
+        CsvReader csv = format == BookFormat.CSV ? new CsvReader(reader) : null;
+        int line = 0;
+
+        try {
+            if (csv != null) {
+                List<String> header = csv.next();
+                if (header == null)
+                    return report;
+                int title = header.indexOf("title");
+                int author = header.indexOf("author");
+                int year = header.indexOf("year");
+                if (title < 0 || author < 0 || year < 0) {
+                    report.fail(1, ImportReport.Failure.INPUT, "Заголовок CSV повинен містити колонки title, author, year");
+                    return report;
+                }
+
+                List<String> fields;
+                while ((fields = csv.next()) != null) {
+                    if (fields.size() == 1 && fields.get(0).isEmpty())
+                        continue;
+                    line = csv.getRecordLine();
+                    if (fields.size() != header.size()) {
+                        report.reject(line, "очікувалось " + header.size() + " колонок, отримано " + fields.size());
+                        continue;
+                    }
+                    int parsedYear;
+                    try {
+                        parsedYear = Integer.parseInt(fields.get(year).trim());
+                    } catch (NumberFormatException e) {
+                        report.reject(line, "рік не є числом: " + fields.get(year));
+                        continue;
+                    }
+                    if (!add(new BookImportRecord(fields.get(title), fields.get(author), parsedYear), line, chunk, report))
+                        return report;
+                }
+            } else {
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    line++;
+                    if (text.isBlank())
+                        continue;
+                    BookImportRecord record;
+                    try {
+                        record = recordReader.readValue(text);
+                    } catch (JsonProcessingException e) {
+                        report.reject(line, "некоректний JSON: " + e.getOriginalMessage());
+                        continue;
+                    }
+                    if (record == null) {
+                        report.reject(line, "запис повинен бути JSON-об'єктом");
+                        continue;
+                    }
+                    if (!add(record, line, chunk, report))
+                        return report;
+                }
+            }
+        } catch (IOException e) {
+            //прочитане до помилки ще зберігаємо, щоб звіт відповідав рядку, на якому імпорт зупинився
+            int failedLine = csv != null ? csv.getRecordLine() : line + 1;
+            if (flush(chunk, report))
+                report.fail(failedLine, ImportReport.Failure.INPUT, "помилка читання: " + e.getMessage());
+            return report;
+        }
+        flush(chunk, report);
+        return report;
+    }
+
+    // Метод add перевіряє запис і додає його до порції; повертає false, якщо порцію не вдалося зберегти.
+    private boolean add(BookImportRecord record, int line, Chunk chunk, ImportReport report) {
+        Book book = record.toBook();
+        Set<ConstraintViolation<Book>> violations = validator.validate(book);
+        if (!violations.isEmpty()) {
+            report.reject(line, violations.stream().map(ConstraintViolation::getMessage).sorted()
+                    .collect(Collectors.joining("; ")));
+            return true;
+        }
+        chunk.add(book, line);
+        return chunk.books.size() < IMPORT_CHUNK_SIZE || flush(chunk, report);
+    }
+
+    // Метод flush зберігає порцію книг в окремій транзакції. Кеш другого рівня вимкнено для цієї сесії,
+    // щоб імпорт не витісняв з нього книги, які реально читають. Після коміту нові книги додаються в індекси пошуку.
+    // Якщо транзакцію відкочено, позначає у звіті перший рядок порції і повертає false.
+    private boolean flush(Chunk chunk, ImportReport report) {
+        if (chunk.books.isEmpty())
+            return true;
+        List<Book> saved = new ArrayList<>(chunk.books);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+                booksRepository.saveAll(saved);
+                TransactionHooks.afterCommit(() -> {
+                    List<Integer> ids = new ArrayList<>(saved.size());
+                    for (Book book : saved)
+                        ids.add(book.getId());
+                    if (!indexReadiness.defer(ids)) {
+                        BookSearchIndex.Batch batch = searchIndex.batch();
+                        for (Book book : saved) {
+                            titleIndex.put(book.getId(), null, book.getTitle());
+                            batch.add(book.getId(), book.getTitle(), book.getAuthor(), true);
+                        }
+                        batch.apply();
+                    }
+                    versions.booksChanged(ids);
+                });
+            });
+        } catch (RuntimeException e) {
+            log.warn("Імпорт зупинено: порцію з рядка " + chunk.firstLine + " не збережено", e);
+            report.fail(chunk.firstLine, ImportReport.Failure.DATABASE,
+                    "помилка збереження: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+            return false;
+        }
+        report.addImported(saved.size());
+        chunk.books.clear();
+        return true;
+    }
+
+    // Порція книг, що зберігається однією транзакцією, і рядок файлу, з якого вона почалась
+    private static class Chunk {
+        private final List<Book> books = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        private int firstLine;
+
+        private void add(Book book, int line) {
+            if (books.isEmpty())
+                firstLine = line;
+            books.add(book);
+        }
+    }
+}
@@ -1,14 +1,30 @@
 package ua.ypon.project2SpringLibHib.services;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ua.ypon.project2SpringLibHib.dto.CursorPage;
+import ua.ypon.project2SpringLibHib.dto.PersonView;
 import ua.ypon.project2SpringLibHib.models.Book;
 import ua.ypon.project2SpringLibHib.models.Person;
 import ua.ypon.project2SpringLibHib.repositories.PeopleRepository;
+import ua.ypon.project2SpringLibHib.util.LoanCacheEvictor;
+import ua.ypon.project2SpringLibHib.util.ResourceVersions;
+import ua.ypon.project2SpringLibHib.util.TransactionHooks;
 
+import javax.persistence.EntityNotFoundException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * net.ukr@caravell 01/05/2023
@@ -25,15 +41,29 @@ import java.util.Optional;
 // що дозволяє лише читати дані з бази даних без змін.
 public class PeopleService {
 
+    private static final Log log = LogFactory.getLog(PeopleService.class);
+
+    //Запас часу для звірки: зміни транзакцій, які почались до попередньої звірки, а закомітились після неї
+    private static final long RECONCILE_OVERLAP_MILLIS = 60_000;
+
     private final PeopleRepository peopleRepository;
+    private final BookService bookService;
+    private final ResourceVersions versions;
+    private final LoanCacheEvictor loanCacheEvictor;
+    //Час початку останньої успішної звірки; null - ще не було, перша звірка перевіряє всіх читачів
+    private volatile Date lastReconciled;
 
     //Залежність до репозиторію "PeopleRepository" встановлюється за допомогою анотації "@Autowired".
     // Це забезпечує ін'єкцію залежностей,
     // тобто Spring автоматично створить і надасть екземпляр репозиторію класу "PeopleRepository"
     // для використання в сервісі.
     @Autowired
-    public PeopleService(PeopleRepository peopleRepository) {
+    public PeopleService(PeopleRepository peopleRepository, BookService bookService, ResourceVersions versions,
+                         LoanCacheEvictor loanCacheEvictor) {
         this.peopleRepository = peopleRepository;
+        this.bookService = bookService;
+        this.versions = versions;
+        this.loanCacheEvictor = loanCacheEvictor;
     }
 
 
@@ -41,30 +71,100 @@ public class PeopleService {
         return peopleRepository.findAll();
     }
 
+    //Метод "streamViews" передає в action потік проєкцій PersonView усіх людей, прочитаний курсором бази.
+    // Потік треба обробити всередині виклику, поки відкриті транзакція і курсор.
+    public void streamViews(Consumer<Stream<PersonView>> action) {
+        try (Stream<PersonView> views = peopleRepository.streamViews()) {
+            action.accept(views);
+        }
+    }
+
     //Метод "findOne(int id)" шукає об'єкт "Person" за заданим ідентифікатором.
     public Person findOne(int id) {
         Optional<Person> foundPerson = peopleRepository.findById(id);
         return foundPerson.orElse(null);
     }
 
+    //Метод "findViews(int afterId, int limit)" повертає сторінку читачів для JSON API після читача з id afterId.
+    public CursorPage<PersonView> findViews(int afterId, int limit) {
+        List<PersonView> people = peopleRepository.findViewsAfterId(afterId, PageRequest.of(0, limit + 1));
+        if (people.size() <= limit)
+            return new CursorPage<>(people, null);
+        people = people.subList(0, limit);
+        return new CursorPage<>(people, people.get(limit - 1).getId());
+    }
+
+    public Optional<PersonView> findView(int id) {
+        return peopleRepository.findViewById(id);
+    }
+
+    //Метод "findTopBorrowers(boolean byOverdue, int page, int size)" повертає сторінку читачів з найбільшою
+    // кількістю книг на руках (або прострочених книг, якщо byOverdue) за збереженими лічильниками.
+    public Slice<PersonView> findTopBorrowers(boolean byOverdue, int page, int size) {
+        PageRequest pageRequest = PageRequest.of(page, size);
+        return byOverdue ? peopleRepository.findTopByOverdueLoans(pageRequest)
+                : peopleRepository.findTopByActiveLoans(pageRequest);
+    }
+
+    //Метод "reconcileLoanCounters()" періодично (library.loan_counters_reconcile_interval) звіряє лічильники
+    // книг читачів з таблицею Book і виправляє розбіжності: переводить у прострочені книги, термін яких минув
+    // після видачі, і лагодить лічильники після змін книг в обхід BookService (імпорт, ручний SQL).
+    // Перерахунок іде лише для читачів з розбіжністю, тому кеш і версії інших читачів не змінюються.
+    // Перша звірка після старту перевіряє всіх читачів (зміни в обхід застосунку, поки він не працював),
+    // а наступні - лише читачів зі змінами лічильників чи з терміном повернення, що минув після попередньої звірки.
+    @Scheduled(fixedDelayString = "${library.loan_counters_reconcile_interval}")
+    @Transactional
+    public int reconcileLoanCounters() {
+        Date now = new Date();
+        Date since = lastReconciled == null ? null : new Date(lastReconciled.getTime() - RECONCILE_OVERLAP_MILLIS);
+        List<Integer> drifted = since == null ? peopleRepository.findLoanCounterDrift(now)
+                : peopleRepository.findLoanCounterDriftSince(since, now);
+        TransactionHooks.afterCommit(() -> lastReconciled = now);
+        if (drifted.isEmpty())
+            return 0;
+        int repaired = peopleRepository.reconcileLoans(drifted, now);
+        loanCacheEvictor.evict(Collections.emptyList(), drifted);
+        log.info("Loan counters reconciled for " + repaired + " people");
+        TransactionHooks.afterCommit(() -> versions.peopleChanged(drifted));
+        return repaired;
+    }
+
     //Метод "save(Person person)" зберігає новий об'єкт "Person" у базі даних
     @Transactional
     public void save(Person person) {
         peopleRepository.save(person);
+        TransactionHooks.afterCommit(() -> versions.personChanged(person.getId()));
     }
 
     //Метод "update(int id, Person updatedPerson)" оновлює існуючий об'єкт "Person" з новими даними.
-    // Він приймає ідентифікатор та оновлений об'єкт "Person" і зберігає оновлення у базі даних.
+    // Він копіює поля форми (ім'я та рік народження) в керовану сутність, тому при коміті Hibernate
+    // записує лише змінені колонки (@DynamicUpdate), без повного merge і без зайвого SELECT.
     @Transactional
     public void update(int id, Person updatedPerson) {
-        updatedPerson.setId(id);
-        peopleRepository.save(updatedPerson);
+        Person person = peopleRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Людина з ID " + id + " не знайдена"));
+        person.setName(updatedPerson.getName());
+        person.setYearOfBirth(updatedPerson.getYearOfBirth());
+        TransactionHooks.afterCommit(() -> versions.personChanged(id));
     }
 
     //Метод "delete(int id)" видаляє об'єкт "Person" з бази даних за заданим ідентифікатором.
     @Transactional
     public void delete(int id) {
-        peopleRepository.deleteById(id);
+        deleteAll(Collections.singletonList(id));
+    }
+
+    //Метод "deleteAll(Collection<Integer> ids)" видаляє людей разом: спочатку одним UPDATE повертає
+    // всі їхні книги, потім одним DELETE видаляє самих людей. Сутності не читаються, а кеш другого рівня
+    // ("people", "people.books", "books") Hibernate скидає для всього набору одразу. Повертає кількість видалених.
+    @Transactional
+    public int deleteAll(Collection<Integer> ids) {
+        if (ids.isEmpty())
+            return 0;
+        bookService.releaseAllOfOwners(ids);
+        int deleted = peopleRepository.deleteAllByIds(ids);
+        TransactionHooks.afterCommit(() -> versions.peopleChanged(ids));
+        return deleted;
     }
 }
 /*
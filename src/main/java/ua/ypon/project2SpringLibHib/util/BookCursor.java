@@ -0,0 +1,63 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BookCursor - позиція в каталозі для курсорної пагінації: ключ (year, id) останньої
+або першої показаної книги та напрямок руху. У URL передається як непрозорий Base64-токен,
+щоб клієнти не будували курсори самі.
+ */
+public class BookCursor {
+
+    private final boolean forward;
+    private final int year;
+    private final int id;
+
+    public BookCursor(boolean forward, int year, int id) {
+        this.forward = forward;
+        this.year = year;
+        this.id = id;
+    }
+
+    // true - сторінка після ключа, false - сторінка перед ключем
+    public boolean isForward() {
+        return forward;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    // Метод encode перетворює курсор на токен для URL.
+    public String encode() {
+        String raw = (forward ? "n" : "p") + ":" + year + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Метод decode відновлює курсор з токена. Кидає IllegalArgumentException, якщо токен пошкоджений.
+    public static BookCursor decode(String token) {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] parts = raw.split(":");
+        if (parts.length != 3 || !(parts[0].equals("n") || parts[0].equals("p")))
+            throw new IllegalArgumentException("Некоректний курсор сторінки: " + token);
+        return new BookCursor(parts[0].equals("n"), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+    }
+
+    // Метод isValid перевіряє, чи можна відновити курсор з токена (токен приходить з URL, тобто від клієнта).
+    public static boolean isValid(String token) {
+        try {
+            decode(token);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ua.ypon.project2SpringLibHib.util;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+//Перелік BookFormat - формати масового імпорту та експорту каталогу книг.
+public enum BookFormat {
+    // Рядок заголовка з назвами колонок, далі по одній книзі в рядку (RFC 4180)
+    CSV("text/csv", "csv"),
+    // По одному JSON-об'єкту книги в рядку (JSON Lines)
+    JSONL("application/x-ndjson", "jsonl");
+
+    private final String contentType;
+    private final String extension;
+
+    BookFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    // Метод of повертає формат за назвою з параметра запиту (csv, jsonl) без урахування регістру.
+    public static BookFormat of(String name) {
+        for (BookFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name))
+                return format;
+        }
+        throw new IllegalArgumentException("Невідомий формат: " + name);
+    }
+}
@@ -0,0 +1,90 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас CsvReader читає CSV (RFC 4180) по одному запису, не завантажуючи весь файл у пам'ять.
+Підтримуються поля в лапках, подвоєні лапки всередині поля та переноси рядків у полях.
+ */
+public class CsvReader {
+
+    private final Reader in;
+    private int line = 1;
+    private int recordLine;
+    private int pending = -2;
+
+    // in має бути буферизованим (BufferedReader), бо символи читаються по одному
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    // Метод next повертає поля наступного запису або null, якщо дані закінчились.
+    public List<String> next() throws IOException {
+        recordLine = line;
+        int c = read();
+        if (c == -1)
+            return null;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1)
+                    throw new IOException("Незакрита лапка в записі з рядка " + recordLine);
+                if (c == '"') {
+                    int n = read();
+                    if (n == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = n;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r') {
+                    int n = read();
+                    if (n != '\n')
+                        pending = n;
+                }
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    // Номер рядка, з якого почався останній прочитаний запис (або запис, на якому next() кинув IOException)
+    public int getRecordLine() {
+        return recordLine;
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pending != -2) {
+            c = pending;
+            pending = -2;
+        } else {
+            c = in.read();
+        }
+        if (c == '\n')
+            line++;
+        return c;
+    }
+}
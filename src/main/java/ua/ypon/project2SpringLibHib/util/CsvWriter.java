@@ -0,0 +1,50 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+//Клас CsvWriter записує CSV (RFC 4180) напряму у Writer, беручи в лапки лише ті поля, яким це потрібно.
+public class CsvWriter {
+
+    private final Writer out;
+    private boolean firstField = true;
+
+    public CsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    public CsvWriter field(String value) throws IOException {
+        separate();
+        if (value == null)
+            return this;
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+            return this;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+        return this;
+    }
+
+    public CsvWriter field(int value) throws IOException {
+        separate();
+        out.write(Integer.toString(value));
+        return this;
+    }
+
+    // Метод endRecord завершує поточний запис
+    public void endRecord() throws IOException {
+        out.write("\r\n");
+        firstField = true;
+    }
+
+    private void separate() throws IOException {
+        if (!firstField)
+            out.write(',');
+        firstField = false;
+    }
+}
@@ -0,0 +1,48 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Iterator;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас FlushingIterator обгортає ітератор рядків списку, який шаблон перебирає під час рендерингу
+прямо у відповідь, і скидає writer клієнту кожні chunkSize елементів.
+Так сторінка йде до клієнта частинами, поки рядки ще читаються з бази.
+Якщо клієнт розірвав з'єднання, помилка запису перериває рендеринг і закриває курсор.
+ */
+public class FlushingIterator<T> implements Iterator<T> {
+
+    private final Iterator<T> delegate;
+    private final Writer writer;
+    private final int chunkSize;
+    private int count;
+
+    public FlushingIterator(Iterator<T> delegate, Writer writer, int chunkSize) {
+        this.delegate = delegate;
+        this.writer = writer;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return delegate.hasNext();
+    }
+
+    @Override
+    public T next() {
+        //попередній рядок уже записано шаблоном - скидаємо накопичену частину
+        if (count > 0 && count % chunkSize == 0) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        count++;
+        return delegate.next();
+    }
+}
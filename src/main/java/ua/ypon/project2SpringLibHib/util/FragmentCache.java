@@ -0,0 +1,206 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.support.RequestContextUtils;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.WebContext;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас FragmentCache зберігає вже відрендерений HTML фрагментів шаблонів (рядок книги чи читача у списку,
+сторінка каталогу) разом з версією даних з ResourceVersions, з яких його зібрано.
+Запис вважається актуальним, лише поки версія не змінилась. Сервіси оновлюють версії після коміту,
+тому запис у BookService/PeopleService робить застарілими тільки фрагменти змінених книг чи читачів,
+а старий запис замінюється новим при наступному рендерингу.
+
+Записи тримає Caffeine: читання й запис з різних потоків не чекають одне одного на спільному замку.
+Розмір обмежено сумарною довжиною HTML (library.fragment_cache_max_chars, вага запису - його довжина);
+при переповненні Caffeine витісняє записи, до яких рідко звертаються (W-TinyLFU).
+Повний каталог без пагінації (/books) кеш лише читає (getIfCached): одноразовий перегляд
+усього каталогу не витісняє сторінки й рядки, до яких звертаються часто.
+
+Один фрагмент віддається різним відвідувачам, тому посилання в ньому рендеряться без кодування сесії
+(без ;jsessionid=... у URL, див. SessionlessResponse).
+
+Для кожного регіону рахуються влучання, промахи та час рендерингу при промахах, з них -
+оцінка заощадженого часу (влучання * середній час промаху), щоб підібрати розмір кешу.
+ */
+@Component
+public class FragmentCache {
+
+    // Накладні витрати на запис (ключ, версія, вузол мапи) у "символах"
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final ITemplateEngine templateEngine;
+    private final long maxChars;
+
+    private final Cache<String, Entry> entries;
+    private final Map<String, RegionStats> regions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FragmentCache(ITemplateEngine templateEngine,
+                         @Value("${library.fragment_cache_max_chars}") long maxChars) {
+        this.templateEngine = templateEngine;
+        this.maxChars = maxChars;
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxChars)
+                .weigher(FragmentCache::weight)
+                .recordStats()
+                .build();
+    }
+
+    // Метод get повертає HTML фрагмента selector шаблону template для ключа key у регіоні region.
+    // Якщо в кеші є запис з тією ж версією - рендеринг (і завантаження даних у variables) пропускається.
+    // Версію треба прочитати ДО завантаження даних: тоді дані не старші за версію, з якою їх закешовано.
+    public String get(ServletWebRequest request, String region, Object key, long version,
+                      String template, String selector, Supplier<Map<String, Object>> variables) {
+        RegionStats stats = regions.computeIfAbsent(region, r -> new RegionStats());
+        String cacheKey = region + ':' + key;
+        Entry entry = entries.getIfPresent(cacheKey);
+        if (entry != null && entry.version == version) {
+            stats.hits.increment();
+            return entry.html;
+        }
+
+        long start = System.nanoTime();
+        String html = render(request, template, selector, variables.get());
+        stats.misses.increment();
+        stats.renderNanos.add(System.nanoTime() - start);
+        put(cacheKey, new Entry(version, html));
+        return html;
+    }
+
+    // Метод getIfCached - як get, але при промаху фрагмент рендериться без збереження в кеш,
+    // а влучання не впливає на те, які записи Caffeine витіснить. Для повних списків без пагінації.
+    public String getIfCached(ServletWebRequest request, String region, Object key, long version,
+                              String template, String selector, Map<String, Object> variables) {
+        Entry entry = entries.policy().getIfPresentQuietly(region + ':' + key);
+        if (entry != null && entry.version == version) {
+            regions.computeIfAbsent(region, r -> new RegionStats()).hits.increment();
+            return entry.html;
+        }
+        return render(request, template, selector, variables);
+    }
+
+    // Метод render рендерить фрагмент без кешу (наприклад коли дані змінились під час завантаження).
+    // Посилання - без кодування сесії, як і в закешованих фрагментах того самого списку.
+    public String render(ServletWebRequest request, String template, String selector, Map<String, Object> variables) {
+        return templateEngine.process(template, Collections.singleton(selector),
+                context(request, new SessionlessResponse(request.getResponse()), variables));
+    }
+
+    // Метод renderTo рендерить увесь шаблон прямо у writer відповіді, без проміжного рядка в пам'яті.
+    public void renderTo(ServletWebRequest request, String template, Map<String, Object> variables, Writer writer) {
+        templateEngine.process(template, context(request, request.getResponse(), variables), writer);
+    }
+
+    private static WebContext context(ServletWebRequest request, HttpServletResponse response, Map<String, Object> variables) {
+        return new WebContext(request.getRequest(), response,
+                request.getRequest().getServletContext(), RequestContextUtils.getLocale(request.getRequest()), variables);
+    }
+
+    private void put(String cacheKey, Entry entry) {
+        //фрагмент, більший за 1/16 кешу, витіснив би забагато інших записів
+        if (weight(cacheKey, entry) > maxChars / 16)
+            return;
+        //паралельний запит міг уже зберегти новішу версію - її не замінюємо
+        entries.asMap().merge(cacheKey, entry, (previous, next) -> previous.version > next.version ? previous : next);
+    }
+
+    private static int weight(String cacheKey, Entry entry) {
+        return cacheKey.length() + entry.html.length() + ENTRY_OVERHEAD;
+    }
+
+    // Метод writePrometheus дописує статистику кешу фрагментів у форматі Prometheus.
+    public void writePrometheus(StringBuilder out) {
+        out.append("# TYPE fragment_cache_requests_total counter\n");
+        for (Map.Entry<String, RegionStats> entry : regions.entrySet()) {
+            out.append("fragment_cache_requests_total{region=\"").append(entry.getKey()).append("\",result=\"hit\"} ")
+                    .append(entry.getValue().hits.sum()).append('\n');
+            out.append("fragment_cache_requests_total{region=\"").append(entry.getKey()).append("\",result=\"miss\"} ")
+                    .append(entry.getValue().misses.sum()).append('\n');
+        }
+
+        out.append("# TYPE fragment_cache_render_seconds_total counter\n");
+        for (Map.Entry<String, RegionStats> entry : regions.entrySet()) {
+            out.append("fragment_cache_render_seconds_total{region=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().renderNanos.sum() / 1e9).append('\n');
+        }
+
+        out.append("# TYPE fragment_cache_saved_seconds_total counter\n");
+        for (Map.Entry<String, RegionStats> entry : regions.entrySet()) {
+            out.append("fragment_cache_saved_seconds_total{region=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().savedSeconds()).append('\n');
+        }
+
+        long usedChars = entries.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+        out.append("# TYPE fragment_cache_entries gauge\n");
+        out.append("fragment_cache_entries ").append(entries.estimatedSize()).append('\n');
+        out.append("# TYPE fragment_cache_chars gauge\n");
+        out.append("fragment_cache_chars{state=\"used\"} ").append(usedChars).append('\n');
+        out.append("fragment_cache_chars{state=\"max\"} ").append(maxChars).append('\n');
+        out.append("# TYPE fragment_cache_evictions_total counter\n");
+        out.append("fragment_cache_evictions_total ").append(entries.stats().evictionCount()).append('\n');
+    }
+
+    // Відрендерений HTML і версія даних, з яких його зібрано
+    private static class Entry {
+        private final long version;
+        private final String html;
+
+        private Entry(long version, String html) {
+            this.version = version;
+            this.html = html;
+        }
+    }
+
+    // Відповідь, яка не дописує ідентифікатор сесії до URL: фрагмент з кешу бачать усі відвідувачі,
+    // і чужий ;jsessionid у посиланні підмінив би їм сесію
+    private static class SessionlessResponse extends HttpServletResponseWrapper {
+
+        private SessionlessResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public String encodeURL(String url) {
+            return url;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public String encodeUrl(String url) {
+            return url;
+        }
+    }
+
+    private static class RegionStats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder renderNanos = new LongAdder();
+
+        // Оцінка: кожне влучання заощадило середній час промаху в цьому регіоні
+        private double savedSeconds() {
+            long missCount = misses.sum();
+            if (missCount == 0)
+                return 0;
+            return hits.sum() * (renderNanos.sum() / (double) missCount) / 1e9;
+        }
+    }
+}
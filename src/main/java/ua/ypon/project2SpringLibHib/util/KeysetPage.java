@@ -0,0 +1,38 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import java.util.List;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас KeysetPage - одна сторінка результатів курсорної (keyset) пагінації.
+Замість номера сторінки містить непрозорі токени для переходу на наступну та попередню сторінки,
+тому не потребує ні OFFSET, ні COUNT(*).
+ */
+public class KeysetPage<T> {
+
+    private final List<T> content;
+    private final String nextCursor;
+    private final String prevCursor;
+
+    public KeysetPage(List<T> content, String nextCursor, String prevCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+        this.prevCursor = prevCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    // Токен наступної сторінки або null, якщо це остання сторінка
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    // Токен попередньої сторінки або null, якщо це перша сторінка
+    public String getPrevCursor() {
+        return prevCursor;
+    }
+}
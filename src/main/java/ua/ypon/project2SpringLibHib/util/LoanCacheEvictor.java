@@ -0,0 +1,66 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LoanCacheEvictor скидає з кешу другого рівня лише ті записи, які змінила видача чи повернення:
+книги, читачів (лічильники книг) і колекції книг цих читачів (регіон people.books).
+Видачу і повернення виконує native SQL з простором запиту LOAN_SPACE, якого немає в жодної сутності,
+тому Hibernate не скидає регіони books і people цілком і не інвалідує кеш запитів по Book,
+як для JPQL bulk UPDATE. Записи скидаються одразу після UPDATE і ще раз після коміту: паралельне читання,
+що встигло між ними покласти в кеш старий рядок, не переживе коміт.
+SessionFactory береться при першому зверненні (див. HibernateMetrics).
+ */
+@Component
+public class LoanCacheEvictor {
+
+    // Простір запиту (NATIVE_SPACES) для native UPDATE видач і лічильників читачів
+    public static final String LOAN_SPACE = "library_loans";
+
+    private static final String PERSON_BOOKS = Person.class.getName() + ".books";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private volatile Cache cache;
+
+    @Autowired
+    public LoanCacheEvictor(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    // Метод evict скидає книги bookIds, читачів personIds і їхні колекції книг зараз і після коміту транзакції.
+    public void evict(Collection<Integer> bookIds, Collection<Integer> personIds) {
+        List<Integer> books = new ArrayList<>(bookIds);
+        List<Integer> people = new ArrayList<>(personIds);
+        evictNow(books, people);
+        TransactionHooks.afterCommit(() -> evictNow(books, people));
+    }
+
+    private void evictNow(List<Integer> bookIds, List<Integer> personIds) {
+        Cache cache = getCache();
+        for (Integer id : bookIds)
+            cache.evictEntityData(Book.class, id);
+        for (Integer id : personIds) {
+            cache.evictEntityData(Person.class, id);
+            cache.evictCollectionData(PERSON_BOOKS, id);
+        }
+    }
+
+    private Cache getCache() {
+        if (cache == null)
+            cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        return cache;
+    }
+}
@@ -0,0 +1,56 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас OverdueCursor - позиція в списку прострочених книг: ключ (due_at, id) останньої показаної книги.
+Як і BookCursor, у URL передається як непрозорий Base64-токен.
+ */
+public class OverdueCursor {
+
+    private final long dueAt;
+    private final int id;
+
+    public OverdueCursor(Date dueAt, int id) {
+        this.dueAt = dueAt.getTime();
+        this.id = id;
+    }
+
+    public Date getDueAt() {
+        return new Date(dueAt);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    // Метод encode перетворює курсор на токен для URL.
+    public String encode() {
+        String raw = dueAt + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Метод decode відновлює курсор з токена. Кидає IllegalArgumentException, якщо токен пошкоджений.
+    public static OverdueCursor decode(String token) {
+        String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String[] parts = raw.split(":");
+        if (parts.length != 2)
+            throw new IllegalArgumentException("Некоректний курсор сторінки: " + token);
+        return new OverdueCursor(new Date(Long.parseLong(parts[0])), Integer.parseInt(parts[1]));
+    }
+
+    // Метод isValid перевіряє, чи можна відновити курсор з токена (токен приходить з URL, тобто від клієнта).
+    public static boolean isValid(String token) {
+        try {
+            decode(token);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.support.RequestContextUtils;
+import ua.ypon.project2SpringLibHib.datasource.ReadYourWrites;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас ResourceVersions зберігає в пам'яті мітки версій даних, з яких будуються сторінки, і відповідає
+на умовні GET-запити (ETag / Last-Modified) без читання сутностей і без рендерингу шаблону.
+
+Мітка - значення глобального лічильника, яке отримує дані при кожній зміні, і час зміни.
+Сервіси оновлюють мітки після коміту транзакції. Тому клієнт не може закешувати старий вміст
+з новим ETag, а найгірший наслідок гонки - зайва відповідь 200.
+Мітки окремих книг і читачів зберігаються в масивах фіксованого розміру за id % розмір: пам'ять не росте
+з каталогом, а спільна комірка лише інколи скидає кеш сусідньої сторінки.
+До ETag додається час старту застосунку, бо після перезапуску лічильник починається з нуля.
+
+Мітку отримують після коміту на primary, а репліки можуть ще якийсь час віддавати старі дані.
+Тому якщо якась із міток сторінки змінилась менше ніж replica.sticky_millis тому, увесь запит читає з primary
+(ReadYourWrites.pinToPrimary): інакше старі дані з репліки потрапили б у кеш фрагментів і в ETag з новою версією
+і лишались би там до наступної зміни.
+ */
+@Component
+public class ResourceVersions {
+
+    private static final int BOOK_SLOTS = 1 << 14;
+    private static final int PERSON_SLOTS = 1 << 12;
+
+    private final long startedAt = System.currentTimeMillis();
+    private final long replicaLagMillis;
+    private final AtomicLong clock = new AtomicLong();
+
+    // Будь-яка зміна книг (список /books, а також сторінки, що показують книги читачів)
+    private final Stamp catalogue = new Stamp();
+    // Будь-яка зміна читачів (імена власників, список для видачі книги)
+    private final Stamp people = new Stamp();
+    private final AtomicLongArray bookVersions = new AtomicLongArray(BOOK_SLOTS);
+    private final AtomicLongArray bookModified = new AtomicLongArray(BOOK_SLOTS);
+    private final AtomicLongArray personVersions = new AtomicLongArray(PERSON_SLOTS);
+    private final AtomicLongArray personModified = new AtomicLongArray(PERSON_SLOTS);
+
+    @Autowired
+    public ResourceVersions(@Value("${replica.sticky_millis}") long replicaLagMillis) {
+        this.replicaLagMillis = replicaLagMillis;
+    }
+
+    // Метод booksChanged позначає зміну книг з заданими id і каталогу в цілому.
+    public void booksChanged(Iterable<Integer> ids) {
+        long version = clock.incrementAndGet();
+        long now = System.currentTimeMillis();
+        for (int id : ids)
+            mark(bookVersions, bookModified, Math.floorMod(id, BOOK_SLOTS), version, now);
+        catalogue.mark(version, now);
+    }
+
+    public void bookChanged(int id) {
+        booksChanged(Collections.singletonList(id));
+    }
+
+    // Метод peopleChanged позначає зміну читачів з заданими id і списку читачів.
+    public void peopleChanged(Iterable<Integer> ids) {
+        long version = clock.incrementAndGet();
+        long now = System.currentTimeMillis();
+        for (int id : ids)
+            mark(personVersions, personModified, Math.floorMod(id, PERSON_SLOTS), version, now);
+        people.mark(version, now);
+    }
+
+    public void personChanged(int id) {
+        peopleChanged(Collections.singletonList(id));
+    }
+
+    // Метод checkNotModified порівнює ETag/Last-Modified запиту з поточною версією ресурсу, що залежить від
+    // переданих міток (книги, читача, каталогу, списку читачів - див. методи *Version), і повертає true,
+    // якщо клієнт має актуальну копію (відповідь 304 вже сформовано, контролер повертає null).
+    // Заголовки ETag, Last-Modified і Cache-Control: no-cache додаються до відповіді в будь-якому разі.
+    // Якщо після redirect є flash-атрибути (повідомлення для користувача), сторінку треба рендерити.
+    public boolean checkNotModified(ServletWebRequest request, Version... versions) {
+        return checkNotModified(request, 0, versions);
+    }
+
+    // Варіант для сторінок, вміст яких змінюється і з часом (наприклад ознака прострочення книги):
+    // версія додатково залежить від номера інтервалу часу довжиною periodMillis.
+    public boolean checkNotModified(ServletWebRequest request, long periodMillis, Version... versions) {
+        //нова мітка завжди більша за всі попередні, тому максимум змінюється при зміні будь-якої з них
+        long version = 0;
+        long modified = startedAt;
+        for (Version v : versions) {
+            version = Math.max(version, v.version);
+            modified = Math.max(modified, v.modified);
+        }
+        //дані змінились нещодавно - репліки могли їх ще не отримати
+        if (modified > System.currentTimeMillis() - replicaLagMillis)
+            ReadYourWrites.pinToPrimary();
+        StringBuilder etag = new StringBuilder("\"").append(Long.toString(startedAt, 36)).append('-').append(version);
+        if (periodMillis > 0) {
+            long period = System.currentTimeMillis() / periodMillis;
+            etag.append('-').append(period);
+            modified = Math.max(modified, period * periodMillis);
+        }
+        etag.append('"');
+
+        request.getResponse().setHeader("Cache-Control", "no-cache");
+        Map<String, ?> flash = RequestContextUtils.getInputFlashMap(request.getRequest());
+        if (flash != null && !flash.isEmpty())
+            return false;
+        return request.checkNotModified(etag.toString(), modified);
+    }
+
+    // Методи *Version повертають поточну мітку для передачі в checkNotModified.
+    public Version bookVersion(int id) {
+        int slot = Math.floorMod(id, BOOK_SLOTS);
+        return new Version(bookVersions.get(slot), bookModified.get(slot));
+    }
+
+    public Version personVersion(int id) {
+        int slot = Math.floorMod(id, PERSON_SLOTS);
+        return new Version(personVersions.get(slot), personModified.get(slot));
+    }
+
+    public Version catalogueVersion() {
+        return catalogue.get();
+    }
+
+    public Version peopleVersion() {
+        return people.get();
+    }
+
+    private static void mark(AtomicLongArray versions, AtomicLongArray modified, int slot, long version, long now) {
+        versions.accumulateAndGet(slot, version, Math::max);
+        modified.accumulateAndGet(slot, now, Math::max);
+    }
+
+    // Мітка для цілої колекції
+    private static class Stamp {
+        private final AtomicLong version = new AtomicLong();
+        private final AtomicLong modified = new AtomicLong();
+
+        private void mark(long newVersion, long now) {
+            version.accumulateAndGet(newVersion, Math::max);
+            modified.accumulateAndGet(now, Math::max);
+        }
+
+        private Version get() {
+            return new Version(version.get(), modified.get());
+        }
+    }
+
+    // Мітка: значення лічильника та час зміни
+    public static class Version {
+        private final long version;
+        private final long modified;
+
+        private Version(long version, long modified) {
+            this.version = version;
+            this.modified = modified;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас TextNormalizer зводить текст до форми для пошуку без урахування регістру та діакритики:
+розкладає символи (NFD), відкидає діакритичні знаки, переводить у нижній регістр і стискає пробіли.
+ */
+public final class TextNormalizer {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private TextNormalizer() {
+    }
+
+    public static String normalize(String text) {
+        if (text == null)
+            return "";
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String withoutMarks = MARKS.matcher(decomposed).replaceAll("");
+        return SPACES.matcher(withoutMarks.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+}
@@ -0,0 +1,31 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас TransactionHooks виконує дію лише після успішного коміту поточної транзакції,
+щоб стан у пам'яті (індекси, кеші) не розходився з базою після відкату.
+Поза транзакцією дія виконується одразу.
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,120 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ua.ypon.project2SpringLibHib.models.Person;
+import ua.ypon.project2SpringLibHib.services.BookService;
+import ua.ypon.project2SpringLibHib.services.PeopleService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BulkLoanBenchmark порівнює видачу і повернення "кошика" з batch вільних книг (LibraryDataGenerator.isOnLoan)
+по одній книзі (assign/release - транзакція на книгу) і одним викликом (assignAll/releaseAll) над контекстом
+LibraryFixture. Виклик триває від сотень мілісекунд, тому кожна ітерація - один виклик (SingleShotTime),
+а стан книг між викликами відновлюється поза вимірюванням (Level.Invocation): кожен виклик видає вільні книги
+або повертає видані.
+    mvn -Pperf test-compile exec:exec -Djmh.args="BulkLoanBenchmark"
+    mvn -Pperf test-compile exec:exec -Djmh.args="BulkLoanBenchmark -p batch=100"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class BulkLoanBenchmark {
+
+    @Param({"1000"})
+    private int batch;
+
+    private LibraryFixture fixture;
+    private BookService bookService;
+    private Person reader;
+    private List<Integer> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new LibraryFixture();
+        bookService = fixture.getBean(BookService.class);
+        reader = fixture.getBean(PeopleService.class).findOne(1);
+        ids = new ArrayList<>(batch);
+        for (int id = 1; ids.size() < batch; id++) {
+            if (id > fixture.getGenerator().getBooks())
+                throw new IllegalStateException("Замало вільних книг для кошика з " + batch + " (perf.books)");
+            if (!fixture.getGenerator().isOnLoan(id))
+                ids.add(id);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    // Книги кошика вільні перед кожним викликом: видані викликом повертаються після нього
+    @State(Scope.Benchmark)
+    public static class FreeBooks {
+
+        @TearDown(Level.Invocation)
+        public void releaseBatch(BulkLoanBenchmark benchmark) {
+            benchmark.bookService.releaseAll(benchmark.ids);
+        }
+    }
+
+    // Книги кошика видані читачеві перед кожним викликом
+    @State(Scope.Benchmark)
+    public static class LoanedBooks {
+
+        @Setup(Level.Invocation)
+        public void assignBatch(BulkLoanBenchmark benchmark) {
+            benchmark.bookService.assignAll(benchmark.ids, benchmark.reader);
+        }
+    }
+
+    @Benchmark
+    public int assignOneByOne(FreeBooks books) {
+        int assigned = 0;
+        for (int id : ids) {
+            if (bookService.assign(id, reader))
+                assigned++;
+        }
+        return assigned;
+    }
+
+    @Benchmark
+    public int assignAll(FreeBooks books) {
+        return bookService.assignAll(ids, reader);
+    }
+
+    @Benchmark
+    public int releaseOneByOne(LoanedBooks books) {
+        int released = 0;
+        for (int id : ids) {
+            if (bookService.release(id))
+                released++;
+        }
+        return released;
+    }
+
+    @Benchmark
+    public int releaseAll(LoanedBooks books) {
+        return bookService.releaseAll(ids);
+    }
+}
@@ -0,0 +1,73 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.startup.Tomcat;
+import org.springframework.web.SpringServletContainerInitializer;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+import org.springframework.web.servlet.FrameworkServlet;
+import ua.ypon.project2SpringLibHib.config.MySpringMvcDispatcherServletInitializer;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас EmbeddedLibrary запускає застосунок у вбудованому Tomcat так само, як його запускає контейнер з WAR:
+SpringServletContainerInitializer викликає MySpringMvcDispatcherServletInitializer (DispatcherServlet, фільтри),
+а шаблони беруться з каталогу webapp. Порт за замовчуванням - будь-який вільний (load.port),
+load.max_threads - розмір пулу потоків контейнера.
+ */
+public class EmbeddedLibrary implements AutoCloseable {
+
+    private final Tomcat tomcat;
+    private final Context context;
+    private final int port;
+
+    public EmbeddedLibrary(String webappDir) throws LifecycleException {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(new File("target/tomcat").getAbsolutePath());
+        tomcat.setPort(Integer.getInteger("load.port", 0));
+        Connector connector = tomcat.getConnector();
+        // Розмір пулу потоків контейнера (у Tomcat за замовчуванням 200)
+        if (System.getProperty("load.max_threads") != null)
+            connector.setProperty("maxThreads", System.getProperty("load.max_threads"));
+
+        context = tomcat.addContext("", new File(webappDir).getAbsolutePath());
+        // Класи застосунку - з classpath запуску (exec:java має власний завантажувач класів), а не з WEB-INF
+        context.setParentClassLoader(EmbeddedLibrary.class.getClassLoader());
+        // Помилка ініціалізації DispatcherServlet (контексту Spring) зупиняє запуск, а не лишає застосунок без сервлета
+        ((StandardContext) context).setFailCtxIfServletStartFails(true);
+        context.addServletContainerInitializer(new SpringServletContainerInitializer(),
+                Collections.singleton(MySpringMvcDispatcherServletInitializer.class));
+        tomcat.start();
+        if (context.getState() != LifecycleState.STARTED) {
+            close();
+            throw new IllegalStateException("Застосунок не запустився, див. лог вище");
+        }
+        port = connector.getLocalPort();
+    }
+
+    public URI getBaseUri() {
+        return URI.create("http://localhost:" + port);
+    }
+
+    // Метод getApplicationContext повертає контекст Spring, створений DispatcherServlet
+    public WebApplicationContext getApplicationContext() {
+        return WebApplicationContextUtils.getWebApplicationContext(context.getServletContext(),
+                FrameworkServlet.SERVLET_CONTEXT_PREFIX + "dispatcher");
+    }
+
+    @Override
+    public void close() throws LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+}
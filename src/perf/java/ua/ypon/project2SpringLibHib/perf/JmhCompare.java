@@ -0,0 +1,72 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас JmhCompare порівнює два файли результатів JMH (-rf json), наприклад збережені для двох комітів:
+    mvn -Pperf test-compile exec:exec -Djmh.result=perf-results/before.json
+    mvn -Pperf test-compile exec:exec -Djmh.result=perf-results/after.json
+    mvn -Pperf test-compile exec:java@compare -Dexec.args="perf-results/before.json perf-results/after.json 10"
+Для кожного бенчмарку виводиться стара і нова оцінка та зміна у відсотках.
+Зміна гірше за поріг (у відсотках, за замовчуванням 10) позначається REGRESSION, і програма завершується з кодом 1.
+ */
+public class JmhCompare {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: JmhCompare <baseline.json> <candidate.json> [threshold-percent]");
+            System.exit(2);
+        }
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> candidate = read(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        boolean regressed = false;
+        System.out.printf("%-60s %14s %14s %9s%n", "benchmark", "baseline", "candidate", "change");
+        for (Map.Entry<String, JsonNode> entry : candidate.entrySet()) {
+            JsonNode after = entry.getValue().get("primaryMetric");
+            JsonNode before = baseline.containsKey(entry.getKey())
+                    ? baseline.get(entry.getKey()).get("primaryMetric") : null;
+            String unit = after.get("scoreUnit").asText();
+            if (before == null) {
+                System.out.printf("%-60s %14s %14.3f %9s  %s%n", entry.getKey(), "-", after.get("score").asDouble(), "new", unit);
+                continue;
+            }
+
+            double oldScore = before.get("score").asDouble();
+            double newScore = after.get("score").asDouble();
+            double change = (newScore - oldScore) / oldScore * 100;
+            // Для режимів часу (us/op) більше - гірше, для пропускної здатності (ops/us) - навпаки
+            double worse = unit.endsWith("/op") ? change : -change;
+            boolean regression = worse > threshold;
+            regressed |= regression;
+            System.out.printf("%-60s %14.3f %14.3f %+8.1f%%  %s%s%n", entry.getKey(), oldScore, newScore, change, unit,
+                    regression ? "  REGRESSION" : "");
+        }
+        if (regressed)
+            System.exit(1);
+    }
+
+    // Ключ результату - ім'я бенчмарку разом з режимом і параметрами (@Param)
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText())
+                    .append(" [").append(result.get("mode").asText()).append(']');
+            JsonNode params = result.get("params");
+            if (params != null)
+                params.fields().forEachRemaining(p -> key.append(' ').append(p.getKey()).append('=').append(p.getValue().asText()));
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+}
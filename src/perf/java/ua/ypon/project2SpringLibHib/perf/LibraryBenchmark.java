@@ -0,0 +1,141 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+import ua.ypon.project2SpringLibHib.services.BookService;
+import ua.ypon.project2SpringLibHib.services.PeopleService;
+import ua.ypon.project2SpringLibHib.util.FragmentCache;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LibraryBenchmark - мікробенчмарки JMH гарячих шляхів сервісів і репозиторіїв над справжнім
+контекстом SpringConfig (див. LibraryFixture). Запуск і збереження результатів у JSON - профіль perf у pom.xml:
+    mvn -Pperf test-compile exec:exec
+    mvn -Pperf test-compile exec:exec -Djmh.args="findOne -f 1 -wi 2 -i 3"
+Кеш другого рівня увімкнено, як у робочій конфігурації, тому findOne і getBookOwner
+переважно вимірюють шлях через кеш, а не через базу.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LibraryBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    private LibraryFixture fixture;
+    private BookService bookService;
+    private PeopleService peopleService;
+    private FragmentCache fragmentCache;
+    private Person reader;
+    private List<Book> page;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new LibraryFixture();
+        bookService = fixture.getBean(BookService.class);
+        peopleService = fixture.getBean(PeopleService.class);
+        fragmentCache = fixture.getBean(FragmentCache.class);
+        reader = peopleService.findOne(1);
+        page = bookService.findPage(null, PAGE_SIZE, false).getContent();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    // Сторінка за номером (OFFSET) - чим далі сторінка, тим більше рядків пропускає база
+    @Benchmark
+    public List<Book> findAllPage() {
+        int pages = fixture.getGenerator().getBooks() / PAGE_SIZE;
+        return bookService.findAllPage(PageRequest.of(ThreadLocalRandom.current().nextInt(pages), PAGE_SIZE));
+    }
+
+    // Префікс - повна назва випадкової книги (кілька збігів: "том 12", "том 120"...)
+    @Benchmark
+    public List<Book> searchBookByTitleStartsWith() {
+        return bookService.searchBookByTitleStartsWith(fixture.getGenerator().titleOf(randomBookId()));
+    }
+
+    // Видача і повернення вільної книги (див. LibraryDataGenerator.isOnLoan) - дві транзакції запису
+    @Benchmark
+    public boolean assignAndRelease() {
+        int id = freeBookId();
+        return bookService.assign(id, reader) & bookService.release(id);
+    }
+
+    @Benchmark
+    public Optional<Person> getBookOwner() {
+        return bookService.getBookOwner(randomBookId());
+    }
+
+    @Benchmark
+    public Person findOne() {
+        return peopleService.findOne(1 + ThreadLocalRandom.current().nextInt(fixture.getGenerator().getPeople()));
+    }
+
+    // Рендеринг сторінки books/index з PAGE_SIZE книг без кешу фрагментів (шлях промаху в BooksController.index)
+    @Benchmark
+    public String renderBooksIndex() {
+        ServletWebRequest request = new ServletWebRequest(
+                new MockHttpServletRequest(fixture.getContext().getServletContext(), "GET", "/books"),
+                new MockHttpServletResponse());
+
+        List<String> rows = new ArrayList<>(page.size());
+        for (Book book : page)
+            rows.add(fragmentCache.render(request, "books/fragments", "row", Collections.singletonMap("book", book)));
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("rows", rows);
+        variables.put("booksPerPage", PAGE_SIZE);
+        variables.put("sortByYear", false);
+        String pageHtml = fragmentCache.render(request, "books/fragments", "page", variables);
+
+        StringWriter writer = new StringWriter();
+        fragmentCache.renderTo(request, "books/index", Collections.singletonMap("page", pageHtml), writer);
+        return writer.toString();
+    }
+
+    private int randomBookId() {
+        return 1 + ThreadLocalRandom.current().nextInt(fixture.getGenerator().getBooks());
+    }
+
+    private int freeBookId() {
+        int id;
+        do {
+            id = randomBookId();
+        } while (fixture.getGenerator().isOnLoan(id));
+        return id;
+    }
+}
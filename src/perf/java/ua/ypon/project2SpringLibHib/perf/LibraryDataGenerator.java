@@ -0,0 +1,178 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LibraryDataGenerator заповнює таблиці Person і Book синтетичною бібліотекою заданого розміру
+(від тисяч до десятків мільйонів рядків) пакетами JDBC, з комітом після кожного пакета.
+
+Дані детерміновані: усе про книгу чи читача обчислюється з його id, тому бенчмарки і навантажувальний тест
+можуть без запитів до бази знати назву книги (titleOf) і чи вона видана (isOnLoan).
+Розподіли наближені до справжньої бібліотеки:
+- видано loanedShare книг; позичальники нерівномірні - кілька активних читачів тримають багато книг, більшість - жодної;
+- давність видачі розподілена експоненційно (у середньому 7 днів), термін - LOAN_PERIOD_DAYS, тож частина книг прострочена;
+- нових книг більше, ніж старих; популярні автори мають більше книг.
+
+Окремий запуск над існуючою схемою (наприклад PostgreSQL, бажано з reWriteBatchedInserts=true в URL):
+    mvn -Pperf test-compile exec:java@generate -Dperf.books=10000000 -Dperf.people=1000000 \
+        -Dhibernate.connection.url=... -Dhibernate.connection.user_name=... -Dhibernate.connection.pass_word=...
+ */
+public class LibraryDataGenerator {
+
+    // Як library.loan_period_days у hibernate.properties
+    private static final int LOAN_PERIOD_DAYS = 10;
+    private static final int BATCH_SIZE = 1000;
+    private static final long SEED = 20230501L;
+
+    private static final String[] ADJECTIVES = {"Тихий", "Зелений", "Забутий", "Останній", "Далекий", "Срібний",
+            "Вечірній", "Дикий", "Золотий", "Старий", "Нічний", "Весняний", "Кам'яний", "Чорний", "Ясний", "Степовий"};
+    private static final String[] NOUNS = {"сад", "берег", "шлях", "вітер", "ліс", "дім", "острів", "млин",
+            "перевал", "сон", "годинник", "міст", "лист", "вогонь", "човен", "хутір", "птах", "колодязь"};
+    private static final String[] FIRST_NAMES = {"Іван", "Ольга", "Андрій", "Марія", "Тарас", "Оксана", "Петро",
+            "Наталія", "Михайло", "Леся", "Василь", "Ірина", "Богдан", "Катерина", "Дмитро", "Софія"};
+    private static final String[] LAST_NAMES = {"Шевченко", "Коваль", "Бондаренко", "Ткаченко", "Кравченко",
+            "Олійник", "Мельник", "Шевчук", "Поліщук", "Савченко", "Руденко", "Лисенко", "Марченко", "Гончаренко"};
+
+    private final int books;
+    private final int people;
+    private final double loanedShare;
+    private final long now = System.currentTimeMillis();
+
+    public LibraryDataGenerator(int books, int people, double loanedShare) {
+        this.books = books;
+        this.people = people;
+        this.loanedShare = loanedShare;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        if (PerfDatabase.configure("generator"))
+            throw new IllegalStateException("Вкажіть базу: -Dhibernate.connection.url (схема має існувати)");
+        LibraryDataGenerator generator = new LibraryDataGenerator(Integer.getInteger("perf.books", 10_000_000),
+                Integer.getInteger("perf.people", 1_000_000), Double.parseDouble(System.getProperty("perf.loaned_share", "0.25")));
+        try (Connection connection = PerfDatabase.connect()) {
+            generator.seed(connection);
+        }
+    }
+
+    //Метод seed() вставляє читачів і книги та переводить послідовності id за вставлені значення.
+    public void seed(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            insertPeople(connection);
+            insertBooks(connection);
+            try (Statement statement = connection.createStatement()) {
+                // Лічильники книг читачів (Person.activeLoans/overdueLoans) - з уже вставлених книг
+                statement.executeUpdate("UPDATE Person SET " +
+                        "active_loans = (SELECT COUNT(*) FROM Book b WHERE b.id_person = Person.id), " +
+                        "overdue_loans = (SELECT COUNT(*) FROM Book b WHERE b.id_person = Person.id AND b.due_at < CURRENT_TIMESTAMP)");
+                // Запас у розмір блоку послідовності (allocationSize = 50)
+                statement.execute("ALTER SEQUENCE person_seq RESTART WITH " + (people + 100));
+                statement.execute("ALTER SEQUENCE book_seq RESTART WITH " + (books + 100));
+            }
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void insertPeople(Connection connection) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO Person(id, name, yearofbirth, active_loans, overdue_loans) VALUES (?, ?, ?, 0, 0)")) {
+            for (int id = 1; id <= people; id++) {
+                SplittableRandom random = random(-id);
+                insert.setInt(1, id);
+                insert.setString(2, FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                        + LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+                insert.setInt(3, 1940 + random.nextInt(70));
+                insert.addBatch();
+                if (id % BATCH_SIZE == 0 || id == people)
+                    flush(connection, insert, "Person", id, people);
+            }
+        }
+    }
+
+    private void insertBooks(Connection connection) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO Book(id, title, author, year, id_person, created_at, due_at) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= books; id++) {
+                SplittableRandom random = random(id);
+                insert.setInt(1, id);
+                insert.setString(2, titleOf(id));
+                insert.setString(3, authorOf(random));
+                double age = random.nextDouble();
+                insert.setInt(4, 2023 - (int) (220 * age * age));
+
+                if (isOnLoan(id)) {
+                    // Куб рівномірної величини: більшість виданих книг - у невеликої частини читачів
+                    double activity = random.nextDouble();
+                    long loanedAgo = (long) (-Math.log(1 - random.nextDouble()) * TimeUnit.DAYS.toMillis(7));
+                    Timestamp createdAt = new Timestamp(now - loanedAgo);
+                    insert.setInt(5, 1 + (int) (people * activity * activity * activity));
+                    insert.setTimestamp(6, createdAt);
+                    insert.setTimestamp(7, new Timestamp(createdAt.getTime() + TimeUnit.DAYS.toMillis(LOAN_PERIOD_DAYS)));
+                } else {
+                    insert.setNull(5, Types.INTEGER);
+                    insert.setNull(6, Types.TIMESTAMP);
+                    insert.setNull(7, Types.TIMESTAMP);
+                }
+                insert.addBatch();
+                if (id % BATCH_SIZE == 0 || id == books)
+                    flush(connection, insert, "Book", id, books);
+            }
+        }
+    }
+
+    private static void flush(Connection connection, PreparedStatement insert, String table, int done, int total)
+            throws SQLException {
+        insert.executeBatch();
+        connection.commit();
+        if (done % (BATCH_SIZE * 100) == 0 || done == total)
+            System.out.printf("%s: %d / %d%n", table, done, total);
+    }
+
+    // Метод titleOf повертає назву книги id; назва унікальна, тож пошук за нею як за префіксом дає кілька книг.
+    public String titleOf(int id) {
+        SplittableRandom random = random(Integer.MIN_VALUE + id);
+        return ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " + NOUNS[random.nextInt(NOUNS.length)] + ", том " + id;
+    }
+
+    // Метод authorOf повертає автора книги id (той самий, що вставляє seed).
+    public String authorOf(int id) {
+        return authorOf(random(id));
+    }
+
+    // Квадрат рівномірної величини: популярні (перші в списку) автори пишуть більше книг
+    private static String authorOf(SplittableRandom random) {
+        double popularity = random.nextDouble();
+        return FIRST_NAMES[(int) (FIRST_NAMES.length * popularity * popularity)] + " "
+                + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+
+    // Метод isOnLoan повертає true, якщо книгу id згенеровано виданою.
+    public boolean isOnLoan(int id) {
+        return random(Integer.MAX_VALUE - id).nextDouble() < loanedShare;
+    }
+
+    private static SplittableRandom random(long key) {
+        return new SplittableRandom(SEED * 31 + key);
+    }
+
+    public int getBooks() {
+        return books;
+    }
+
+    public int getPeople() {
+        return people;
+    }
+}
@@ -0,0 +1,65 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import org.springframework.core.io.FileSystemResourceLoader;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import ua.ypon.project2SpringLibHib.config.SpringConfig;
+import ua.ypon.project2SpringLibHib.services.BookService;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LibraryFixture піднімає справжній контекст SpringConfig (пул, Hibernate, кеш другого рівня, Thymeleaf)
+над вбудованою базою H2 у режимі PostgreSQL (див. PerfDatabase) і заповнює її через LibraryDataGenerator.
+Розмір даних задається властивостями perf.books і perf.people (за замовчуванням 10000 книг і 1000 читачів).
+ */
+public class LibraryFixture implements AutoCloseable {
+
+    private final AnnotationConfigWebApplicationContext context;
+    private final LibraryDataGenerator generator;
+
+    public LibraryFixture() {
+        generator = new LibraryDataGenerator(Integer.getInteger("perf.books", 10000),
+                Integer.getInteger("perf.people", 1000), 0.25);
+        boolean embedded = PerfDatabase.configure("perf");
+
+        MockServletContext servletContext = new MockServletContext("file:src/main/webapp", new FileSystemResourceLoader());
+        context = new AnnotationConfigWebApplicationContext();
+        context.setServletContext(servletContext);
+        context.register(SpringConfig.class);
+        context.refresh();
+        servletContext.setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, context);
+
+        if (embedded) {
+            try (Connection connection = PerfDatabase.connect()) {
+                generator.seed(connection);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Не вдалося заповнити базу", e);
+            }
+            // Індекси в пам'яті будувались при старті над порожньою базою
+            context.getBean(BookService.class).buildIndexes();
+        }
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public WebApplicationContext getContext() {
+        return context;
+    }
+
+    public LibraryDataGenerator getGenerator() {
+        return generator;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,268 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LoadDriver відтворює зважену суміш запитів до запущеного застосунку з threads клієнтів
+(кожен - віртуальний потік) і збирає гістограми затримок (HdrHistogram, мікросекунди) по кожній операції:
+- books  - GET /books?books_per_page=20, кожен потік гортає каталог за посиланням "Наступна";
+- book   - GET /books/{id}, популярні книги (менші id) запитуються частіше;
+- search - GET /books/search?title=..., назва існуючої книги;
+- person - GET /people/{id}, активні читачі - частіше;
+- loan   - POST /books/{id}/assign і одразу POST /books/{id}/release вільної книги (записуються як assign і release).
+
+Без rate потоки працюють у замкненому циклі: наступний запит - одразу після відповіді.
+З rate (запитів за секунду на всі потоки) запити плануються за розкладом, а затримка рахується від запланованого
+моменту, тому повільна відповідь не ховає очікування запитів за нею (coordinated omission).
+Запити під час прогріву (warmup) не враховуються.
+ */
+public class LoadDriver {
+
+    private static final int PAGE_SIZE = 20;
+    private static final Pattern CURSOR = Pattern.compile("cursor=([^\"&]+)");
+
+    private final URI baseUri;
+    private final LibraryDataGenerator generator;
+    private final Map<String, Integer> mix;
+    private final int totalWeight;
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    public LoadDriver(URI baseUri, LibraryDataGenerator generator, Map<String, Integer> mix) {
+        this.baseUri = baseUri;
+        this.generator = generator;
+        this.mix = mix;
+        this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    // Метод parseMix розбирає суміш виду "books:20,book:35,search:15,person:20,loan:10".
+    public static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            if (!List.of("books", "book", "search", "person", "loan").contains(nameAndWeight[0]))
+                throw new IllegalArgumentException("Невідома операція: " + nameAndWeight[0]);
+            weights.put(nameAndWeight[0], Integer.parseInt(nameAndWeight[1]));
+        }
+        return weights;
+    }
+
+    // Метод run навантажує застосунок warmup + duration секунд і повертає результати вимірювання.
+    public LoadResult run(int threads, int warmupSeconds, int durationSeconds, double rate) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        // Інтервал між запитами одного потоку; 0 - замкнений цикл
+        long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate) : 0;
+
+        // Одна спільна гістограма на операцію, а не по гістограмі на клієнта: тисячі клієнтів не множать пам'ять
+        LoadResult result = new LoadResult(durationSeconds);
+        List<Thread> running = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(result, start + interval * i / threads, interval, measureFrom, end);
+            // Клієнт - віртуальний потік: тисячі клієнтів не займають тисячі потоків ОС поруч із застосунком
+            running.add(Thread.ofVirtual().name("load-" + i).start(worker));
+        }
+        for (Thread thread : running)
+            thread.join();
+        return result;
+    }
+
+    private class Worker implements Runnable {
+        private final long interval;
+        private final long measureFrom;
+        private final long end;
+        private final LoadResult result;
+        private long next;
+        private String cursor;
+
+        private Worker(LoadResult result, long first, long interval, long measureFrom, long end) {
+            this.result = result;
+            this.next = first;
+            this.interval = interval;
+            this.measureFrom = measureFrom;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long intended;
+                if (interval > 0) {
+                    intended = next;
+                    next += interval;
+                    LockSupport.parkNanos(intended - System.nanoTime());
+                } else {
+                    intended = System.nanoTime();
+                }
+                if (intended >= end)
+                    return;
+                execute(pick(), intended);
+            }
+        }
+
+        private String pick() {
+            int value = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+                value -= entry.getValue();
+                if (value < 0)
+                    return entry.getKey();
+            }
+            throw new IllegalStateException();
+        }
+
+        private void execute(String operation, long intended) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            switch (operation) {
+                case "books": {
+                    String uri = "/books?books_per_page=" + PAGE_SIZE + (cursor != null ? "&cursor=" + cursor : "");
+                    HttpResponse<String> response = send("books", intended, get(uri), 200);
+                    cursor = response != null ? nextCursor(response.body()) : null;
+                    break;
+                }
+                case "book":
+                    send("book", intended, get("/books/" + skewed(generator.getBooks(), 2)), 200);
+                    break;
+                case "search":
+                    send("search", intended, get("/books/search?title="
+                            + URLEncoder.encode(generator.titleOf(1 + random.nextInt(generator.getBooks())), StandardCharsets.UTF_8)), 200);
+                    break;
+                case "person":
+                    send("person", intended, get("/people/" + skewed(generator.getPeople(), 3)), 200);
+                    break;
+                case "loan": {
+                    int id;
+                    do {
+                        id = 1 + random.nextInt(generator.getBooks());
+                    } while (generator.isOnLoan(id));
+                    send("assign", intended, post("/books/" + id + "/assign", "id=" + (1 + random.nextInt(generator.getPeople()))), 302);
+                    send("release", System.nanoTime(), post("/books/" + id + "/release", ""), 302);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException(operation);
+            }
+        }
+
+        // Останнє посилання з курсором на сторінці - "Наступна"; на останній сторінці - знову з початку
+        private String nextCursor(String html) {
+            if (!html.contains("Наступна"))
+                return null;
+            Matcher matcher = CURSOR.matcher(html);
+            String last = null;
+            while (matcher.find())
+                last = matcher.group(1);
+            return last;
+        }
+
+        private HttpResponse<String> send(String operation, long intended, HttpRequest request, int expectedStatus) {
+            HttpResponse<String> response = null;
+            try {
+                response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                // помилка з'єднання рахується як помилка запиту
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long finished = System.nanoTime();
+            if (intended >= measureFrom) {
+                boolean ok = response != null && response.statusCode() == expectedStatus;
+                result.record(operation, TimeUnit.NANOSECONDS.toMicros(finished - intended), ok);
+            }
+            return response;
+        }
+    }
+
+    // Id з розподілу, зміщеного до малих значень (степінь power рівномірної величини)
+    private static int skewed(int max, int power) {
+        return 1 + (int) (max * Math.pow(ThreadLocalRandom.current().nextDouble(), power));
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private HttpRequest post(String path, String form) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form)).build();
+    }
+
+    // Результати вимірювання: гістограма затримок і кількість помилок по кожній операції.
+    // Записують усі клієнти одночасно, тому гістограми - ConcurrentHistogram, а лічильники помилок - LongAdder.
+    public static class LoadResult {
+        private static final List<String> OPERATIONS = List.of("books", "book", "search", "person", "assign", "release");
+
+        private final int durationSeconds;
+        private final Map<String, Histogram> latencies = new LinkedHashMap<>();
+        private final Map<String, LongAdder> errors = new LinkedHashMap<>();
+
+        private LoadResult(int durationSeconds) {
+            this.durationSeconds = durationSeconds;
+            for (String operation : OPERATIONS) {
+                latencies.put(operation, new ConcurrentHistogram(3));
+                errors.put(operation, new LongAdder());
+            }
+        }
+
+        private void record(String operation, long micros, boolean ok) {
+            latencies.get(operation).recordValue(Math.max(micros, 0));
+            if (!ok)
+                errors.get(operation).increment();
+        }
+
+        // Метод total повертає гістограму всіх операцій разом.
+        public Histogram total() {
+            Histogram total = new Histogram(3);
+            latencies.values().forEach(total::add);
+            return total;
+        }
+
+        public long totalErrors() {
+            return errors.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+
+        public int getDurationSeconds() {
+            return durationSeconds;
+        }
+
+        // Метод getLatencies повертає гістограми операцій, що були в суміші (у порядку OPERATIONS).
+        public Map<String, Histogram> getLatencies() {
+            Map<String, Histogram> recorded = new LinkedHashMap<>();
+            latencies.forEach((operation, histogram) -> {
+                if (histogram.getTotalCount() > 0)
+                    recorded.put(operation, histogram);
+            });
+            return recorded;
+        }
+
+        public long getErrors(String operation) {
+            return errors.get(operation).sum();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LoadReport записує результати LoadDriver у report.json (для порівняння між комітами і конфігураціями)
+та report.html (таблиці пропускної здатності і перцентилів затримки для кожного варіанта запуску).
+Затримки - у мілісекундах.
+ */
+public class LoadReport {
+
+    private final Map<String, Object> config;
+    private final Map<String, Map<String, Object>> variants = new LinkedHashMap<>();
+    private final Map<String, Map<String, Object>> jvm = new LinkedHashMap<>();
+
+    public LoadReport(Map<String, Object> config) {
+        this.config = config;
+    }
+
+    // Метод summarize зводить результати LoadDriver до таблиці операція -> пропускна здатність і перцентилі
+    // (у такому вигляді окрема JVM варіанта передає їх у JSON, див. LoadTest).
+    public static Map<String, Object> summarize(LoadDriver.LoadResult result) {
+        Map<String, Object> operations = new LinkedHashMap<>();
+        result.getLatencies().forEach((operation, histogram) ->
+                operations.put(operation, summary(histogram, result.getErrors(operation), result.getDurationSeconds())));
+        operations.put("total", summary(result.total(), result.totalErrors(), result.getDurationSeconds()));
+        return operations;
+    }
+
+    // Метод add додає зведення варіанта запуску (наприклад "platform" чи "virtual" - потоки обробки запитів).
+    public void add(String variant, Map<String, Object> operations) {
+        variants.put(variant, operations);
+    }
+
+    // Метод addJvm додає показники JVM варіанта під навантаженням (пам'ять, потоки, див. LoadTest).
+    public void addJvm(String variant, Map<String, Object> stats) {
+        jvm.put(variant, stats);
+    }
+
+    // Метод addFailure записує варіант, який не вдалося запустити або виміряти.
+    public void addFailure(String variant, String reason) {
+        variants.put(variant, Collections.singletonMap("error", reason));
+    }
+
+    private static Map<String, Object> summary(Histogram histogram, long errors, int durationSeconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", histogram.getTotalCount());
+        summary.put("errors", errors);
+        summary.put("throughput", round((double) histogram.getTotalCount() / durationSeconds));
+        summary.put("mean", round(histogram.getMean() / 1000));
+        summary.put("p50", millis(histogram, 50));
+        summary.put("p90", millis(histogram, 90));
+        summary.put("p99", millis(histogram, 99));
+        summary.put("p999", millis(histogram, 99.9));
+        summary.put("max", round(histogram.getMaxValue() / 1000.0));
+        return summary;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return round(histogram.getValueAtPercentile(percentile) / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    // Метод write записує report.json і report.html у каталог directory.
+    public void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("config", config);
+        report.put("variants", variants);
+        report.put("jvm", jvm);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(directory.resolve("report.json").toFile(), report);
+
+        try (PrintWriter html = new PrintWriter(Files.newBufferedWriter(directory.resolve("report.html"), StandardCharsets.UTF_8))) {
+            html.println("<!DOCTYPE html><html><head><meta charset=\"UTF-8\"><title>Навантажувальний тест</title>");
+            html.println("<style>body{font-family:sans-serif}table{border-collapse:collapse;margin-bottom:2em}"
+                    + "td,th{border:1px solid #ccc;padding:4px 8px;text-align:right}td:first-child{text-align:left}"
+                    + ".bar{background:#7aa7d9;height:10px}</style></head><body>");
+            html.println("<h1>Навантажувальний тест</h1><table>");
+            config.forEach((key, value) -> html.printf("<tr><td>%s</td><td>%s</td></tr>%n", escape(key), escape(value)));
+            html.println("</table>");
+
+            for (Map.Entry<String, Map<String, Object>> variant : variants.entrySet()) {
+                html.printf("<h2>%s</h2>%n", escape(variant.getKey()));
+                if (variant.getValue().containsKey("error")) {
+                    html.printf("<p>Не запустився: %s</p>%n", escape(variant.getValue().get("error")));
+                    continue;
+                }
+                if (jvm.containsKey(variant.getKey())) {
+                    StringBuilder stats = new StringBuilder();
+                    jvm.get(variant.getKey()).forEach((key, value) -> stats.append(key).append(": ").append(value).append("; "));
+                    html.printf("<p>JVM: %s</p>%n", escape(stats));
+                }
+                html.println("<table><tr><th>операція</th><th>запитів</th><th>помилок</th><th>запитів/с</th>"
+                        + "<th>mean, мс</th><th>p50</th><th>p90</th><th>p99</th><th>p99.9</th><th>max</th><th>p99</th></tr>");
+                double worstP99 = variant.getValue().values().stream()
+                        .mapToDouble(s -> (Double) ((Map<?, ?>) s).get("p99")).max().orElse(1);
+                for (Map.Entry<String, Object> operation : variant.getValue().entrySet()) {
+                    Map<?, ?> s = (Map<?, ?>) operation.getValue();
+                    html.print("<tr><td>" + escape(operation.getKey()) + "</td>");
+                    for (String column : new String[]{"requests", "errors", "throughput", "mean", "p50", "p90", "p99", "p999", "max"})
+                        html.print("<td>" + s.get(column) + "</td>");
+                    double width = worstP99 > 0 ? 200 * (Double) s.get("p99") / worstP99 : 0;
+                    html.printf("<td style=\"text-align:left\"><div class=\"bar\" style=\"width:%.0fpx\"></div></td></tr>%n", width);
+                }
+                html.println("</table>");
+            }
+            html.println("</body></html>");
+        }
+    }
+
+    private static String escape(Object value) {
+        return HtmlUtils.htmlEscape(String.valueOf(value));
+    }
+}
@@ -0,0 +1,268 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ua.ypon.project2SpringLibHib.services.BookService;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.StringJoiner;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LoadTest - наскрізний навантажувальний тест: заповнює базу (LibraryDataGenerator), запускає застосунок
+у вбудованому Tomcat (EmbeddedLibrary), навантажує його сумішшю запитів (LoadDriver) і пише звіт (LoadReport).
+
+    mvn -Pperf test-compile exec:java@load -Dload.duration=60 -Dload.threads=32
+
+Кожен варіант запускається в окремій JVM (як вимірювання запуску в StartupReport): застосунок
+не перезапускається в тій самій JVM, тому варіанти не ділять ні класів, згенерованих CGLIB, ні кешів, ні прогріву JIT.
+Окрема JVM заповнює свою вбудовану H2 сама; зовнішню базу заповнює лише перший варіант.
+
+Властивості (системні, -D; властивості perf., load., hibernate., library., pool., replica., ledger., jpa.
+передаються у JVM варіантів):
+    perf.books, perf.people, perf.loaned_share - розмір і заповненість бібліотеки (100000, 10000, 0.25);
+    load.seed       - заповнювати базу (за замовчуванням - лише вбудовану H2, див. PerfDatabase);
+    load.threads    - кількість клієнтів (32);
+    load.max_threads - розмір пулу потоків Tomcat (200, див. EmbeddedLibrary);
+    load.warmup, load.duration - секунди прогріву і вимірювання (15, 60);
+    load.rate       - запитів за секунду на всіх клієнтів; 0 - замкнений цикл без пауз;
+    load.mix        - ваги операцій ("books:20,book:35,search:15,person:20,loan:10");
+    load.variants   - варіанти через кому: platform, virtual (library.virtual_threads=false/true) або
+                      назва=аргументи JVM, наприклад "platform,virtual,unpooled=-Dpool.enabled=false";
+                      для кожного варіанта в звіті окрема таблиця і показники JVM під навантаженням
+                      (найбільші heap, RSS і кількість потоків ОС);
+    load.jvm_args   - аргументи JVM для всіх варіантів, наприклад "-Xmx2g";
+    load.report     - каталог звіту (target/load-report).
+ */
+public class LoadTest {
+
+    private static final List<String> FORWARDED_PREFIXES =
+            Arrays.asList("perf.", "load.", "hibernate.", "library.", "pool.", "replica.", "ledger.", "jpa.");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1 && "--child".equals(args[0])) {
+            child(args[1]);
+            return;
+        }
+        // Властивості для JVM варіантів - до того, як PerfDatabase.configure допише свої
+        List<String> forwarded = forwardedProperties();
+        LibraryDataGenerator generator = generator();
+        boolean embedded = PerfDatabase.configure("load");
+        boolean seed = Boolean.parseBoolean(System.getProperty("load.seed", String.valueOf(embedded)));
+        int threads = Integer.getInteger("load.threads", 32);
+        int warmup = Integer.getInteger("load.warmup", 15);
+        int duration = Integer.getInteger("load.duration", 60);
+        double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+        String mix = System.getProperty("load.mix", "books:20,book:35,search:15,person:20,loan:10");
+        String[] variants = System.getProperty("load.variants",
+                Boolean.getBoolean("library.virtual_threads") ? "virtual" : "platform").split(",");
+        String commonJvmArgs = System.getProperty("load.jvm_args", "").trim();
+        Path reportDir = Paths.get(System.getProperty("load.report", "target/load-report"));
+        Files.createDirectories(reportDir);
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("books", generator.getBooks());
+        config.put("people", generator.getPeople());
+        config.put("database", System.getProperty("hibernate.connection.url"));
+        config.put("threads", threads);
+        config.put("warmupSeconds", warmup);
+        config.put("durationSeconds", duration);
+        config.put("rate", rate > 0 ? rate : "closed loop");
+        config.put("mix", mix);
+        config.put("jvmArgs", commonJvmArgs);
+        config.put("java", System.getProperty("java.version"));
+        config.put("processors", Runtime.getRuntime().availableProcessors());
+        LoadReport report = new LoadReport(config);
+        ObjectMapper mapper = new ObjectMapper();
+
+        for (String variant : variants) {
+            if (variant.isBlank())
+                continue;
+            String name = variant.contains("=") ? variant.substring(0, variant.indexOf('=')).trim() : variant.trim();
+            String jvmArgs = variant.contains("=") ? variant.substring(variant.indexOf('=') + 1).trim() : threadModelArgs(name);
+            Path result = reportDir.resolve(name + ".json");
+            Files.deleteIfExists(result);
+
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            if (!commonJvmArgs.isEmpty())
+                command.addAll(Arrays.asList(commonJvmArgs.split("\\s+")));
+            command.addAll(forwarded);
+            if (!jvmArgs.isEmpty())
+                command.addAll(Arrays.asList(jvmArgs.split("\\s+")));
+            command.add("-Dload.seed=" + seed);
+            command.add("-Dload.result=" + result.toAbsolutePath());
+            command.add("-classpath");
+            command.add(classpath());
+            command.add(LoadTest.class.getName());
+            command.add("--child");
+            command.add(name);
+
+            System.out.printf("Варіант %s: окрема JVM %s%n", name, jvmArgs);
+            int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (exitCode != 0 || !Files.exists(result)) {
+                System.out.printf("Варіант %s не виміряно (код завершення %d), пропущено%n", name, exitCode);
+                report.addFailure(name, "JVM варіанта завершилась з кодом " + exitCode + ", див. її вивід");
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Map<String, Object>> measured = mapper.readValue(result.toFile(), Map.class);
+            report.add(name, measured.get("operations"));
+            report.addJvm(name, measured.get("jvm"));
+            // Вбудовану H2 кожна JVM заповнює сама, зовнішню базу - лише перший варіант
+            if (!embedded)
+                seed = false;
+        }
+        report.write(reportDir);
+        System.out.println("Звіт: " + reportDir.resolve("report.html").toAbsolutePath());
+    }
+
+    // Метод child - вимірювання одного варіанта в цій JVM; зведення пишеться у файл load.result.
+    private static void child(String variant) throws Exception {
+        LibraryDataGenerator generator = generator();
+        PerfDatabase.configure("load");
+        boolean seed = Boolean.getBoolean("load.seed");
+        int threads = Integer.getInteger("load.threads", 32);
+        int warmup = Integer.getInteger("load.warmup", 15);
+        int duration = Integer.getInteger("load.duration", 60);
+        double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+        String mix = System.getProperty("load.mix", "books:20,book:35,search:15,person:20,loan:10");
+
+        Map<String, Object> measured = new LinkedHashMap<>();
+        try (EmbeddedLibrary library = new EmbeddedLibrary("src/main/webapp")) {
+            if (seed) {
+                long start = System.nanoTime();
+                try (Connection connection = PerfDatabase.connect()) {
+                    generator.seed(connection);
+                }
+                System.out.printf("Базу заповнено за %.1f с%n", (System.nanoTime() - start) / 1e9);
+                // Індекси в пам'яті будувались при старті над порожньою базою
+                library.getApplicationContext().getBean(BookService.class).buildIndexes();
+            }
+            System.out.printf("Варіант %s: %d клієнтів, %d с прогріву, %d с вимірювання%n", variant, threads, warmup, duration);
+            LoadDriver driver = new LoadDriver(library.getBaseUri(), generator, LoadDriver.parseMix(mix));
+            JvmSampler sampler = new JvmSampler();
+            sampler.start();
+            LoadDriver.LoadResult result = driver.run(threads, warmup, duration, rate);
+            sampler.interrupt();
+            measured.put("operations", LoadReport.summarize(result));
+            measured.put("jvm", sampler.summary());
+        }
+        new ObjectMapper().writeValue(Paths.get(System.getProperty("load.result")).toFile(), measured);
+        //Фонові потоки (планувальник, журнал видач) не тримають JVM
+        System.exit(0);
+    }
+
+    // Раз на секунду записує найбільші значення пам'яті і кількості потоків JVM під навантаженням.
+    // Клієнти LoadDriver працюють у тій самій JVM, але як віртуальні потоки: потоки ОС - це потоки застосунку.
+    private static class JvmSampler extends Thread {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private long maxHeapUsed;
+        private long maxRss;
+        private int maxThreads;
+
+        private JvmSampler() {
+            super("load-jvm-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                synchronized (this) {
+                    maxHeapUsed = Math.max(maxHeapUsed, memory.getHeapMemoryUsage().getUsed());
+                    maxRss = Math.max(maxRss, rss());
+                    maxThreads = Math.max(maxThreads, threads.getThreadCount());
+                }
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private synchronized Map<String, Object> summary() {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("maxHeapUsedMb", maxHeapUsed / (1024 * 1024));
+            summary.put("maxRssMb", maxRss / (1024 * 1024));
+            summary.put("maxPlatformThreads", maxThreads);
+            summary.put("heapAfterGcMb", heapAfterGc() / (1024 * 1024));
+            return summary;
+        }
+
+        private long heapAfterGc() {
+            System.gc();
+            return memory.getHeapMemoryUsage().getUsed();
+        }
+
+        // Резидентна пам'ять процесу (Linux, /proc/self/status), разом зі стеками потоків ОС; 0 - недоступно
+        private static long rss() {
+            try {
+                for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                    if (line.startsWith("VmRSS:"))
+                        return Long.parseLong(line.replaceAll("\\D+", "")) * 1024;
+                }
+            } catch (IOException | NumberFormatException e) {
+                // не Linux
+            }
+            return 0;
+        }
+    }
+
+    private static LibraryDataGenerator generator() {
+        return new LibraryDataGenerator(Integer.getInteger("perf.books", 100_000),
+                Integer.getInteger("perf.people", 10_000), Double.parseDouble(System.getProperty("perf.loaned_share", "0.25")));
+    }
+
+    // Варіанти platform і virtual - модель потоків обробки запитів (див. WebMvcConfig)
+    private static String threadModelArgs(String name) {
+        switch (name) {
+            case "platform":
+                return "-Dlibrary.virtual_threads=false";
+            case "virtual":
+                return "-Dlibrary.virtual_threads=true";
+            default:
+                throw new IllegalArgumentException("Невідомий варіант " + name + ": вкажіть назва=аргументи JVM");
+        }
+    }
+
+    private static List<String> forwardedProperties() {
+        List<String> forwarded = new ArrayList<>();
+        Properties properties = System.getProperties();
+        for (String key : properties.stringPropertyNames()) {
+            if (FORWARDED_PREFIXES.stream().anyMatch(key::startsWith) && !key.equals("load.seed") && !key.equals("load.result"))
+                forwarded.add("-D" + key + "=" + properties.getProperty(key));
+        }
+        return forwarded;
+    }
+
+    // exec:java завантажує класи проєкту власним завантажувачем, а не з java.class.path
+    private static String classpath() throws URISyntaxException {
+        ClassLoader loader = LoadTest.class.getClassLoader();
+        if (!(loader instanceof URLClassLoader))
+            return System.getProperty("java.class.path");
+        StringJoiner classpath = new StringJoiner(System.getProperty("path.separator"));
+        for (URL url : ((URLClassLoader) loader).getURLs())
+            classpath.add(Paths.get(url.toURI()).toString());
+        return classpath.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.tool.schema.TargetType;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.LoanEvent;
+import ua.ypon.project2SpringLibHib.models.Person;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.EnumSet;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас PerfDatabase обирає базу для бенчмарків і навантажувальних тестів.
+Якщо hibernate.connection.url не задано системною властивістю, використовується вбудована H2 у режимі PostgreSQL
+(у пам'яті), а схему створює Hibernate з анотацій сутностей (hbm2ddl). Інакше - задана база
+(наприклад PostgreSQL з уже створеною схемою), Hibernate схему не змінює.
+Системні властивості мають пріоритет над hibernate.properties (див. SpringConfig).
+ */
+public final class PerfDatabase {
+
+    private PerfDatabase() {
+    }
+
+    // Метод configure повертає true, якщо обрано вбудовану базу name.
+    public static boolean configure(String name) {
+        if (System.getProperty("hibernate.connection.url") != null)
+            return false;
+        System.setProperty("hibernate.driver_class", "org.h2.Driver");
+        System.setProperty("hibernate.connection.url", "jdbc:h2:mem:" + name + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        System.setProperty("hibernate.connection.user_name", "sa");
+        System.setProperty("hibernate.connection.pass_word", "");
+        System.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        System.setProperty("hibernate.hbm2ddl.auto", "create");
+        return true;
+    }
+
+    // Метод createSchema створює в обраній базі таблиці сутностей застосунку так само, як hbm2ddl при старті,
+    // але без контексту - щоб заповнити базу до вимірюваного запуску (StartupReport).
+    public static void createSchema() {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting("hibernate.connection.url", System.getProperty("hibernate.connection.url"))
+                .applySetting("hibernate.connection.username", System.getProperty("hibernate.connection.user_name"))
+                .applySetting("hibernate.connection.password", System.getProperty("hibernate.connection.pass_word"))
+                .applySetting("hibernate.dialect", System.getProperty("hibernate.dialect"))
+                .build();
+        try {
+            new SchemaExport().create(EnumSet.of(TargetType.DATABASE), new MetadataSources(registry)
+                    .addAnnotatedClass(Person.class)
+                    .addAnnotatedClass(Book.class)
+                    .addAnnotatedClass(LoanEvent.class)
+                    .buildMetadata());
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    // Метод connect відкриває окреме з'єднання з обраною базою (поза пулом застосунку).
+    public static Connection connect() throws SQLException {
+        return DriverManager.getConnection(System.getProperty("hibernate.connection.url"),
+                System.getProperty("hibernate.connection.user_name"), System.getProperty("hibernate.connection.pass_word"));
+    }
+}
@@ -0,0 +1,91 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ua.ypon.project2SpringLibHib.search.BookSearchIndex;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас SearchBenchmark - мікробенчмарки JMH повнотекстового індексу BookSearchIndex без Spring і бази:
+індекс будується завантажувачем (як при старті застосунку) з книг LibraryDataGenerator.
+Кожен бенчмарк - окремий вид запиту: часте слово, рідкісне слово, префікс, слово з помилкою,
+два слова, автор, фільтр за доступністю. Сторінка - 20 найкращих збігів.
+    mvn -Pperf test-compile exec:exec -Djmh.args="SearchBenchmark"
+    mvn -Pperf test-compile exec:exec -Djmh.args="SearchBenchmark -p books=100000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearchBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"1000000"})
+    private int books;
+
+    private LibraryDataGenerator generator;
+    private BookSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        generator = new LibraryDataGenerator(books, Math.max(books / 10, 1), 0.25);
+        index = new BookSearchIndex();
+        BookSearchIndex.Loader loader = index.loader();
+        for (int id = 1; id <= books; id++)
+            loader.add(id, generator.titleOf(id), generator.authorOf(id), !generator.isOnLoan(id));
+        loader.finish();
+    }
+
+    // Слово з кожної ~18-ї назви: ранжування десятків тисяч збігів
+    @Benchmark
+    public BookSearchIndex.SearchHits frequentWord() {
+        return index.search("годинник", null, 0, PAGE_SIZE);
+    }
+
+    // Номер тому - слово однієї книги (повний збіг) і префікс кількох
+    @Benchmark
+    public BookSearchIndex.SearchHits rareWord() {
+        return index.search("том " + (1 + ThreadLocalRandom.current().nextInt(books)), null, 0, PAGE_SIZE);
+    }
+
+    // Користувач ще дописує останнє слово
+    @Benchmark
+    public BookSearchIndex.SearchHits prefix() {
+        return index.search("срібний бер", null, 0, PAGE_SIZE);
+    }
+
+    // Помилка в кожному слові: розгортання через триграми і відстань Дамерау-Левенштейна
+    @Benchmark
+    public BookSearchIndex.SearchHits typo() {
+        return index.search("вечірнй годининк", null, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public BookSearchIndex.SearchHits author() {
+        return index.search("олійник", null, 0, PAGE_SIZE);
+    }
+
+    // Лише вільні книги, третя сторінка
+    @Benchmark
+    public BookSearchIndex.SearchHits availableDeepPage() {
+        return index.search("тихий сад", true, 2, PAGE_SIZE);
+    }
+}
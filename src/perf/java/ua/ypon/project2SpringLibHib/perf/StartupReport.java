@@ -0,0 +1,237 @@
+package ua.ypon.project2SpringLibHib.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.metrics.ApplicationStartup;
+import ua.ypon.project2SpringLibHib.metrics.StartupTimeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас StartupReport вимірює холодний запуск застосунку: кожен запуск - окрема JVM, яка піднімає
+вбудований Tomcat (EmbeddedLibrary) над H2, робить перший запит, чекає на готовність пошуку (/health/ready)
+і завершується. З startup.books > 0 база - файл H2, який один раз заповнює LibraryDataGenerator,
+інакше - порожня H2 у пам'яті.
+Для кожного варіанта (свої аргументи JVM) виводиться медіана по запусках, а report.json
+містить також розбивку кроків запуску (StartupTimeline) останнього запуску кожного варіанта.
+
+    mvn -Pperf package exec:exec@startup [-Dstartup.runs=5 -Dstartup.books=500000 -Dstartup.variants="..."]
+
+package пакує класи в jar і записує архів CDS (див. pom.xml), тому всі варіанти запускаються з тим самим
+classpath з jar-файлів (cds.classpath) - з ним архів і записаний.
+
+Властивості (системні, -D, у pom.xml - однойменні властивості профілю perf):
+    startup.runs     - запусків на варіант (5);
+    startup.books    - книг у базі (0 - порожня база; читачів - у 10 разів менше, видано чверть книг);
+    startup.variants - варіанти через ';' у вигляді назва=аргументи JVM, наприклад
+                       "default=;async-jpa=-Djpa.bootstrap_async=true;no-index=-Dspring.index.ignore=true;
+                        sync-search=-Dlibrary.index_build_async=false;cds=-XX:SharedArchiveFile=target/library.jsa";
+    startup.report   - каталог звіту (target/startup-report).
+
+З аргументом --child клас сам є вимірюваним запуском: друкує рядок RESULT з JSON і завершується.
+Так само його запускає тренувальний прогін для архіву CDS (exec:exec@cds, див. pom.xml).
+ */
+public class StartupReport {
+
+    private static final String RESULT = "RESULT ";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "--child".equals(args[0])) {
+            child();
+            return;
+        }
+        int runs = Integer.getInteger("startup.runs", 5);
+        int books = Integer.getInteger("startup.books", 0);
+        Path reportDir = Paths.get(System.getProperty("startup.report", "target/startup-report"));
+        Files.createDirectories(reportDir);
+        ObjectMapper mapper = new ObjectMapper();
+        List<String> databaseArgs = books > 0 ? seededDatabase(reportDir, books) : Collections.emptyList();
+
+        Map<String, Object> variants = new LinkedHashMap<>();
+        for (String variant : System.getProperty("startup.variants", "default=").split(";")) {
+            if (variant.isBlank())
+                continue;
+            String name = variant.contains("=") ? variant.substring(0, variant.indexOf('=')).trim() : variant.trim();
+            String jvmArgs = variant.contains("=") ? variant.substring(variant.indexOf('=') + 1).trim() : "";
+
+            List<JsonNode> results = new ArrayList<>();
+            for (int run = 1; run <= runs; run++) {
+                JsonNode result = launch(mapper, databaseArgs, jvmArgs, reportDir.resolve(name + "-" + run + ".log"));
+                if (result == null) {
+                    System.out.printf("%s, запуск %d: не вдався, див. %s%n", name, run, reportDir.resolve(name + "-" + run + ".log"));
+                    continue;
+                }
+                System.out.printf("%s, запуск %d: готовий за %d мс%n", name, run, result.get("readyMillis").asLong());
+                results.add(result);
+            }
+            variants.put(name, summary(jvmArgs, results));
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("java", System.getProperty("java.version"));
+        report.put("processors", Runtime.getRuntime().availableProcessors());
+        report.put("runs", runs);
+        report.put("books", books);
+        report.put("variants", variants);
+        mapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportDir.resolve("report.json").toFile(), report);
+
+        System.out.printf("%n%-12s %10s %10s %10s %10s %10s %10s %8s%n", "варіант", "jvm→ready", "refresh", "tomcat", "1-й запит",
+                "пошук", "класів", "CDS");
+        for (Map.Entry<String, Object> entry : variants.entrySet()) {
+            Map<?, ?> s = (Map<?, ?>) entry.getValue();
+            if (s.containsKey("error")) {
+                System.out.printf("%-12s %s%n", entry.getKey(), s.get("error"));
+                continue;
+            }
+            System.out.printf("%-12s %10s %10s %10s %10s %10s %10s %8s%n", entry.getKey(), s.get("readyMillis"), s.get("refreshMillis"),
+                    s.get("startedMillis"), s.get("firstRequestMillis"), s.get("searchReadyMillis"), s.get("classesLoaded"), s.get("sharing"));
+        }
+        System.out.println("Медіани в мс від старту JVM (refresh - тривалість). Звіт: " + reportDir.resolve("report.json").toAbsolutePath());
+    }
+
+    // Метод seededDatabase створює в каталозі звіту файл H2 зі схемою і books книгами
+    // і повертає аргументи JVM, з якими вимірювані запуски відкривають цю базу (Hibernate схему не змінює).
+    private static List<String> seededDatabase(Path reportDir, int books) throws Exception {
+        Path file = reportDir.resolve("library").toAbsolutePath();
+        Files.deleteIfExists(Paths.get(file + ".mv.db"));
+        String url = "jdbc:h2:file:" + file + ";MODE=PostgreSQL";
+        List<String> args = Arrays.asList("-Dhibernate.driver_class=org.h2.Driver", "-Dhibernate.connection.url=" + url,
+                "-Dhibernate.connection.user_name=sa", "-Dhibernate.connection.pass_word=",
+                "-Dhibernate.dialect=org.hibernate.dialect.H2Dialect");
+        for (String arg : args)
+            System.setProperty(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+
+        long start = System.nanoTime();
+        PerfDatabase.createSchema();
+        try (Connection connection = PerfDatabase.connect()) {
+            new LibraryDataGenerator(books, Math.max(1, books / 10), 0.25).seed(connection);
+        }
+        System.out.printf("База з %d книгами заповнена за %.1f с: %s%n", books, (System.nanoTime() - start) / 1e9, url);
+        return args;
+    }
+
+    // Метод launch запускає окрему JVM з тим самим classpath і повертає її результат (null, якщо запуск не вдався).
+    private static JsonNode launch(ObjectMapper mapper, List<String> databaseArgs, String jvmArgs, Path log)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(databaseArgs);
+        if (!jvmArgs.isEmpty())
+            command.addAll(Arrays.asList(jvmArgs.split("\\s+")));
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StartupReport.class.getName());
+        command.add("--child");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        if (process.waitFor() != 0)
+            return null;
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            if (line.startsWith(RESULT))
+                return mapper.readTree(line.substring(RESULT.length()));
+        }
+        return null;
+    }
+
+    private static Map<String, Object> summary(String jvmArgs, List<JsonNode> results) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("jvmArgs", jvmArgs);
+        if (results.isEmpty()) {
+            summary.put("error", "жоден запуск не вдався");
+            return summary;
+        }
+        summary.put("runs", results.size());
+        for (String metric : new String[]{"readyMillis", "refreshMillis", "startedMillis", "firstRequestMillis",
+                "searchReadyMillis", "classesLoaded"})
+            summary.put(metric, median(results, metric));
+        summary.put("sharing", results.get(0).get("sharing").asBoolean());
+        JsonNode last = results.get(results.size() - 1);
+        summary.put("stepSelfMillis", last.get("stepSelfMillis"));
+        summary.put("slowestBeans", last.get("slowestBeans"));
+        summary.put("librarySteps", last.get("librarySteps"));
+        return summary;
+    }
+
+    private static long median(List<JsonNode> results, String metric) {
+        List<Long> values = new ArrayList<>();
+        for (JsonNode result : results)
+            values.add(result.get(metric).asLong());
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+
+    private static int status(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Метод child - один вимірюваний запуск у цій JVM.
+    private static void child() throws Exception {
+        PerfDatabase.configure("startup");
+        Map<String, Object> result = new LinkedHashMap<>();
+        try (EmbeddedLibrary library = new EmbeddedLibrary("src/main/webapp")) {
+            result.put("startedMillis", ManagementFactory.getRuntimeMXBean().getUptime());
+            //перша сторінка каталогу, а не весь список: з заповненою базою він вимірював би рендеринг каталогу
+            HttpURLConnection connection = (HttpURLConnection) library.getBaseUri().resolve("/books?books_per_page=20").toURL().openConnection();
+            try (InputStream body = connection.getInputStream()) {
+                body.readAllBytes();
+            }
+            result.put("firstRequestMillis", ManagementFactory.getRuntimeMXBean().getUptime());
+            result.put("firstRequestStatus", connection.getResponseCode());
+            //індекси пошуку будуються у фоновому потоці - чекаємо, поки екземпляр стане готовим
+            while (status(library.getBaseUri().resolve("/health/ready").toURL()) != 200)
+                Thread.sleep(20);
+            result.put("searchReadyMillis", ManagementFactory.getRuntimeMXBean().getUptime());
+
+            ApplicationStartup startup = ((ConfigurableApplicationContext) library.getApplicationContext()).getApplicationStartup();
+            if (startup instanceof StartupTimeline) {
+                StartupTimeline timeline = (StartupTimeline) startup;
+                result.put("readyMillis", timeline.getReadyUptimeMillis());
+                result.put("refreshMillis", timeline.getRefreshMillis());
+                result.put("stepSelfMillis", timeline.selfMillisByName());
+                Map<String, Long> beans = new LinkedHashMap<>();
+                for (StartupTimeline.Step step : timeline.slowestBeans(20))
+                    beans.put(step.getTagMap().get("beanName"), step.getDurationMillis());
+                result.put("slowestBeans", beans);
+                Map<String, Long> librarySteps = new LinkedHashMap<>();
+                for (StartupTimeline.Step step : timeline.getSteps()) {
+                    if (step.getName().startsWith("library."))
+                        librarySteps.put(step.getName(), step.getDurationMillis());
+                }
+                result.put("librarySteps", librarySteps);
+            } else {
+                result.put("readyMillis", result.get("startedMillis"));
+                result.put("refreshMillis", -1);
+            }
+            result.put("classesLoaded", ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount());
+            //java.vm.info містить "sharing", якщо JVM працює з архівом CDS
+            result.put("sharing", System.getProperty("java.vm.info", "").contains("sharing"));
+        }
+        System.out.println(RESULT + new ObjectMapper().writeValueAsString(result));
+        //Фонові потоки (планувальник, журнал видач) не тримають JVM; архів CDS записується при виході
+        System.exit(0);
+    }
+}
@@ -0,0 +1,91 @@
+package ua.ypon.project2SpringLibHib;
+
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+import ua.ypon.project2SpringLibHib.config.SpringConfig;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+import ua.ypon.project2SpringLibHib.repositories.BooksRepository;
+import ua.ypon.project2SpringLibHib.repositories.PeopleRepository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LibraryContextTest - основа тестів, яким потрібен справжній контекст SpringConfig (пул, Hibernate,
+кеш другого рівня, MVC) над вбудованою базою H2 у режимі PostgreSQL; схему створює Hibernate з анотацій сутностей.
+Властивості бази задаються системними до створення контексту (вони мають пріоритет над hibernate.properties,
+див. SpringConfig). Контекст один на всі тести (кеш контекстів Spring Test), тому кожен тест створює
+власних читачів і книги і не розраховує на порожню базу.
+ */
+@RunWith(SpringRunner.class)
+@WebAppConfiguration("src/main/webapp")
+@ContextConfiguration(classes = SpringConfig.class)
+public abstract class LibraryContextTest {
+
+    public static final String DATABASE_URL = "jdbc:h2:mem:library-test;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+    private static final AtomicInteger names = new AtomicInteger();
+
+    static {
+        System.setProperty("hibernate.driver_class", "org.h2.Driver");
+        System.setProperty("hibernate.connection.url", DATABASE_URL);
+        System.setProperty("hibernate.connection.user_name", "sa");
+        System.setProperty("hibernate.connection.pass_word", "");
+        System.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        System.setProperty("hibernate.hbm2ddl.auto", "create");
+        //Секції таблиці журналу видач - лише для PostgreSQL
+        System.setProperty("ledger.monthly_partitions", "false");
+    }
+
+    @Autowired
+    protected WebApplicationContext context;
+
+    @Autowired
+    protected BooksRepository booksRepository;
+
+    @Autowired
+    protected PeopleRepository peopleRepository;
+
+    @Autowired
+    protected DataSource dataSource;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    // Метод newPerson зберігає нового читача з унікальним ім'ям.
+    protected Person newPerson() {
+        return inTransaction(() -> peopleRepository.save(new Person("Читач " + names.incrementAndGet(), 1990)));
+    }
+
+    // Метод newBook зберігає нову вільну книгу.
+    protected Book newBook() {
+        return inTransaction(() -> booksRepository.save(new Book("Книга " + names.incrementAndGet(), "Автор", 2000, null)));
+    }
+
+    protected <T> T inTransaction(Supplier<T> action) {
+        return new TransactionTemplate(transactionManager).execute(status -> action.get());
+    }
+
+    // Метод sql виконує SQL напряму в базі, в обхід Hibernate і його кешу (як інший застосунок чи ручна правка).
+    protected void sql(String statement) {
+        try (Connection connection = dataSource.getConnection(); Statement jdbc = connection.createStatement()) {
+            jdbc.execute(statement);
+        } catch (SQLException e) {
+            throw new IllegalStateException(statement, e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ua.ypon.project2SpringLibHib.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.h2.tools.Server;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.datasource.ReadWriteRoutingDataSource;
+import ua.ypon.project2SpringLibHib.metrics.PoolMetrics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас PoolLoadTest навантажує /books з кількох потоків і порівнює пул з'єднань з новим з'єднанням на кожен запит
+(як було з DriverManagerDataSource). База - H2 у режимі сервера (TCP), тож нове з'єднання коштує встановлення
+TCP-з'єднання і сесії, як з PostgreSQL. Нове з'єднання на запит імітує softEvictConnections() після кожного запиту:
+пул закриває повернене з'єднання і відкриває наступне заново. Скільки з'єднань відкрито, показує SESSION_ID() H2 -
+номер, який сервер видає кожній новій сесії. Навантаження - повний список /books: він читається курсором бази
+на кожен запит (сторінки з books_per_page кешуються як HTML і бази не торкаються).
+Перевіряються лише детерміновані ознаки - кількість відкритих сесій і відсутність очікувань пулу, що вийшли
+за таймаут; пропускна здатність обох варіантів пишеться в лог тесту і залежить від машини.
+ */
+public class PoolLoadTest extends LibraryContextTest {
+
+    private static final int THREADS = 4;
+    private static final int REQUESTS_PER_THREAD = 50;
+    private static final Log log = LogFactory.getLog(PoolLoadTest.class);
+    private static final Server SERVER;
+
+    static {
+        try {
+            SERVER = Server.createTcpServer("-tcpPort", "0", "-tcpDaemon").start();
+            //сервер не створює баз на запит клієнта - базу в пам'яті створює з'єднання з цієї ж JVM
+            DriverManager.getConnection("jdbc:h2:mem:pool-load;DB_CLOSE_DELAY=-1", "sa", "").close();
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        registry.add("hibernate.connection.url", PoolLoadTest::url);
+        registry.add("pool.maximum_pool_size", () -> THREADS);
+        registry.add("pool.minimum_idle", () -> THREADS);
+        //менеджер кешу JCache один на JVM: без цього контекст над іншою базою ділив би регіони з основним
+        registry.add("hibernate.cache.use_second_level_cache", () -> false);
+        registry.add("hibernate.cache.use_query_cache", () -> false);
+    }
+
+    @Autowired
+    private ReadWriteRoutingDataSource routingDataSource;
+
+    @Autowired
+    private PoolMetrics poolMetrics;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws Exception {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        for (int i = 0; i < 20; i++)
+            newBook();
+        run(false);
+    }
+
+    @Test
+    public void poolReusesConnectionsWithoutTimeouts() throws Exception {
+        int before = lastSession();
+        long pooledNanos = run(false);
+        int pooledSessions = lastSession() - before - 1;
+
+        before = lastSession();
+        long unpooledNanos = run(true);
+        int unpooledSessions = lastSession() - before - 1;
+
+        int requests = THREADS * REQUESTS_PER_THREAD;
+        log.info(String.format("з пулом %.0f запитів/с, без пулу %.0f запитів/с",
+                requests * 1e9 / pooledNanos, requests * 1e9 / unpooledNanos));
+        assertTrue("нових з'єднань з пулом: " + pooledSessions, pooledSessions <= THREADS);
+        assertTrue("нових з'єднань без пулу: " + unpooledSessions, unpooledSessions >= requests);
+
+        StringBuilder metrics = new StringBuilder();
+        poolMetrics.writePrometheus(metrics);
+        assertTrue(metrics.toString().contains("db_pool_timeouts_total{pool=\"project2-primary\"} 0"));
+    }
+
+    // Метод run виконує REQUESTS_PER_THREAD запитів /books у кожному з THREADS потоків і повертає тривалість у нс.
+    // evict = true - після кожного запиту пул закриває з'єднання, тобто кожен запит відкриває нове.
+    private long run(boolean evict) throws Exception {
+        HikariDataSource pool = routingDataSource.getPrimary();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Void>> clients = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                clients.add(() -> {
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        assertEquals(200, mockMvc.perform(get("/books")).andReturn().getResponse().getStatus());
+                        if (evict)
+                            pool.getHikariPoolMXBean().softEvictConnections();
+                    }
+                    return null;
+                });
+            }
+            long started = System.nanoTime();
+            for (Future<Void> client : executor.invokeAll(clients))
+                client.get();
+            return System.nanoTime() - started;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Метод lastSession відкриває окреме з'єднання і повертає його номер сесії на сервері H2
+    private static int lastSession() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url(), "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet session = statement.executeQuery("SELECT SESSION_ID()")) {
+            session.next();
+            return session.getInt(1);
+        }
+    }
+
+    private static String url() {
+        return "jdbc:h2:tcp://localhost:" + SERVER.getPort() + "/mem:pool-load;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    }
+}
@@ -0,0 +1,248 @@
+package ua.ypon.project2SpringLibHib.datasource;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.tool.schema.TargetType;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.LoanEvent;
+import ua.ypon.project2SpringLibHib.models.Person;
+import ua.ypon.project2SpringLibHib.services.BookService;
+
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.http.Cookie;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас ReadReplicaRoutingTest перевіряє ReadWriteRoutingDataSource на двох окремих базах H2: primary і репліці.
+Реплікацію імітує replicate() - копія primary (SCRIPT / RUNSCRIPT) у репліку; між копіями репліка відстає,
+а правка прямо в репліці показує, з якої бази прочитано сторінку.
+Схему репліки створюємо до старту контексту: індекси назв будуються читанням, тобто з репліки.
+ */
+@TestPropertySource(properties = {
+        "hibernate.connection.url=" + ReadReplicaRoutingTest.PRIMARY_URL,
+        "replica.urls=" + ReadReplicaRoutingTest.REPLICA_URL,
+        "replica.sticky_millis=" + ReadReplicaRoutingTest.STICKY_MILLIS
+})
+public class ReadReplicaRoutingTest extends LibraryContextTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    static final long STICKY_MILLIS = 1500;
+
+    static {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting("hibernate.connection.url", REPLICA_URL)
+                .applySetting("hibernate.connection.username", "sa")
+                .applySetting("hibernate.connection.password", "")
+                .applySetting("hibernate.dialect", H2Dialect.class.getName())
+                .build();
+        try {
+            new SchemaExport().create(EnumSet.of(TargetType.DATABASE), new MetadataSources(registry)
+                    .addAnnotatedClass(Person.class)
+                    .addAnnotatedClass(Book.class)
+                    .addAnnotatedClass(LoanEvent.class)
+                    .buildMetadata());
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    @Autowired
+    private ReadWriteRoutingDataSource routingDataSource;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    public void readLoadMovesOffPrimary() throws Exception {
+        Person person = newPerson();
+        replicate();
+        replicaSql("UPDATE Person SET name = 'Читач з репліки' WHERE id = " + person.getId());
+        evictSecondLevelCache();
+
+        long primaryBefore = connections("primary");
+        long replicaBefore = connections("replica");
+        for (int i = 0; i < 20; i++) {
+            String html = page(mockMvc.perform(get("/people/" + person.getId())).andReturn().getResponse());
+            assertTrue(html.contains("Читач з репліки"));
+        }
+        long fromReplica = connections("replica") - replicaBefore;
+        long fromPrimary = connections("primary") - primaryBefore;
+        assertTrue("з'єднань з репліки: " + fromReplica, fromReplica >= 20);
+        assertTrue("з'єднань з primary: " + fromPrimary, fromPrimary < fromReplica);
+    }
+
+    @Test
+    public void writerReadsOwnWritesFromPrimary() throws Exception {
+        Person reader = newPerson();
+        Book book = newBook();
+        replicate();
+
+        MockHttpServletResponse assigned = mockMvc.perform(post("/books/" + book.getId() + "/assign")
+                .param("id", String.valueOf(reader.getId()))).andReturn().getResponse();
+        assertEquals(302, assigned.getStatus());
+        Cookie primaryUntil = assigned.getCookie("primary_until");
+        assertNotNull(primaryUntil);
+        evictSecondLevelCache();
+
+        //У репліці книга ще вільна; клієнт, що її видав, бачить видачу
+        String html = page(mockMvc.perform(get("/books/" + book.getId()).cookie(primaryUntil)).andReturn().getResponse());
+        assertTrue(isLoaned(html));
+    }
+
+    @Test
+    public void primaryCookieBeyondStickyPeriodIsIgnored() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            long now = System.currentTimeMillis();
+            request.setCookies(new Cookie("primary_until", Long.toString(now + STICKY_MILLIS / 2)));
+            assertTrue(ReadYourWrites.isPinnedToPrimary(STICKY_MILLIS));
+            //підроблений cookie не прив'язує клієнта до primary назавжди
+            request.setCookies(new Cookie("primary_until", Long.toString(Long.MAX_VALUE)));
+            assertFalse(ReadYourWrites.isPinnedToPrimary(STICKY_MILLIS));
+            request.setCookies(new Cookie("primary_until", Long.toString(now + STICKY_MILLIS * 10)));
+            assertFalse(ReadYourWrites.isPinnedToPrimary(STICKY_MILLIS));
+            request.setCookies(new Cookie("primary_until", Long.toString(now - 1)));
+            assertFalse(ReadYourWrites.isPinnedToPrimary(STICKY_MILLIS));
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Test
+    public void recentlyChangedPageIsNotCachedFromLaggingReplica() throws Exception {
+        Person reader = newPerson();
+        Book book = newBook();
+        replicate();
+        assertTrue(bookService.assign(book.getId(), reader));
+        evictSecondLevelCache();
+
+        //Інший клієнт, без cookie: книга змінилась щойно, тому сторінка читається з primary, а не з репліки,
+        // і ETag нової версії не отримує старий вміст
+        MockHttpServletResponse fresh = mockMvc.perform(get("/books/" + book.getId())).andReturn().getResponse();
+        assertTrue(isLoaned(page(fresh)));
+        String etag = fresh.getHeader("ETag");
+        assertNotNull(etag);
+
+        Thread.sleep(STICKY_MILLIS + 100);
+        replicate();
+        evictSecondLevelCache();
+        assertEquals(304, mockMvc.perform(get("/books/" + book.getId()).header("If-None-Match", etag))
+                .andReturn().getResponse().getStatus());
+        assertTrue(isLoaned(page(mockMvc.perform(get("/books/" + book.getId())).andReturn().getResponse())));
+    }
+
+    @Test
+    public void connectionWithCredentialsIsRoutedToThePool() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> {
+            //Hikari не підтримує облікові дані в getConnection: помилка пулу, а не UnsupportedOperationException,
+            // і репліка не вважається недоступною
+            try (Connection ignored = routingDataSource.getConnection("sa", "")) {
+                fail("пул Hikari не видає з'єднання з обліковими даними");
+            } catch (SQLFeatureNotSupportedException expected) {
+                // очікувано
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        StringBuilder metrics = new StringBuilder();
+        routingDataSource.writePrometheus(metrics);
+        for (String line : metrics.toString().split("\n")) {
+            if (line.startsWith("db_replica_up"))
+                assertTrue(line, line.endsWith(" 1"));
+        }
+    }
+
+    // Метод replicate копіює поточний стан primary у репліку
+    private void replicate() throws Exception {
+        Path script = Files.createTempFile("replica", ".sql");
+        try {
+            sql("SCRIPT TO '" + script + "'");
+            replicaSql("DROP ALL OBJECTS");
+            replicaSql("RUNSCRIPT FROM '" + script + "'");
+        } finally {
+            Files.delete(script);
+        }
+    }
+
+    private static void replicaSql(String statement) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement jdbc = connection.createStatement()) {
+            jdbc.execute(statement);
+        }
+    }
+
+    private void evictSecondLevelCache() {
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+    }
+
+    // Метод connections повертає, скільки з'єднань видано з пулів ролі role (primary або replica)
+    private long connections(String role) {
+        StringBuilder metrics = new StringBuilder();
+        routingDataSource.writePrometheus(metrics);
+        long total = 0;
+        for (String line : metrics.toString().split("\n")) {
+            if (line.startsWith("db_routing_connections_total") && line.contains("role=\"" + role + "\""))
+                total += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+        }
+        return total;
+    }
+
+    // Сторінка книги показує власника, а не список читачів, кому її видати
+    private static boolean isLoaned(String html) {
+        return html.contains("Зараз ця книга у:");
+    }
+
+    private static String page(MockHttpServletResponse response) throws Exception {
+        assertEquals(200, response.getStatus());
+        return response.getContentAsString(StandardCharsets.UTF_8);
+    }
+}
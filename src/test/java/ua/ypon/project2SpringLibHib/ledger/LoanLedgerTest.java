@@ -0,0 +1,148 @@
+package ua.ypon.project2SpringLibHib.ledger;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import ua.ypon.project2SpringLibHib.models.LoanEvent;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LoanLedgerTest перевіряє зворотний тиск журналу видач без контексту Spring: база - окрема H2 у пам'яті,
+а GatedDataSource затримує видачу з'єднань, поки тест не відкриє "шлюз", і запам'ятовує, які потоки їх брали.
+ */
+public class LoanLedgerTest {
+
+    private static final String WRITER = "loan-ledger-writer";
+
+    private GatedDataSource dataSource;
+    private LoanLedger ledger;
+
+    @Before
+    public void setUp() throws SQLException {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:ledger-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        dataSource = new GatedDataSource(h2);
+        try (Connection connection = h2.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE loan_event (id bigint AUTO_INCREMENT PRIMARY KEY, book_id int NOT NULL, " +
+                    "person_id int NOT NULL, type varchar(8) NOT NULL, occurred_at timestamp NOT NULL)");
+        }
+        //черга на 2 події, пакет з однієї, очікування на місце перевіряється кожні 20 мс
+        ledger = new LoanLedger(dataSource, 2, 1, 10, 20, 5000, false);
+        ledger.start();
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.open();
+        ledger.stop();
+    }
+
+    @Test
+    public void fullQueueBlocksProducerInsteadOfWritingOnItsThread() throws Exception {
+        Thread producer = new Thread(() -> ledger.record(events(6)), "producer");
+        producer.start();
+
+        //фоновий потік чекає на з'єднання з першою подією, черга заповнена - видача має чекати, а не писати сама
+        producer.join(500);
+        assertTrue(producer.isAlive());
+        assertEquals(0, rows());
+
+        dataSource.open();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        ledger.stop();
+
+        assertEquals(6, rows());
+        assertEquals(Set.of(WRITER), dataSource.threads);
+        StringBuilder metrics = new StringBuilder();
+        ledger.writePrometheus(metrics);
+        assertTrue(metrics.toString().contains("ledger_events_total{result=\"written\"} 6"));
+        assertFalse(metrics.toString().contains("ledger_backpressure_seconds_total 0.0\n"));
+    }
+
+    @Test
+    public void stopReleasesBlockedProducerWhenWriterIsStuck() throws Exception {
+        Thread producer = new Thread(() -> ledger.record(events(6)), "producer");
+        producer.start();
+        producer.join(300);
+        assertTrue(producer.isAlive());
+
+        //stop не чекає, поки фоновий потік звільнить чергу: видача перестає чекати і пише решту подій сама,
+        //щойно база знову видає з'єднання
+        Thread stopper = new Thread(ledger::stop, "stopper");
+        stopper.start();
+        Thread.sleep(200);
+        dataSource.open();
+        stopper.join(10000);
+        producer.join(5000);
+        assertFalse(stopper.isAlive());
+        assertFalse(producer.isAlive());
+
+        assertEquals(6, rows());
+        assertTrue(dataSource.threads.contains(WRITER));
+    }
+
+    private static List<LoanEvent> events(int count) {
+        List<LoanEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            events.add(new LoanEvent(i, 1, LoanEvent.Type.CHECKOUT, new Date()));
+        return events;
+    }
+
+    private int rows() throws SQLException {
+        try (Connection connection = dataSource.getTargetDataSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet count = statement.executeQuery("SELECT COUNT(*) FROM loan_event")) {
+            count.next();
+            return count.getInt(1);
+        }
+    }
+
+    // Джерело з'єднань, яке видає їх лише після open() і запам'ятовує імена потоків, що їх брали
+    private static class GatedDataSource extends DelegatingDataSource {
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        private GatedDataSource(JdbcDataSource target) {
+            super(target);
+        }
+
+        private void open() {
+            gate.countDown();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            threads.add(Thread.currentThread().getName());
+            try {
+                if (!gate.await(10, TimeUnit.SECONDS))
+                    throw new SQLException("gate closed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException(e);
+            }
+            return super.getConnection();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ua.ypon.project2SpringLibHib.search;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BookSearchIndexTest перевіряє повнотекстовий індекс без контексту Spring: допустиму кількість помилок
+залежно від довжини слова, префікс лише для останнього слова запиту, збіги за автором, ранжування за IDF,
+фільтр доступності після setAvailable і межі сторінок.
+ */
+public class BookSearchIndexTest {
+
+    private final BookSearchIndex index = new BookSearchIndex();
+
+    @Test
+    public void typoToleranceDependsOnWordLength() {
+        index.put(1, "Кобзар", "Тарас Шевченко", true);
+        index.put(2, "Годинник", "Автор", true);
+
+        //слово з 4-6 літер - одна помилка
+        assertEquals(Collections.singletonList(1), search("кобзра"));
+        assertEquals(Collections.singletonList(1), search("кобзор"));
+        assertTrue(search("кабзра").isEmpty());
+        //слово з 7 і більше літер - дві помилки, але не три
+        assertEquals(Collections.singletonList(2), search("гадиннак"));
+        assertTrue(search("гадіннак").isEmpty());
+        //коротке слово - лише точно
+        assertTrue(search("таз").isEmpty());
+    }
+
+    @Test
+    public void onlyLastQueryWordIsTreatedAsPrefix() {
+        index.put(1, "Срібний берег", "Автор", true);
+        index.put(2, "Срібний ліс", "Автор", true);
+
+        assertEquals(Collections.singletonList(1), search("бер"));
+        assertEquals(Arrays.asList(1, 2), search("срібний бер"));
+        //"бер" не останнє - префіксом не розгортається, книга 1 не збігається жодним словом
+        assertEquals(1, index.search("бер ліс", null, 0, 10).getTotal());
+        assertEquals(2, index.search("ліс бер", null, 0, 10).getTotal());
+    }
+
+    @Test
+    public void authorOnlyMatchRanksBelowTitleMatch() {
+        index.put(1, "Спогади", "Тарас Шевченко", true);
+        index.put(2, "Шевченко і сучасність", "Інший автор", true);
+        index.put(3, "Енеїда", "Іван Котляревський", true);
+
+        assertEquals(Arrays.asList(2, 1), search("шевченко"));
+        assertEquals(Collections.singletonList(3), search("котляревський"));
+    }
+
+    @Test
+    public void rareWordRanksAboveFrequentWord() {
+        index.put(1, "Ліс", "Автор", true);
+        index.put(2, "Ліс і поле", "Автор", true);
+        index.put(3, "Ліс уночі", "Автор", true);
+        index.put(4, "Тиша", "Автор", true);
+
+        //обидва слова запиту знайдено в одній книзі кожне, вища оцінка - у рідкісного
+        assertEquals(Arrays.asList(4, 1, 2, 3), search("ліс тиша"));
+    }
+
+    @Test
+    public void availabilityFilterFollowsSetAvailable() {
+        index.put(1, "Кобзар", "Автор", true);
+        index.put(2, "Кобзар", "Автор", true);
+        index.setAvailable(1, false);
+
+        assertEquals(Collections.singletonList(2), index.search("кобзар", true, 0, 10).getIds());
+        assertEquals(Collections.singletonList(1), index.search("кобзар", false, 0, 10).getIds());
+        assertEquals(1, index.search("кобзар", false, 0, 10).getTotal());
+        assertEquals(Arrays.asList(1, 2), search("кобзар"));
+
+        index.setAvailable(1, true);
+        assertEquals(2, index.search("кобзар", true, 0, 10).getTotal());
+    }
+
+    @Test
+    public void pagesEndWithPartialPageAndThenEmpty() {
+        for (int id = 1; id <= 5; id++)
+            index.put(id, "Книга", "Автор", true);
+
+        //однакова оцінка - порядок за id
+        assertEquals(Arrays.asList(1, 2), index.search("книга", null, 0, 2).getIds());
+        assertEquals(Arrays.asList(3, 4), index.search("книга", null, 1, 2).getIds());
+        BookSearchIndex.SearchHits last = index.search("книга", null, 2, 2);
+        assertEquals(Collections.singletonList(5), last.getIds());
+        assertEquals(5, last.getTotal());
+        BookSearchIndex.SearchHits beyond = index.search("книга", null, 3, 2);
+        assertTrue(beyond.getIds().isEmpty());
+        assertEquals(5, beyond.getTotal());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativePageIsRejected() {
+        index.search("книга", null, -1, 10);
+    }
+
+    private List<Integer> search(String query) {
+        return index.search(query, null, 0, 10).getIds();
+    }
+}
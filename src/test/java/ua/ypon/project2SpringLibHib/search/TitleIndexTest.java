@@ -0,0 +1,84 @@
+package ua.ypon.project2SpringLibHib.search;
+
+import org.junit.Test;
+import ua.ypon.project2SpringLibHib.dto.BookSuggestion;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас TitleIndexTest перевіряє префіксний індекс назв без контексту Spring: перейменування і видалення
+за старою назвою та одну копію рядка для однакових назв різних книг.
+ */
+public class TitleIndexTest {
+
+    private final TitleIndex index = new TitleIndex();
+
+    @Test
+    public void suggestsByPrefixInTitleOrderThenIdOrder() {
+        index.put(3, null, "Кобзар");
+        index.put(1, null, "Кобзар");
+        index.put(2, null, "Коза-дереза");
+        index.put(4, null, "Енеїда");
+
+        assertEquals(Arrays.asList(1, 3, 2), ids(index.suggest("ко", 10)));
+        assertEquals(Arrays.asList(1, 3), ids(index.suggest("КО", 2)));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void renameMovesBookToTheNewTitle() {
+        index.put(1, null, "Кобзар");
+        index.put(1, "Кобзар", "Енеїда");
+
+        assertTrue(index.suggest("Кобзар", 10).isEmpty());
+        assertEquals(Collections.singletonList(1), ids(index.suggest("Ене", 10)));
+        assertEquals(1, index.size());
+
+        //інше написання тієї самої нормалізованої назви
+        index.put(1, "Енеїда", "ЕНЕЇДА");
+        assertEquals("ЕНЕЇДА", index.suggest("енеї", 10).get(0).getTitle());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void removeDropsOnlyTheBookUnderItsTitle() {
+        index.put(1, null, "Кобзар");
+        index.put(2, null, "Кобзар");
+        index.put(3, null, "Енеїда");
+
+        index.remove(2, "КОБЗАР");
+        //під іншою назвою книги 3 немає - індекс не змінюється
+        index.remove(3, "Кобзар");
+
+        assertEquals(Collections.singletonList(1), ids(index.suggest("Ко", 10)));
+        assertEquals(Collections.singletonList(3), ids(index.suggest("Ене", 10)));
+        assertEquals(2, index.size());
+
+        index.remove(1, "Кобзар");
+        assertTrue(index.suggest("Ко", 10).isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void equalTitlesShareOneString() {
+        index.put(1, null, "Кобзар");
+        index.put(2, null, new String("Кобзар"));
+
+        List<BookSuggestion> suggestions = index.suggest("Кобзар", 10);
+        assertSame(suggestions.get(0).getTitle(), suggestions.get(1).getTitle());
+    }
+
+    private static List<Integer> ids(List<BookSuggestion> suggestions) {
+        return suggestions.stream().map(BookSuggestion::getId).collect(Collectors.toList());
+    }
+}
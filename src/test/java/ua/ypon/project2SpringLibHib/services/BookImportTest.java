@@ -0,0 +1,128 @@
+package ua.ypon.project2SpringLibHib.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BookImportTest перевіряє імпорт через POST /books/import: поля id і власника з файлу ігноруються,
+а якщо імпорт зупинився на обірваному файлі чи помилці бази, відповідь - частковий звіт з рядком зупинки,
+і в базі лишаються саме ті книги, що в ньому пораховані.
+ */
+public class BookImportTest extends LibraryContextTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private MockMvc mockMvc;
+    private String author;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        author = "Автор імпорту " + System.nanoTime();
+    }
+
+    @Test
+    public void jsonLinesCannotSetIdOrOwner() throws Exception {
+        Book existing = newBook();
+        Person owner = newPerson();
+        String line = "{\"id\":" + existing.getId() + ",\"title\":\"Нова назва\",\"author\":\"" + author + "\"," +
+                "\"year\":2001,\"owner\":{\"id\":" + owner.getId() + "},\"dueAt\":\"2000-01-01\"}\n";
+
+        JsonNode report = importBooks("jsonl", line, 200);
+        assertEquals(1, report.get("imported").asInt());
+        assertTrue(report.get("failedLine").isNull());
+
+        Book unchanged = booksRepository.findById(existing.getId()).orElseThrow();
+        assertEquals(existing.getTitle(), unchanged.getTitle());
+        List<Book> imported = booksRepository.findByIdIn(ids());
+        assertEquals(1, imported.size());
+        assertTrue(imported.get(0).getId() != existing.getId());
+        assertNull(imported.get(0).getOwner());
+        assertNull(imported.get(0).getDueAt());
+    }
+
+    @Test
+    public void brokenFileReturnsPartialReport() throws Exception {
+        StringBuilder csv = new StringBuilder("title,author,year\n");
+        for (int i = 0; i < 5; i++)
+            csv.append("Книга ").append(i).append(',').append(author).append(",2000\n");
+        csv.append("\"Незакрита лапка,").append(author).append(",2000\n");
+
+        JsonNode report = importBooks("csv", csv.toString(), 400);
+        assertEquals(5, report.get("imported").asInt());
+        assertEquals(7, report.get("failedLine").asInt());
+        assertEquals("INPUT", report.get("failure").asText());
+        assertEquals(5, ids().size());
+    }
+
+    @Test
+    public void invalidHeaderFailsAtFirstLine() throws Exception {
+        JsonNode report = importBooks("csv", "name,author\nКнига,Автор\n", 400);
+        assertEquals(0, report.get("imported").asInt());
+        assertEquals(1, report.get("failedLine").asInt());
+    }
+
+    @Test
+    public void databaseErrorStopsAtFirstLineOfTheFailedChunk() throws Exception {
+        StringBuilder jsonl = new StringBuilder();
+        for (int i = 1; i <= 1500; i++) {
+            String title = i == 1201 ? "Збій імпорту" : "Книга " + i;
+            jsonl.append("{\"title\":\"").append(title).append("\",\"author\":\"").append(author)
+                    .append("\",\"year\":2000}\n");
+        }
+        sql("ALTER TABLE Book ADD CONSTRAINT import_failure CHECK (title <> 'Збій імпорту')");
+        JsonNode report;
+        try {
+            report = importBooks("jsonl", jsonl.toString(), 500);
+        } finally {
+            sql("ALTER TABLE Book DROP CONSTRAINT import_failure");
+        }
+
+        //перша порція (рядки 1-1000) закомічена, друга відкочена цілком
+        assertEquals(1000, report.get("imported").asInt());
+        assertEquals(1001, report.get("failedLine").asInt());
+        assertEquals("DATABASE", report.get("failure").asText());
+        assertEquals(1000, ids().size());
+    }
+
+    private JsonNode importBooks(String format, String body, int expectedStatus) throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(post("/books/import").param("format", format)
+                .content(body.getBytes(StandardCharsets.UTF_8))).andReturn().getResponse();
+        assertEquals(expectedStatus, response.getStatus());
+        return objectMapper.readTree(response.getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    // Метод ids повертає id книг, імпортованих у цьому тесті (з автором author)
+    private List<Integer> ids() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT id FROM Book WHERE author = '" + author + "'")) {
+            List<Integer> ids = new ArrayList<>();
+            while (rows.next())
+                ids.add(rows.getInt(1));
+            return ids;
+        }
+    }
+}
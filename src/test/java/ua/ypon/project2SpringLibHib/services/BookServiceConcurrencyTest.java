@@ -0,0 +1,249 @@
+package ua.ypon.project2SpringLibHib.services;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.ledger.LoanLedger;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+import ua.ypon.project2SpringLibHib.repositories.BooksRepository;
+import ua.ypon.project2SpringLibHib.search.BookSearchIndex;
+import ua.ypon.project2SpringLibHib.search.IndexReadiness;
+import ua.ypon.project2SpringLibHib.search.TitleIndex;
+import ua.ypon.project2SpringLibHib.util.LoanCacheEvictor;
+import ua.ypon.project2SpringLibHib.util.ResourceVersions;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас BookServiceConcurrencyTest перевіряє видачу і повернення умовними UPDATE під конкуренцією:
+кілька потоків одночасно видають і повертають ті самі книги, і кожна книга має бути видана (повернута)
+рівно один раз, а лічильники читачів - збігатися з книгами на руках. Пропускна здатність пишеться в лог тесту.
+Повернення, яке програє гонку на кожній спробі, відкочується з ConcurrencyFailureException і не видаляє книг.
+ */
+public class BookServiceConcurrencyTest extends LibraryContextTest {
+
+    private static final int THREADS = 8;
+    private static final int BOOKS = 100;
+    private static final int ROUNDS = 5;
+    private static final Log log = LogFactory.getLog(BookServiceConcurrencyTest.class);
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final List<Person> people = new ArrayList<>();
+    private final List<Integer> bookIds = new ArrayList<>();
+
+    @Before
+    public void createLibrary() {
+        for (int i = 0; i < THREADS; i++)
+            people.add(newPerson());
+        for (int i = 0; i < BOOKS; i++)
+            bookIds.add(newBook().getId());
+    }
+
+    @Test
+    public void eachBookIsCheckedOutAndReturnedExactlyOnce() throws Exception {
+        long operations = 0;
+        long started = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            AtomicInteger assigned = new AtomicInteger();
+            operations += race(person -> {
+                for (int id : shuffled()) {
+                    if (bookService.assign(id, person))
+                        assigned.incrementAndGet();
+                }
+            });
+            assertEquals(BOOKS, assigned.get());
+            assertCountersMatchBooks();
+
+            AtomicInteger released = new AtomicInteger();
+            operations += race(person -> {
+                for (int id : shuffled()) {
+                    if (bookService.release(id))
+                        released.incrementAndGet();
+                }
+            });
+            assertEquals(BOOKS, released.get());
+            assertCountersMatchBooks();
+            for (int id : bookIds)
+                assertNull(booksRepository.findViewById(id).get().getOwnerId());
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        log.info(String.format("%d видач і повернень у %d потоках за %.2f с (%.0f оп/с)",
+                operations, THREADS, seconds, operations / seconds));
+    }
+
+    @Test
+    public void basketCheckoutAndReturnRaceKeepsCountersExact() throws Exception {
+        AtomicInteger assigned = new AtomicInteger();
+        race(person -> assigned.addAndGet(bookService.assignAll(shuffled(), person)));
+        assertEquals(BOOKS, assigned.get());
+        assertCountersMatchBooks();
+
+        AtomicInteger released = new AtomicInteger();
+        race(person -> released.addAndGet(bookService.releaseAll(shuffled())));
+        assertEquals(BOOKS, released.get());
+        assertCountersMatchBooks();
+    }
+
+    @Test
+    public void checkoutEvictsOnlyTouchedEntriesFromSecondLevelCache() {
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        Person reader = people.get(0);
+        Person other = people.get(1);
+        int borrowed = bookIds.get(0);
+        int untouched = bookIds.get(1);
+        bookService.findOne(borrowed);
+        bookService.findOne(untouched);
+        inTransaction(() -> peopleRepository.findById(other.getId()));
+        assertTrue(cache.containsEntity(Book.class, untouched));
+
+        assertTrue(bookService.assign(borrowed, reader));
+        assertFalse(cache.containsEntity(Book.class, borrowed));
+        assertTrue(cache.containsEntity(Book.class, untouched));
+        assertTrue(cache.containsEntity(Person.class, other.getId()));
+
+        bookService.findOne(borrowed);
+        assertTrue(bookService.release(borrowed));
+        assertFalse(cache.containsEntity(Book.class, borrowed));
+        assertTrue(cache.containsEntity(Book.class, untouched));
+        assertTrue(cache.containsEntity(Person.class, other.getId()));
+    }
+
+    @Test
+    public void releaseWithStaleCachedOwnerDecrementsActualOwner() {
+        Person cachedOwner = people.get(0);
+        Person actualOwner = people.get(1);
+        int id = bookIds.get(0);
+        assertTrue(bookService.assign(id, cachedOwner));
+        bookService.findOne(id);
+        //Інший екземпляр застосунку повернув книгу і видав її іншому читачеві - кеш цього екземпляра застарів
+        sql("UPDATE Book SET id_person = " + actualOwner.getId() + " WHERE id = " + id);
+        sql("UPDATE Person SET active_loans = active_loans - 1 WHERE id = " + cachedOwner.getId());
+        sql("UPDATE Person SET active_loans = active_loans + 1 WHERE id = " + actualOwner.getId());
+
+        assertTrue(bookService.release(id));
+        assertEquals(0, peopleRepository.findViewById(cachedOwner.getId()).get().getActiveLoans());
+        assertEquals(0, peopleRepository.findViewById(actualOwner.getId()).get().getActiveLoans());
+        assertFalse(bookService.release(id));
+    }
+
+    @Test
+    public void releaseLosingEveryAttemptFailsAndKeepsBooks() {
+        BookService contended = contendedBookService();
+        Person reader = people.get(0);
+        int loaned = bookIds.get(0);
+        int deleted = bookIds.get(1);
+        assertTrue(bookService.assign(loaned, reader));
+        assertTrue(bookService.assign(deleted, reader));
+
+        //книга не вільна - release не повертає false, а deleteAll не видаляє неповернуту книгу
+        assertConflict(() -> contended.release(loaned));
+        assertConflict(() -> contended.deleteAll(Arrays.asList(loaned, deleted)));
+        assertEquals(Integer.valueOf(reader.getId()), booksRepository.findViewById(loaned).get().getOwnerId());
+        assertTrue(booksRepository.findViewById(deleted).isPresent());
+        assertCountersMatchBooks();
+    }
+
+    // Метод contendedBookService повертає BookService, у якого умовний UPDATE повернення не спрацьовує жодного разу -
+    // як коли стан книги між читанням і UPDATE щоразу змінює паралельна видача чи повернення.
+    // Сервіс не є бином, тому методи викликаються в транзакції тесту (inTransaction).
+    private BookService contendedBookService() {
+        BooksRepository losingRace = (BooksRepository) Proxy.newProxyInstance(BooksRepository.class.getClassLoader(),
+                new Class<?>[]{BooksRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("releaseLoans"))
+                        return new boolean[((List<?>) args[0]).size()];
+                    try {
+                        return method.invoke(booksRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        BookService service = new BookService(losingRace, peopleRepository, context.getBean(TitleIndex.class),
+                context.getBean(BookSearchIndex.class), context.getBean(IndexReadiness.class),
+                context.getBean(ResourceVersions.class), context.getBean(LoanLedger.class),
+                context.getBean(LoanCacheEvictor.class), transactionManager, 14, false);
+        context.getAutowireCapableBeanFactory().autowireBean(service);
+        return service;
+    }
+
+    private void assertConflict(Supplier<?> action) {
+        try {
+            inTransaction(action);
+            fail("очікувалась ConcurrencyFailureException");
+        } catch (ConcurrencyFailureException expected) {
+            //транзакцію відкочено
+        }
+    }
+
+    // Метод race запускає action для кожного читача у своєму потоці одночасно і повертає кількість операцій.
+    private long race(PersonAction action) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Person person : people) {
+                tasks.add(() -> {
+                    action.run(person);
+                    return null;
+                });
+            }
+            for (Future<Void> result : executor.invokeAll(tasks))
+                result.get();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return (long) THREADS * BOOKS;
+    }
+
+    private List<Integer> shuffled() {
+        List<Integer> ids = new ArrayList<>(bookIds);
+        Collections.shuffle(ids);
+        return ids;
+    }
+
+    private void assertCountersMatchBooks() {
+        for (Person person : people) {
+            long held = bookIds.stream()
+                    .filter(id -> Integer.valueOf(person.getId()).equals(booksRepository.findViewById(id).get().getOwnerId()))
+                    .count();
+            assertEquals(held, peopleRepository.findViewById(person.getId()).get().getActiveLoans());
+        }
+    }
+
+    private interface PersonAction {
+        void run(Person person);
+    }
+}
@@ -0,0 +1,98 @@
+package ua.ypon.project2SpringLibHib.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.metrics.RequestProfile;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+
+import javax.persistence.EntityNotFoundException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас DirtyCheckedUpdateTest рахує SQL, які виконує збереження форми редагування (PATCH /books/{id}, /people/{id}):
+сутність береться з прогрітого кешу другого рівня, а UPDATE містить лише змінені колонки або не виконується зовсім.
+SQL рахує RequestProfile - той самий, що й для метрик запитів.
+ */
+public class DirtyCheckedUpdateTest extends LibraryContextTest {
+
+    @Autowired
+    private BookService bookService;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    public void titleEditUpdatesOnlyTitleAndKeepsLoan() throws Exception {
+        Person reader = newPerson();
+        Book book = newBook();
+        bookService.assign(book.getId(), reader);
+        warmCache(book);
+
+        RequestProfile profile = profile(patch("/books/" + book.getId()).param("title", "Нова назва " + book.getId())
+                .param("author", book.getAuthor()).param("year", String.valueOf(book.getYear())));
+
+        assertEquals(1, profile.getStatements());
+        assertEquals("update Book set title=? where id=?", profile.mostRepeated().getKey());
+        Book updated = booksRepository.findById(book.getId()).orElseThrow();
+        assertEquals("Нова назва " + book.getId(), updated.getTitle());
+        assertEquals(reader.getId(), updated.getOwner().getId());
+        assertNotNull(updated.getCreateAt());
+        assertNotNull(updated.getDueAt());
+    }
+
+    @Test
+    public void unchangedFormExecutesNoStatements() throws Exception {
+        Book book = newBook();
+        warmCache(book);
+
+        RequestProfile profile = profile(patch("/books/" + book.getId()).param("title", book.getTitle())
+                .param("author", book.getAuthor()).param("year", String.valueOf(book.getYear())));
+
+        assertEquals(0, profile.getStatements());
+    }
+
+    @Test
+    public void personEditUpdatesOnlyChangedColumn() throws Exception {
+        Person person = newPerson();
+        inTransaction(() -> peopleRepository.findById(person.getId()));
+
+        RequestProfile profile = profile(patch("/people/" + person.getId()).param("name", person.getName())
+                .param("yearOfBirth", String.valueOf(person.getYearOfBirth() + 1)));
+
+        assertEquals(1, profile.getStatements());
+        assertEquals("update Person set yearofbirth=? where id=?", profile.mostRepeated().getKey());
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void unknownBookIsNotInserted() {
+        bookService.update(Integer.MAX_VALUE, new Book("Нова книга", "Автор", 2000, null));
+    }
+
+    // Читання в окремій транзакції кладе книгу в кеш другого рівня, як це робить перегляд сторінки книги
+    private void warmCache(Book book) {
+        inTransaction(() -> booksRepository.findById(book.getId()));
+    }
+
+    private RequestProfile profile(RequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        assertEquals(302, result.getResponse().getStatus());
+        return RequestProfile.of(result.getRequest());
+    }
+}
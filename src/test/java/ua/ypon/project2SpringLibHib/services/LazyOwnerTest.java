@@ -0,0 +1,94 @@
+package ua.ypon.project2SpringLibHib.services;
+
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.metrics.RequestProfile;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+
+import javax.persistence.EntityManagerFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LazyOwnerTest рахує SQL сторінок зі списками книг, коли власники (Book.owner, LAZY) різні і кеш другого рівня
+порожній: список /books не читає власників зовсім, а пошук, який їх показує, бере їх одним запитом, а не по одному.
+ */
+public class LazyOwnerTest extends LibraryContextTest {
+
+    private static final int BOOKS = 5;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private MockMvc mockMvc;
+    private String prefix;
+    private final List<Person> owners = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        prefix = "Лінива " + System.nanoTime();
+        //кожна книга видана іншому читачеві; найменший рік ставить ці книги на початок списку за роком
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = new Book(prefix + " " + i, "Автор", 1500, null);
+            bookService.save(book);
+            Person owner = newPerson();
+            assertTrue(bookService.assign(book.getId(), owner));
+            owners.add(owner);
+        }
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+    }
+
+    @Test
+    public void catalogueDoesNotLoadOwners() throws Exception {
+        MvcResult result = perform("/books?sort_by_year=true&books_per_page=50");
+        String html = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        for (int i = 0; i < BOOKS; i++)
+            assertTrue(html.contains(prefix + " " + i));
+        assertEquals(1, RequestProfile.of(result.getRequest()).getStatements());
+    }
+
+    @Test
+    public void titleSearchLoadsOwnersInOneQuery() throws Exception {
+        MvcResult result = perform("/books/search?title=" + prefix);
+        assertOwnersShown(result);
+        assertEquals(2, RequestProfile.of(result.getRequest()).getStatements());
+    }
+
+    @Test
+    public void fullTextSearchJoinsOwners() throws Exception {
+        MvcResult result = perform("/books/fulltext?q=" + prefix);
+        assertOwnersShown(result);
+        assertEquals(1, RequestProfile.of(result.getRequest()).getStatements());
+    }
+
+    private void assertOwnersShown(MvcResult result) throws Exception {
+        String html = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        for (Person owner : owners)
+            assertTrue(owner.getName(), html.contains(owner.getName()));
+    }
+
+    private MvcResult perform(String url) throws Exception {
+        MvcResult result = mockMvc.perform(get(url)).andReturn();
+        assertEquals(200, result.getResponse().getStatus());
+        return result;
+    }
+}
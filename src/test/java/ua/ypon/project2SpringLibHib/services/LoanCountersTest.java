@@ -0,0 +1,82 @@
+package ua.ypon.project2SpringLibHib.services;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.dto.PersonView;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас LoanCountersTest перевіряє лічильники книг читачів (Person.activeLoans/overdueLoans):
+видача і повернення змінюють їх у тій самій транзакції, а звірка після першої повної перевіряє лише читачів
+зі змінами лічильників чи з терміном повернення, що минув після попередньої звірки.
+ */
+public class LoanCountersTest extends LibraryContextTest {
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Test
+    public void checkoutAndReturnUpdateCounters() {
+        Person reader = newPerson();
+        Book first = newBook();
+        Book second = newBook();
+
+        assertTrue(bookService.assign(first.getId(), reader));
+        assertEquals(2, bookService.assignAll(Arrays.asList(first.getId(), second.getId(), newBook().getId()), reader));
+        assertCounters(reader, 3, 0);
+
+        assertTrue(bookService.release(first.getId()));
+        assertCounters(reader, 2, 0);
+        assertEquals(2, bookService.deleteAll(Arrays.asList(second.getId(), newBook().getId())));
+        assertCounters(reader, 1, 0);
+    }
+
+    @Test
+    public void returnOfOverdueBookDecrementsOverdueCounter() {
+        Person reader = newPerson();
+        Book book = newBook();
+        assertTrue(bookService.assign(book.getId(), reader));
+        peopleService.reconcileLoanCounters();
+        //Термін повернення минув після попередньої звірки - наступна звірка переводить книгу в прострочені
+        sql("UPDATE Book SET due_at = DATEADD('SECOND', -1, CURRENT_TIMESTAMP) WHERE id = " + book.getId());
+        peopleService.reconcileLoanCounters();
+        assertCounters(reader, 1, 1);
+
+        assertTrue(bookService.release(book.getId()));
+        assertCounters(reader, 0, 0);
+    }
+
+    @Test
+    public void incrementalReconciliationRepairsChangedReaders() {
+        peopleService.reconcileLoanCounters();
+        Person changed = newPerson();
+        Person unchanged = newPerson();
+        assertTrue(bookService.assign(newBook().getId(), changed));
+        sql("UPDATE Person SET active_loans = 7 WHERE id = " + changed.getId());
+        sql("UPDATE Person SET active_loans = 7 WHERE id = " + unchanged.getId());
+
+        peopleService.reconcileLoanCounters();
+        assertCounters(changed, 1, 0);
+        //Читач без змін з останньої звірки не перевіряється (повна звірка - лише перша після старту)
+        assertCounters(unchanged, 7, 0);
+    }
+
+    private void assertCounters(Person person, int active, int overdue) {
+        PersonView view = peopleRepository.findViewById(person.getId()).get();
+        assertEquals(active, view.getActiveLoans());
+        assertEquals(overdue, view.getOverdueLoans());
+    }
+}
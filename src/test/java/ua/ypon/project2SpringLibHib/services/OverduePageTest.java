@@ -0,0 +1,87 @@
+package ua.ypon.project2SpringLibHib.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+import ua.ypon.project2SpringLibHib.util.KeysetPage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас OverduePageTest перевіряє курсорну пагінацію прострочених книг (/books/overdue): порядок (due_at, id),
+перехід за курсором без пропусків і повторів, межі books_per_page і 400 на пошкоджений курсор.
+ */
+public class OverduePageTest extends LibraryContextTest {
+
+    @Autowired
+    private BookService bookService;
+
+    private MockMvc mockMvc;
+    private final List<Integer> overdue = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        //термін повернення задовго до будь-яких видач інших тестів - ці книги на початку списку
+        for (int i = 0; i < 5; i++) {
+            Book book = newBook();
+            Person reader = newPerson();
+            assertTrue(bookService.assign(book.getId(), reader));
+            overdue.add(book.getId());
+        }
+        sql("UPDATE Book SET due_at = TIMESTAMP '1970-01-02 00:00:00' WHERE id IN (" + overdue.get(0) + ", "
+                + overdue.get(2) + ", " + overdue.get(4) + ")");
+        sql("UPDATE Book SET due_at = TIMESTAMP '1970-01-01 00:00:00' WHERE id IN (" + overdue.get(1) + ", "
+                + overdue.get(3) + ")");
+    }
+
+    //книги повертаються, щоб не лишатись на початку списку в наступних тестах
+    @After
+    public void tearDown() {
+        bookService.releaseAll(overdue);
+    }
+
+    @Test
+    public void pagesFollowDueDateThenId() {
+        KeysetPage<Book> first = bookService.findOverdue(null, 2);
+        assertEquals(List.of(overdue.get(1), overdue.get(3)), ids(first));
+        KeysetPage<Book> second = bookService.findOverdue(first.getNextCursor(), 2);
+        assertEquals(List.of(overdue.get(0), overdue.get(2)), ids(second));
+        KeysetPage<Book> third = bookService.findOverdue(second.getNextCursor(), 2);
+        assertEquals(List.of(overdue.get(4)), ids(third).subList(0, 1));
+        assertNull(first.getPrevCursor());
+    }
+
+    @Test
+    public void pageParametersAreBounded() throws Exception {
+        assertEquals(200, status("/books/overdue?books_per_page=0"));
+        assertEquals(200, status("/books/overdue?books_per_page=-5"));
+        assertEquals(200, status("/books/overdue?books_per_page=100000000"));
+        assertEquals(400, status("/books/overdue?cursor=зламаний"));
+        assertEquals(400, status("/books/overdue?cursor=bm86MTox"));
+    }
+
+    private int status(String url) throws Exception {
+        return mockMvc.perform(get(url)).andReturn().getResponse().getStatus();
+    }
+
+    private static List<Integer> ids(KeysetPage<Book> page) {
+        return page.getContent().stream().map(Book::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,78 @@
+package ua.ypon.project2SpringLibHib.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.dto.PersonView;
+import ua.ypon.project2SpringLibHib.models.Person;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас PeoplePagesTest перевіряє посторінкові сторінки читачів: рейтинг /people/top показує "наступну" лише коли
+вона є (і не показує її після повністю заповненої останньої сторінки), а номер і розмір сторінки рейтингу
+і книг читача (/people/{id}) обмежуються замість помилки 500.
+ */
+public class PeoplePagesTest extends LibraryContextTest {
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private PeopleService peopleService;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    public void topHasNextOnlyWhenMoreReadersExist() {
+        assertTrue(bookService.assign(newBook().getId(), newPerson()));
+        assertTrue(bookService.assign(newBook().getId(), newPerson()));
+        int borrowers = peopleService.findTopBorrowers(false, 0, 1000).getContent().size();
+
+        Slice<PersonView> exact = peopleService.findTopBorrowers(false, 0, borrowers);
+        assertEquals(borrowers, exact.getContent().size());
+        assertFalse(exact.hasNext());
+        assertTrue(peopleService.findTopBorrowers(false, 0, borrowers - 1).hasNext());
+    }
+
+    @Test
+    public void topPageParametersAreBounded() throws Exception {
+        assertEquals(200, status("/people/top?people_per_page=0"));
+        assertEquals(200, status("/people/top?people_per_page=-5"));
+        assertEquals(200, status("/people/top?people_per_page=100000000"));
+        assertEquals(200, status("/people/top?page=-1"));
+        assertEquals(200, status("/people/top?page=" + Integer.MAX_VALUE + "&people_per_page=1000"));
+    }
+
+    @Test
+    public void showPageParametersAreBounded() throws Exception {
+        Person reader = newPerson();
+        assertTrue(bookService.assign(newBook().getId(), reader));
+        String url = "/people/" + reader.getId();
+
+        assertEquals(200, status(url + "?books_per_page=0"));
+        assertEquals(200, status(url + "?books_per_page=-5"));
+        assertEquals(200, status(url + "?books_per_page=100000000"));
+        assertEquals(200, status(url + "?page=-1"));
+        assertEquals(200, status(url + "?page=" + Integer.MAX_VALUE + "&books_per_page=1000"));
+    }
+
+    private int status(String url) throws Exception {
+        return mockMvc.perform(get(url)).andReturn().getResponse().getStatus();
+    }
+}
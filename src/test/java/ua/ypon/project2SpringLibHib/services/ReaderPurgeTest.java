@@ -0,0 +1,62 @@
+package ua.ypon.project2SpringLibHib.services;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас ReaderPurgeTest перевіряє видалення читачів з виданими книгами: книги повертаються одним UPDATE
+(без читача, дати видачі і терміну), а для журналу повернень блокується лише їхній стан - сутності Book не читаються.
+ */
+public class ReaderPurgeTest extends LibraryContextTest {
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private PeopleService peopleService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void deletingReadersReturnsBooksWithoutLoadingThem() {
+        Person first = newPerson();
+        Person second = newPerson();
+        List<Integer> books = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Book book = newBook();
+            assertTrue(bookService.assign(book.getId(), i % 2 == 0 ? first : second));
+            books.add(book.getId());
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long loaded = statistics.getEntityLoadCount();
+        assertEquals(2, peopleService.deleteAll(Arrays.asList(first.getId(), second.getId())));
+        assertEquals(loaded, statistics.getEntityLoadCount());
+
+        for (Book book : booksRepository.findByIdIn(books)) {
+            assertNull(book.getOwner());
+            assertNull(book.getCreateAt());
+            assertNull(book.getDueAt());
+        }
+        assertFalse(peopleRepository.existsById(first.getId()));
+    }
+}
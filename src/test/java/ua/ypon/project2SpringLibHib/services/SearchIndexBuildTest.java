@@ -0,0 +1,115 @@
+package ua.ypon.project2SpringLibHib.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.dto.BookSuggestion;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.search.IndexReadiness;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас SearchIndexBuildTest перевіряє побудову індексів пошуку після старту: поки вони будуються, пошук
+і /health/ready відповідають 503, а зміни книг за цей час не губляться - їх вносить сама побудова.
+Після побудови збереження і видалення книги прибирають її з індексу назв за попередньою назвою.
+ */
+public class SearchIndexBuildTest extends LibraryContextTest {
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private IndexReadiness indexReadiness;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        //контекст будує індекси у фоновому потоці (library.index_build_async=true)
+        for (int i = 0; i < 100 && !bookService.isSearchReady(); i++)
+            Thread.sleep(100);
+        assertTrue(bookService.isSearchReady());
+    }
+
+    @Test
+    public void searchIsUnavailableWhileIndexesAreBuilding() throws Exception {
+        indexReadiness.building();
+        try {
+            assertEquals(503, status("/health/ready"));
+            assertEquals(503, status("/books/autocomplete?q=Книга"));
+            assertEquals(503, status("/books/fulltext?q=Книга"));
+            assertEquals(200, status("/health/live"));
+        } finally {
+            bookService.buildIndexes();
+        }
+        assertEquals(200, status("/health/ready"));
+        assertEquals(200, status("/books/autocomplete?q=Книга"));
+    }
+
+    @Test
+    public void changesDuringBuildAreNotLost() {
+        Book renamed = newBook();
+        Book deleted = newBook();
+        String title = "Перейменована " + renamed.getId();
+        //newBook() зберігає книги в обхід BookService - вносимо їх в індекси
+        bookService.buildIndexes();
+
+        indexReadiness.building();
+        try {
+            Book form = new Book(title, renamed.getAuthor(), renamed.getYear(), null);
+            bookService.update(renamed.getId(), form);
+            bookService.delete(deleted.getId());
+            Book added = new Book("Додана " + renamed.getId(), "Автор", 2001, null);
+            bookService.save(added);
+
+            //поки індекси будуються, зміни лише запам'ятовуються
+            assertTrue(bookService.suggestTitles(title, 10).isEmpty());
+            assertTrue(ids(bookService.suggestTitles(deleted.getTitle(), 10)).contains(deleted.getId()));
+        } finally {
+            bookService.buildIndexes();
+        }
+
+        assertEquals(Collections.singletonList(renamed.getId()), ids(bookService.suggestTitles(title, 10)));
+        assertFalse(ids(bookService.suggestTitles(deleted.getTitle(), 10)).contains(deleted.getId()));
+        assertEquals(1, bookService.suggestTitles("Додана " + renamed.getId(), 10).size());
+        assertEquals(renamed.getId(), bookService.fullTextSearch(title, null, 0, 10).getBooks().get(0).getId());
+    }
+
+    @Test
+    public void saveAndDeleteUpdateTitleIndexByPreviousTitle() {
+        Book book = newBook();
+        bookService.buildIndexes();
+        String oldTitle = book.getTitle();
+
+        book.setTitle("Збережена " + book.getId());
+        bookService.save(book);
+        assertFalse(ids(bookService.suggestTitles(oldTitle, 10)).contains(book.getId()));
+        assertEquals(Collections.singletonList(book.getId()), ids(bookService.suggestTitles(book.getTitle(), 10)));
+
+        bookService.delete(book.getId());
+        assertTrue(bookService.suggestTitles(book.getTitle(), 10).isEmpty());
+    }
+
+    private int status(String url) throws Exception {
+        return mockMvc.perform(get(url)).andReturn().getResponse().getStatus();
+    }
+
+    private static List<Integer> ids(List<BookSuggestion> suggestions) {
+        return suggestions.stream().map(BookSuggestion::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,101 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.metrics.RequestProfile;
+import ua.ypon.project2SpringLibHib.models.Book;
+import ua.ypon.project2SpringLibHib.models.Person;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас ConditionalGetTest перевіряє умовні GET (ETag / Last-Modified) сторінок каталогу, книги і читача:
+незмінна сторінка відповідає 304 без SQL, а зміна книги чи читача змінює ETag саме тих сторінок, що їх показують.
+ */
+public class ConditionalGetTest extends LibraryContextTest {
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    public void unchangedCatalogueIsNotModifiedWithoutSql() throws Exception {
+        MockHttpServletResponse first = mockMvc.perform(get("/books")).andReturn().getResponse();
+        assertEquals(200, first.getStatus());
+        String etag = first.getHeader("ETag");
+        assertNotNull(etag);
+        assertNotNull(first.getHeader("Last-Modified"));
+        assertEquals("no-cache", first.getHeader("Cache-Control"));
+
+        MvcResult repeated = mockMvc.perform(get("/books").header("If-None-Match", etag)).andReturn();
+        assertEquals(304, repeated.getResponse().getStatus());
+        assertEquals(0, RequestProfile.of(repeated.getRequest()).getStatements());
+
+        assertEquals(304, mockMvc.perform(get("/books").header("If-Modified-Since", first.getHeader("Last-Modified")))
+                .andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void assignChangesBookAndReaderPages() throws Exception {
+        Book book = newBook();
+        Person reader = newPerson();
+        String bookEtag = etag("/books/" + book.getId());
+        String readerEtag = etag("/people/" + reader.getId());
+        assertEquals(304, status("/books/" + book.getId(), bookEtag));
+
+        assertEquals(302, mockMvc.perform(post("/books/" + book.getId() + "/assign")
+                .param("id", String.valueOf(reader.getId()))).andReturn().getResponse().getStatus());
+
+        assertEquals(200, status("/books/" + book.getId(), bookEtag));
+        assertEquals(200, status("/people/" + reader.getId(), readerEtag));
+        assertNotEquals(bookEtag, etag("/books/" + book.getId()));
+    }
+
+    @Test
+    public void readerEditKeepsCatalogueAndChangesBookPage() throws Exception {
+        Book book = newBook();
+        Person reader = newPerson();
+        String catalogueEtag = etag("/books");
+        String bookEtag = etag("/books/" + book.getId());
+
+        assertEquals(302, mockMvc.perform(patch("/people/" + reader.getId()).param("name", reader.getName() + " змінений")
+                .param("yearOfBirth", String.valueOf(reader.getYearOfBirth()))).andReturn().getResponse().getStatus());
+
+        //список книг не показує читачів, а сторінка вільної книги показує список, кому її видати
+        assertEquals(304, status("/books", catalogueEtag));
+        assertEquals(200, status("/books/" + book.getId(), bookEtag));
+    }
+
+    @Test
+    public void pageWithFlashMessageIsAlwaysRendered() throws Exception {
+        String etag = etag("/books");
+        assertEquals(200, mockMvc.perform(get("/books").header("If-None-Match", etag).flashAttr("message", "Збережено"))
+                .andReturn().getResponse().getStatus());
+    }
+
+    private String etag(String url) throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get(url)).andReturn().getResponse();
+        assertEquals(200, response.getStatus());
+        return response.getHeader("ETag");
+    }
+
+    private int status(String url, String etag) throws Exception {
+        return mockMvc.perform(get(url).header("If-None-Match", etag)).andReturn().getResponse().getStatus();
+    }
+}
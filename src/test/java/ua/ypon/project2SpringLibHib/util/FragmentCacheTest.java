@@ -0,0 +1,105 @@
+package ua.ypon.project2SpringLibHib.util;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import ua.ypon.project2SpringLibHib.LibraryContextTest;
+import ua.ypon.project2SpringLibHib.models.Book;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * net.ukr@caravell 01/05/2023
+ */
+/*
+Клас FragmentCacheTest перевіряє кеш відрендерених фрагментів: посилання у фрагментах без ідентифікатора сесії,
+повний список лише читає кеш, старша версія не замінює новішу, а паралельні запити отримують той самий HTML.
+ */
+public class FragmentCacheTest extends LibraryContextTest {
+
+    @Autowired
+    private FragmentCache fragmentCache;
+
+    @Test
+    public void fragmentLinksAreNotSessionEncoded() {
+        String html = fragmentCache.get(request(), "test_row", 1, 1, "books/fragments", "row", () -> book(1, "Кобзар"));
+        assertTrue(html.contains("/books/1"));
+        assertFalse(html.contains("jsessionid"));
+    }
+
+    @Test
+    public void getIfCachedDoesNotStoreMisses() {
+        assertTrue(fragmentCache.getIfCached(request(), "test_scan", 2, 1, "books/fragments", "row", book(2, "Лісова пісня"))
+                .contains("Лісова пісня"));
+        AtomicInteger loads = new AtomicInteger();
+        fragmentCache.get(request(), "test_scan", 2, 1, "books/fragments", "row", () -> {
+            loads.incrementAndGet();
+            return book(2, "Лісова пісня");
+        });
+        assertEquals(1, loads.get());
+
+        //Тепер рядок у кеші - повний список бере його звідти, а не рендерить з нових даних
+        assertTrue(fragmentCache.getIfCached(request(), "test_scan", 2, 1, "books/fragments", "row", book(2, "Інша назва"))
+                .contains("Лісова пісня"));
+    }
+
+    @Test
+    public void olderVersionDoesNotReplaceNewer() {
+        fragmentCache.get(request(), "test_version", 3, 2, "books/fragments", "row", () -> book(3, "Нова назва"));
+        fragmentCache.get(request(), "test_version", 3, 1, "books/fragments", "row", () -> book(3, "Стара назва"));
+        String html = fragmentCache.get(request(), "test_version", 3, 2, "books/fragments", "row", () -> {
+            throw new AssertionError("версія 2 мала лишитись у кеші");
+        });
+        assertTrue(html.contains("Нова назва"));
+    }
+
+    @Test
+    public void concurrentRequestsShareRenderedFragments() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < 800; i++) {
+                int id = 100 + i % 20;
+                tasks.add(() -> fragmentCache.get(request(), "test_concurrent", id, 1, "books/fragments", "row",
+                        () -> book(id, "Книга " + id)));
+            }
+            List<Future<String>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++)
+                assertTrue(results.get(i).get().contains("Книга " + (100 + i % 20)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private ServletWebRequest request() {
+        return new ServletWebRequest(new MockHttpServletRequest(context.getServletContext()), new SessionEncodingResponse());
+    }
+
+    private static Map<String, Object> book(int id, String title) {
+        Book book = new Book(title, "Автор", 2000, null);
+        book.setId(id);
+        return Collections.singletonMap("book", book);
+    }
+
+    // Відповідь, що дописує ідентифікатор сесії до кожного URL, як контейнер для клієнта без cookies
+    private static class SessionEncodingResponse extends MockHttpServletResponse {
+        @Override
+        public String encodeURL(String url) {
+            return url + ";jsessionid=0123456789";
+        }
+    }
+}